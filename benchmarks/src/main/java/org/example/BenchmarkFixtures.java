@@ -0,0 +1,58 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Synthetic statements shared by the benchmarks, cached in the temp directory
+ */
+final class BenchmarkFixtures {
+
+    private static final long SEED = 20250530L;
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "camt053-bench");
+
+    /** Discards everything, used as CSV target so disk speed is not measured */
+    static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * A single-statement camt.053.001.08 file with the given number of Ntry elements,
+     * each with one TxDtls
+     */
+    static synchronized Path statementFile(int entries) throws IOException {
+        Path file = DIRECTORY.resolve("statement-" + SEED + "-" + entries + ".xml");
+        if (Files.exists(file)) {
+            return file;
+        }
+        Files.createDirectories(DIRECTORY);
+        Path temp = Files.createTempFile(DIRECTORY, "statement-", ".tmp");
+        try {
+            new Camt053CorpusGenerator(SEED, 1, entries, 1).write(temp);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot generate statement with " + entries + " entries", e);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    static String readString(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import com.prowidesoftware.swift.model.mx.MxCamt05300108;
+import com.prowidesoftware.swift.utils.Lib;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * File to CSV rows: the Prowide tree with Camt053Extractor, and the streaming path
+ * reading a file stream or a memory-mapped file
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int entries;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchmarkFixtures.statementFile(entries);
+    }
+
+    @Benchmark
+    public long prowide() throws IOException {
+        MxCamt05300108 camt053 = MxCamt05300108.parse(Lib.readFile(file.toString()));
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT)) {
+            for (Camt053Data data : new Camt053Extractor().extract(camt053)) {
+                Camt053CsvGenerator.write(data, encoder);
+            }
+            return encoder.getRowCount();
+        }
+    }
+
+    @Benchmark
+    public long streaming() throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(file);
+             Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT)) {
+            new Camt053StreamingExtractor().extract(in, encoder);
+            return encoder.getRowCount();
+        }
+    }
+
+    @Benchmark
+    public long mapped() throws IOException, XMLStreamException {
+        try (MappedXmlInput in = MappedXmlInput.open(file);
+             Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT)) {
+            new Camt053StreamingExtractor().extract(in, encoder);
+            return encoder.getRowCount();
+        }
+    }
+}
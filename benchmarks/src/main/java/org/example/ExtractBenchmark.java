@@ -0,0 +1,70 @@
+package org.example;
+
+import com.prowidesoftware.swift.model.mx.MxCamt05300108;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Extraction into the model: Camt053Extractor from the parsed Prowide tree, and
+ * the streaming extractor (which includes its own XML parsing).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ExtractBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int entries;
+
+    private Path file;
+    private MxCamt05300108 parsed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchmarkFixtures.statementFile(entries);
+        parsed = MxCamt05300108.parse(BenchmarkFixtures.readString(file));
+    }
+
+    @Benchmark
+    public List<Camt053Data> prowideExtractor() {
+        return new Camt053Extractor().extract(parsed);
+    }
+
+    @Benchmark
+    public void streamingExtractor(final Blackhole blackhole) throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(file)) {
+            new Camt053StreamingExtractor().extract(in, new Camt053Handler() {
+                @Override
+                public void onStatement(StatementInfo statement, BalanceInfo balance) {
+                    blackhole.consume(balance);
+                }
+
+                @Override
+                public void onTransaction(TransactionInfo transaction) {
+                    blackhole.consume(transaction);
+                }
+            });
+        }
+    }
+}
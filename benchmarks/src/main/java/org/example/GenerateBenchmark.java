@@ -0,0 +1,78 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CSV generation from an extracted statement: List&lt;String&gt; generator and byte encoder,
+ * with the default and a custom {@link CsvLayout}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class GenerateBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int entries;
+
+    private Camt053Data data;
+    private CsvLayout erpLayout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(BenchmarkFixtures.statementFile(entries))) {
+            data = new Camt053StreamingExtractor().extractAll(in).get(0);
+        }
+        erpLayout = CsvLayout.parse(new StringReader("delimiter=;\nquoting=minimal\ndate=dd.MM.yyyy\n"
+            + "decimalSeparator=,\nbalance=\n"
+            + "transaction=AccountId,Ccy,BookgDt,SignedAmt,AcctSvcrRef,'ERP',Counterparty,StmtId\n"));
+    }
+
+    @Benchmark
+    public List<String> generator() {
+        return new Camt053CsvGenerator().generate(data);
+    }
+
+    @Benchmark
+    public long encoder() throws IOException {
+        Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT);
+        encoder.onStatement(data.getStatementInfo(), data.getBalanceInfo());
+        for (TransactionInfo transaction : data.getTransactions()) {
+            encoder.onTransaction(transaction);
+        }
+        encoder.flush();
+        return encoder.getRowCount();
+    }
+
+    @Benchmark
+    public long customLayout() throws IOException {
+        Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT,
+            Camt053RowEncoder.DEFAULT_BUFFER_SIZE, erpLayout);
+        encoder.onStatement(data.getStatementInfo(), data.getBalanceInfo());
+        for (TransactionInfo transaction : data.getTransactions()) {
+            encoder.onTransaction(transaction);
+        }
+        encoder.flush();
+        return encoder.getRowCount();
+    }
+}
@@ -0,0 +1,44 @@
+package org.example;
+
+import com.prowidesoftware.swift.model.mx.MxCamt05300108;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Prowide parse of an in-memory statement: MxCamt05300108.parse
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int entries;
+
+    private String xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        xml = BenchmarkFixtures.readString(BenchmarkFixtures.statementFile(entries));
+    }
+
+    @Benchmark
+    public MxCamt05300108 parse() {
+        return MxCamt05300108.parse(xml);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trx rows per second of {@link Camt053RowEncoder} alone, on one thread: the
+ * entries of a million-entry statement, extracted beforehand and held in an
+ * array, encoded with the default layout into a stream that discards them
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 10, time = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class RowEncoderBenchmark {
+
+    private static final int ROWS = 1_000_000;
+
+    private StatementInfo statement;
+    private TransactionInfo[] entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, XMLStreamException {
+        try (InputStream in = Files.newInputStream(BenchmarkFixtures.statementFile(ROWS))) {
+            Camt053Data data = new Camt053StreamingExtractor().extractAll(in).get(0);
+            statement = data.getStatementInfo();
+            entries = data.getTransactions().toArray(new TransactionInfo[0]);
+        }
+        if (entries.length != ROWS || !entries[0].hasScaledAmount()) {
+            throw new IllegalStateException("Expected " + ROWS + " entries with fixed-point amounts");
+        }
+    }
+
+    /**
+     * Score is rows per second
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long encode() throws IOException {
+        Camt053RowEncoder encoder = new Camt053RowEncoder(BenchmarkFixtures.NULL_OUTPUT);
+        encoder.startStatement(statement);
+        for (TransactionInfo entry : entries) {
+            encoder.writeTransaction(entry);
+        }
+        encoder.flush();
+        return encoder.getRowCount();
+    }
+}
@@ -0,0 +1,89 @@
+package org.example;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Daily summary of extracted entries: external sort, merge and group-by, in
+ * entries per second. The entries are built once, so XML parsing is not
+ * measured. A 4 MB limit spills a run about every fifty thousand entries
+ * and merges them in more than one pass; 256 MB keeps the whole input in one run.
+ * With 100 accounts a group per account, day and indicator has about 27
+ * entries; with 10000 nearly every entry is a group of its own, and writing
+ * the rows dominates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class SummaryBenchmark {
+
+    private static final int ENTRIES = 2_000_000;
+    private static final int ENTRIES_PER_STATEMENT = 500;
+    private static final long SEED = 20250530L;
+
+    @Param({"4", "256"})
+    public int memoryMegabytes;
+
+    @Param({"100", "10000"})
+    public int accounts;
+
+    private StatementInfo[] statements;
+    private TransactionInfo[] transactions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        StatementInfo[] accountStatements = new StatementInfo[accounts];
+        for (int i = 0; i < accounts; i++) {
+            StatementInfo statement = new StatementInfo();
+            statement.setAccountId(String.format("TH%020d", random.nextInt(Integer.MAX_VALUE)));
+            statement.setCurrency(i % 4 == 0 ? "USD" : "THB");
+            accountStatements[i] = statement;
+        }
+        statements = new StatementInfo[ENTRIES / ENTRIES_PER_STATEMENT];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = accountStatements[random.nextInt(accounts)];
+        }
+        LocalDate first = LocalDate.of(2025, 1, 1);
+        transactions = new TransactionInfo[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            TransactionInfo transaction = new TransactionInfo();
+            transaction.setBookingDate(first.plusDays(random.nextInt(365)));
+            transaction.setScaledAmount(1 + random.nextInt(10_000_000), 2);
+            transaction.setEntryCreditDebitIndicator(random.nextBoolean() ? "CRDT" : "DBIT");
+            transactions[i] = transaction;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long summarize() throws IOException {
+        try (DailySummaryAggregator summary = new DailySummaryAggregator(memoryMegabytes * 1024L * 1024)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                if (i % ENTRIES_PER_STATEMENT == 0) {
+                    summary.onStatement(statements[i / ENTRIES_PER_STATEMENT], null);
+                }
+                summary.onTransaction(transactions[i]);
+            }
+            return summary.write(BenchmarkFixtures.NULL_OUTPUT, CsvLayout.DEFAULT);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+# Cold-start time of the command-line converter for a one-entry statement,
+# with and without the class-data-sharing archive. Build both first:
+#     mvn -Pappcds package
+#     scripts/cold-start.sh [runs]
+# Prints the median wall time of each JVM configuration in milliseconds.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+JAR=${JAR:-target/iso20022-converter.jar}
+ARCHIVE=${ARCHIVE:-target/iso20022-converter.jsa}
+RUNS=${1:-21}
+
+if [[ ! -f "$JAR" || ! -f "$ARCHIVE" ]]; then
+    echo "Missing $JAR or $ARCHIVE; run mvn -Pappcds package first" >&2
+    exit 1
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+java -jar "$JAR" --generate "$WORK/one.xml" 1 1 1
+
+# Median of the wall times, in ms, of RUNS conversions with the given JVM options
+measure() {
+    local times=()
+    for ((i = 0; i < RUNS; i++)); do
+        local start end
+        start=$(date +%s%N)
+        java "$@" -jar "$JAR" "$WORK/one.xml" "$WORK/one.csv" > /dev/null
+        end=$(date +%s%N)
+        times+=($(( (end - start) / 1000000 )))
+    done
+    printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p"
+}
+
+printf '%-32s %6s\n' "configuration" "ms"
+printf '%-32s %6s\n' "no class sharing" "$(measure -Xshare:off)"
+printf '%-32s %6s\n' "JDK archive only (default)" "$(measure)"
+printf '%-32s %6s\n' "AppCDS" "$(measure -XX:SharedArchiveFile="$ARCHIVE")"
+printf '%-32s %6s\n' "AppCDS, C1 only" "$(measure -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1)"
@@ -0,0 +1,121 @@
+package org.example;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact running total of decimal amounts.
+ *
+ * Adds scaled longs (minor units plus scale) without allocating, and only
+ * switches to BigDecimal if the total would overflow a long or the amounts need
+ * more than 18 decimals.
+ */
+public final class AmountSum {
+
+    private static final long[] POWERS_OF_TEN = new long[FixedPointAmounts.MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private long units;
+    private int scale;
+    private BigDecimal overflow;
+    private long count;
+
+    /**
+     * Add units / 10^scale
+     */
+    public void add(long value, int valueScale) {
+        count++;
+        if (overflow == null && valueScale >= 0 && valueScale <= FixedPointAmounts.MAX_DIGITS) {
+            try {
+                if (valueScale > scale) {
+                    units = Math.multiplyExact(units, POWERS_OF_TEN[valueScale - scale]);
+                    scale = valueScale;
+                }
+                long scaled = valueScale < scale ? Math.multiplyExact(value, POWERS_OF_TEN[scale - valueScale]) : value;
+                units = Math.addExact(units, scaled);
+                return;
+            } catch (ArithmeticException e) {
+                overflow = BigDecimal.valueOf(units, scale);
+            }
+        }
+        if (overflow == null) {
+            overflow = BigDecimal.valueOf(units, scale);
+        }
+        overflow = overflow.add(BigDecimal.valueOf(value, valueScale));
+    }
+
+    public void add(BigDecimal value) {
+        if (value.scale() >= 0 && value.precision() <= FixedPointAmounts.MAX_DIGITS) {
+            add(value.unscaledValue().longValue(), value.scale());
+        } else {
+            count++;
+            overflow = toBigDecimal().add(value);
+        }
+    }
+
+    /**
+     * Add the signed amount of an entry, using its fixed-point form when present
+     */
+    public void add(TransactionInfo transaction) {
+        if (transaction.hasScaledAmount()) {
+            add(transaction.getSignedAmountUnits(), transaction.getAmountScale());
+        } else {
+            add(transaction.getSignedAmount());
+        }
+    }
+
+    /**
+     * Add another running total, e.g. one computed for a chunk of entries on another thread
+     */
+    public void add(AmountSum other) {
+        if (other.overflow != null) {
+            add(other.overflow);
+        } else {
+            add(other.units, other.scale);
+        }
+        count += other.count - 1;
+    }
+
+    /**
+     * Number of amounts added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Whether the total is {@link #getUnits} / 10^{@link #getScale}; when not, only {@link #toBigDecimal} has it
+     */
+    boolean fitsLong() {
+        return overflow == null;
+    }
+
+    long getUnits() {
+        return units;
+    }
+
+    int getScale() {
+        return scale;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return overflow != null ? overflow : BigDecimal.valueOf(units, scale);
+    }
+
+    public void reset() {
+        units = 0;
+        scale = 0;
+        overflow = null;
+        count = 0;
+    }
+
+    @Override
+    public String toString() {
+        return FixedPointAmounts.toPlainString(toBigDecimal());
+    }
+}
@@ -0,0 +1,279 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Checks balances while rows stream through to another handler.
+ *
+ * For every Stmt the signed Ntry amounts are summed exactly and OPBD + sum is
+ * compared with CLBD. Pages of the same account and currency must chain: each
+ * page opens with the previous page's closing balance, page numbers start at
+ * 1 and have no gaps, and the last page is marked as such. Only one running
+ * sum and the previous page per account are kept, so entries are neither held
+ * in memory nor read twice.
+ */
+public class BalanceReconciler implements Camt053Handler {
+
+    public enum Mode {
+        /** Pass mismatches to the listener and carry on */
+        REPORT,
+        /** Throw a {@link ReconciliationException} on the first mismatch */
+        FAIL
+    }
+
+    public enum Kind {
+        /** OPBD + signed entries differs from CLBD */
+        ENTRY_TOTAL,
+        /** OPBD differs from the previous page's CLBD */
+        PAGE_CHAIN,
+        /** Page number is not one after the previous page, or the first page is not page 1 */
+        PAGE_GAP,
+        /** No page with the last page indicator followed */
+        MISSING_PAGES,
+        /** OPBD or CLBD is absent */
+        MISSING_BALANCE
+    }
+
+    private final Camt053Handler target;
+    private final Mode mode;
+    private final Consumer<Mismatch> listener;
+
+    private final AmountSum entries = new AmountSum();
+    private final Map<String, Page> openPages = new HashMap<>();
+    private final List<Mismatch> mismatches = new ArrayList<>();
+    private StatementInfo statement;
+    private BalanceInfo balance;
+    private int statementsChecked;
+
+    /**
+     * @param listener receives each mismatch in REPORT mode, may be null
+     */
+    public BalanceReconciler(Camt053Handler target, Mode mode, Consumer<Mismatch> listener) {
+        this.target = target;
+        this.mode = mode;
+        this.listener = listener;
+    }
+
+    public BalanceReconciler(Camt053Handler target, Mode mode) {
+        this(target, mode, null);
+    }
+
+    @Override
+    public void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+        startStatement(statement, balance);
+        target.onStatement(statement, balance);
+    }
+
+    @Override
+    public void onTransaction(TransactionInfo transaction) throws IOException {
+        target.onTransaction(transaction);
+    }
+
+    @Override
+    public void onEntryEnd(TransactionInfo entry) throws IOException {
+        entries.add(entry);
+        target.onEntryEnd(entry);
+    }
+
+    @Override
+    public void onStatementEnd() throws IOException {
+        target.onStatementEnd();
+        endStatement();
+    }
+
+    /**
+     * Begin a statement whose entries are added with {@link #addEntries}
+     */
+    public void startStatement(StatementInfo statement, BalanceInfo balance) {
+        this.statement = statement;
+        this.balance = balance;
+        entries.reset();
+    }
+
+    /**
+     * Add entries summed elsewhere, such as a chunk converted on another thread
+     */
+    public void addEntries(AmountSum sum) {
+        entries.add(sum);
+    }
+
+    /**
+     * Check the current statement against its balances and the previous page
+     */
+    public void endStatement() throws ReconciliationException {
+        statementsChecked++;
+        BigDecimal opening = balance.getSignedOpeningBalance();
+        BigDecimal closing = balance.getSignedClosingBalance();
+        if (opening == null || closing == null) {
+            mismatch(Kind.MISSING_BALANCE, statement, null, null);
+        } else {
+            BigDecimal total = opening.add(entries.toBigDecimal());
+            if (total.compareTo(closing) != 0) {
+                mismatch(Kind.ENTRY_TOTAL, statement, closing, total);
+            }
+        }
+
+        Page previous = openPages.remove(pageKey(statement));
+        Integer pageNumber = pageNumber(statement);
+        if (previous != null) {
+            if (previous.closing != null && opening != null && previous.closing.compareTo(opening) != 0) {
+                mismatch(Kind.PAGE_CHAIN, statement, previous.closing, opening);
+            }
+            if (previous.number != null && pageNumber != null && pageNumber != previous.number + 1) {
+                mismatch(Kind.PAGE_GAP, statement, BigDecimal.valueOf(previous.number + 1L), BigDecimal.valueOf(pageNumber));
+            }
+        } else if (pageNumber != null && pageNumber != 1) {
+            // The first page seen for an account, including a lone last page, must be page 1
+            mismatch(Kind.PAGE_GAP, statement, BigDecimal.ONE, BigDecimal.valueOf(pageNumber));
+        }
+        openPage(statement, closing, pageNumber);
+    }
+
+    /**
+     * Take over the page chain of a statement that was already checked, e.g. by
+     * the run a resumed conversion continues; nothing is checked or reported
+     */
+    public void skipStatement(StatementInfo statement, BalanceInfo balance) {
+        openPages.remove(pageKey(statement));
+        openPage(statement, balance.getSignedClosingBalance(), pageNumber(statement));
+    }
+
+    private void openPage(StatementInfo statement, BigDecimal closing, Integer pageNumber) {
+        // A statement without pagination is a single, complete page
+        if (pageNumber != null && !statement.isLastPageIndicator()) {
+            openPages.put(pageKey(statement), new Page(statement, closing, pageNumber));
+        }
+    }
+
+    private static String pageKey(StatementInfo statement) {
+        return statement.getAccountId() + "/" + statement.getCurrency();
+    }
+
+    /**
+     * Report accounts whose last page never arrived; call once at the end of the input
+     */
+    public void finish() throws ReconciliationException {
+        List<Page> unfinished = new ArrayList<>(openPages.values());
+        openPages.clear();
+        for (Page page : unfinished) {
+            mismatch(Kind.MISSING_PAGES, page.statement, null, null);
+        }
+    }
+
+    public int getStatementsChecked() {
+        return statementsChecked;
+    }
+
+    /**
+     * Mismatches found so far in REPORT mode
+     */
+    public List<Mismatch> getMismatches() {
+        return Collections.unmodifiableList(mismatches);
+    }
+
+    private void mismatch(Kind kind, StatementInfo statement, BigDecimal expected, BigDecimal actual)
+        throws ReconciliationException {
+        Mismatch mismatch = new Mismatch(kind, statement, expected, actual);
+        if (mode == Mode.FAIL) {
+            throw new ReconciliationException(mismatch);
+        }
+        mismatches.add(mismatch);
+        if (listener != null) {
+            listener.accept(mismatch);
+        }
+    }
+
+    private static Integer pageNumber(StatementInfo statement) {
+        String page = statement.getPageNumber();
+        if (page == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(page.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Last page seen for an account that is not yet marked last
+     */
+    private static class Page {
+        final StatementInfo statement;
+        final BigDecimal closing;
+        final Integer number;
+
+        Page(StatementInfo statement, BigDecimal closing, Integer number) {
+            this.statement = statement;
+            this.closing = closing;
+            this.number = number;
+        }
+    }
+
+    /**
+     * One failed check; expected and actual are null where they do not apply
+     */
+    public static class Mismatch implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Kind kind;
+        private final String statementId;
+        private final String accountId;
+        private final String pageNumber;
+        private final BigDecimal expected;
+        private final BigDecimal actual;
+
+        Mismatch(Kind kind, StatementInfo statement, BigDecimal expected, BigDecimal actual) {
+            this.kind = kind;
+            this.statementId = statement.getStatementId();
+            this.accountId = statement.getAccountId();
+            this.pageNumber = statement.getPageNumber();
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getStatementId() {
+            return statementId;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getPageNumber() {
+            return pageNumber;
+        }
+
+        public BigDecimal getExpected() {
+            return expected;
+        }
+
+        public BigDecimal getActual() {
+            return actual;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(kind).append(" in statement ").append(statementId)
+                .append(" account ").append(accountId).append(" page ").append(pageNumber);
+            if (expected != null) {
+                sb.append(": expected ").append(FixedPointAmounts.toPlainString(expected))
+                    .append(", found ").append(FixedPointAmounts.toPlainString(actual));
+            }
+            return sb.toString();
+        }
+    }
+}
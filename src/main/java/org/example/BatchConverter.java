@@ -0,0 +1,416 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts a directory (or glob) of CAMT.053 files on a fixed worker pool.
+ *
+ * Each file is parsed, extracted and written independently, so one bad file
+ * only shows up as a failure in the report. Output files mirror the input
+ * layout below the output directory, with a .csv (or .csv.gz) extension.
+ *
+ * A .xml.gz file is inflated while it is parsed. Every .xml entry of a .zip
+ * archive is its own unit of work, streamed from the archive without being
+ * extracted; its output goes to a directory named after the archive.
+ *
+ * Inputs that would write the same output, such as a.xml next to a.xml.gz, or
+ * b.zip next to a directory b, are not converted but reported as failures.
+ *
+ * When the converter checks a duplicate index, the first file to book an entry
+ * owns it, so files are then converted one at a time in input order.
+ */
+public class BatchConverter {
+
+    /** Pattern used when the input is a plain directory */
+    public static final String DEFAULT_PATTERN = "*.{xml,xml.gz,zip}";
+
+    private final int threads;
+    private final Camt053FileConverter converter;
+    private boolean gzipOutput;
+
+    public BatchConverter(int threads, Camt053FileConverter converter) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.threads = threads;
+        this.converter = converter;
+    }
+
+    public BatchConverter(int threads) {
+        this(threads, new Camt053FileConverter());
+    }
+
+    public BatchConverter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Write .csv.gz instead of .csv files
+     */
+    public BatchConverter setGzipOutput(boolean gzipOutput) {
+        this.gzipOutput = gzipOutput;
+        return this;
+    }
+
+    /**
+     * Convert every file matching input into outputDir
+     *
+     * @param input a directory (all *.xml, *.xml.gz and *.zip directly in it), a single file,
+     *              or a glob such as in/**&#47;*.xml, which takes the files directly in in/ too
+     */
+    public BatchReport convert(String input, Path outputDir) throws IOException, InterruptedException {
+        InputSet inputs = listInputs(input);
+        Files.createDirectories(outputDir);
+        String extension = gzipOutput ? ".csv.gz" : ".csv";
+        Map<Path, String> collisions = outputCollisions(inputs, outputDir, extension);
+
+        ExecutorService pool = Executors.newFixedThreadPool(converter.checksDuplicates() ? 1 : threads,
+            workerThreads());
+        List<ZipFile> archives = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            List<Future<FileResult>> results = new ArrayList<>(inputs.files.size());
+            for (Path file : inputs.files) {
+                Path output = outputPath(inputs.base, file, outputDir, extension);
+                String collision = collisions.get(file);
+                if (collision != null) {
+                    results.add(failed(file, new IOException(collision)));
+                    continue;
+                }
+                if (!isZip(file)) {
+                    results.add(pool.submit(() -> convertFile(file, output)));
+                    continue;
+                }
+                ZipFile archive;
+                try {
+                    archive = new ZipFile(file.toFile());
+                } catch (IOException e) {
+                    results.add(failed(file, e));
+                    continue;
+                }
+                archives.add(archive);
+                Path entryDir = archiveDir(file, output);
+                for (ZipEntry entry : xmlEntries(archive)) {
+                    results.add(pool.submit(() -> convertEntry(file, archive, entry, entryDir, extension)));
+                }
+            }
+
+            int converted = 0;
+            long rows = 0;
+            long bytes = 0;
+            List<BatchReport.Failure> failures = new ArrayList<>();
+            for (Future<FileResult> result : results) {
+                FileResult fileResult = getResult(result);
+                if (fileResult.failure != null) {
+                    failures.add(fileResult.failure);
+                } else {
+                    converted++;
+                    rows += fileResult.rows;
+                    bytes += fileResult.bytes;
+                }
+            }
+            return new BatchReport(converted, rows, bytes, System.nanoTime() - start, failures);
+        } finally {
+            pool.shutdownNow();
+            for (ZipFile archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Runs on a worker: never throws, failures are returned as part of the result
+     */
+    private FileResult convertFile(Path input, Path output) {
+        FileResult result = new FileResult();
+        try {
+            Path parent = output.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            result.bytes = Files.size(input);
+            result.rows = converter.convert(input, output);
+        } catch (Exception e) {
+            result.failure = new BatchReport.Failure(input, e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs on a worker: converts one archive entry, streaming it out of the archive
+     */
+    private FileResult convertEntry(Path file, ZipFile archive, ZipEntry entry, Path entryDir, String extension) {
+        FileResult result = new FileResult();
+        Path name = entryName(file, entry);
+        try {
+            Path output = entryDir.resolve(stripExtension(entry.getName()) + extension).normalize();
+            if (!output.startsWith(entryDir.normalize())) {
+                throw new IOException("Entry name leaves the output directory: " + entry.getName());
+            }
+            Files.createDirectories(output.getParent());
+            result.bytes = Math.max(0, entry.getCompressedSize());
+            try (InputStream in = archive.getInputStream(entry)) {
+                result.rows = converter.convert(in, name.toString(), output);
+            }
+        } catch (Exception e) {
+            result.failure = new BatchReport.Failure(name, e);
+        }
+        return result;
+    }
+
+    private static Future<FileResult> failed(Path file, Exception e) {
+        FileResult result = new FileResult();
+        result.failure = new BatchReport.Failure(file, e);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    private static FileResult getResult(Future<FileResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // convertFile catches everything it can recover from; anything else is fatal
+            throw new IllegalStateException("Batch worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Read every unit of inputs in order, one at a time: a plain file by its path,
+     * an archive entry as a stream out of the archive
+     */
+    static void read(InputSet inputs, UnitReader reader) throws IOException, XMLStreamException {
+        for (Path file : inputs.files) {
+            if (!isZip(file)) {
+                reader.read(file, null);
+                continue;
+            }
+            try (ZipFile archive = new ZipFile(file.toFile())) {
+                for (ZipEntry entry : xmlEntries(archive)) {
+                    try (InputStream in = archive.getInputStream(entry)) {
+                        reader.read(entryName(file, entry), in);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The .xml entries of an archive, in archive order; each is its own unit of work
+     */
+    private static List<ZipEntry> xmlEntries(ZipFile archive) {
+        List<ZipEntry> entries = new ArrayList<>();
+        for (Enumeration<? extends ZipEntry> all = archive.entries(); all.hasMoreElements(); ) {
+            ZipEntry entry = all.nextElement();
+            if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.ROOT).endsWith(".xml")) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Name an archive entry is reported under: its path below the archive
+     */
+    private static Path entryName(Path archive, ZipEntry entry) {
+        return archive.resolve(entry.getName());
+    }
+
+    /**
+     * Resolve a directory, file or glob into a sorted list of files
+     */
+    static InputSet listInputs(String input) throws IOException {
+        int globStart = firstGlobChar(input);
+        Path base;
+        String pattern;
+        if (globStart < 0) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                if (!Files.isRegularFile(path)) {
+                    throw new IOException("Input not found: " + input);
+                }
+                Path parent = path.toAbsolutePath().getParent();
+                return new InputSet(parent, Collections.singletonList(path));
+            }
+            base = path;
+            pattern = DEFAULT_PATTERN;
+        } else {
+            int separator = Math.max(input.lastIndexOf('/', globStart), input.lastIndexOf(File.separatorChar, globStart));
+            base = Paths.get(separator < 0 ? "." : input.substring(0, separator + 1));
+            pattern = input.substring(separator + 1);
+        }
+
+        PathMatcher matcher = globMatcher(pattern);
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length;
+        final Path root = base;
+        try (Stream<Path> paths = Files.walk(root, maxDepth)) {
+            List<Path> files = paths
+                .filter(Files::isRegularFile)
+                .filter(path -> matcher.matches(root.relativize(path)))
+                .sorted()
+                .collect(Collectors.toList());
+            return new InputSet(root, files);
+        }
+    }
+
+    /**
+     * Glob matcher where **&#47; may also stand for no directory at all. A Java
+     * glob needs at least one directory there, so in/**&#47;*.xml alone would
+     * skip in/a.xml.
+     */
+    private static PathMatcher globMatcher(String pattern) {
+        PathMatcher nested = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        if (!pattern.contains("**/")) {
+            return nested;
+        }
+        PathMatcher flat = FileSystems.getDefault().getPathMatcher("glob:" + pattern.replace("**/", ""));
+        return path -> nested.matches(path) || flat.matches(path);
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * outputDir/relative/path/name.csv for base/relative/path/name.xml (or name.xml.gz)
+     */
+    static Path outputPath(Path base, Path input, Path outputDir) {
+        return outputPath(base, input, outputDir, ".csv");
+    }
+
+    static Path outputPath(Path base, Path input, Path outputDir, String extension) {
+        Path relative = base.toAbsolutePath().normalize().relativize(input.toAbsolutePath().normalize());
+        String csvName = stripExtension(relative.getFileName().toString()) + extension;
+        Path parent = relative.getParent();
+        return parent != null ? outputDir.resolve(parent.toString()).resolve(csvName) : outputDir.resolve(csvName);
+    }
+
+    /**
+     * archive.zip converts into a directory named archive, next to where its CSV would be
+     */
+    private static Path archiveDir(Path archive, Path output) {
+        return output.resolveSibling(stripExtension(archive.getFileName().toString()));
+    }
+
+    /**
+     * Inputs that share their output with another input, each with the reason.
+     * An archive claims its whole directory, so an input converted into it
+     * collides with the archive even when no entry has its name.
+     */
+    static Map<Path, String> outputCollisions(InputSet inputs, Path outputDir, String extension) {
+        Map<Path, List<Path>> byOutput = new TreeMap<>();
+        Set<Path> archiveDirs = new HashSet<>();
+        for (Path file : inputs.files) {
+            Path output = outputPath(inputs.base, file, outputDir, extension);
+            if (isZip(file)) {
+                output = archiveDir(file, output);
+                archiveDirs.add(output);
+            }
+            byOutput.computeIfAbsent(output, key -> new ArrayList<>()).add(file);
+        }
+        Map<Path, String> collisions = new HashMap<>();
+        for (Map.Entry<Path, List<Path>> claim : byOutput.entrySet()) {
+            List<Path> owners = new ArrayList<>(claim.getValue());
+            for (Path dir = claim.getKey().getParent(); dir != null && dir.startsWith(outputDir);
+                 dir = dir.getParent()) {
+                if (archiveDirs.contains(dir)) {
+                    owners.addAll(byOutput.get(dir));
+                }
+            }
+            if (owners.size() > 1) {
+                String reason = "Output " + claim.getKey() + " would be written for each of " + owners;
+                for (Path owner : owners) {
+                    collisions.putIfAbsent(owner, reason);
+                }
+            }
+        }
+        return collisions;
+    }
+
+    /**
+     * name without its extension, and without .gz before that
+     */
+    private static String stripExtension(String name) {
+        if (name.toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        int dot = name.lastIndexOf('.');
+        int slash = name.lastIndexOf('/');
+        return dot > slash + 1 ? name.substring(0, dot) : name;
+    }
+
+    static boolean isZip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    private static ThreadFactory workerThreads() {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Files to convert and the directory their output paths are relative to
+     */
+    static class InputSet {
+        final Path base;
+        final List<Path> files;
+
+        InputSet(Path base, List<Path> files) {
+            this.base = base;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Reads one unit of an {@link InputSet}
+     */
+    interface UnitReader {
+        /**
+         * @param in the entry's content for an archive entry, null for a file to be read from name
+         */
+        void read(Path name, InputStream in) throws IOException, XMLStreamException;
+    }
+
+    private static class FileResult {
+        long rows;
+        long bytes;
+        BatchReport.Failure failure;
+    }
+}
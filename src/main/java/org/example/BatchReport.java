@@ -0,0 +1,106 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outcome of a batch run: counts, throughput and per-file failures
+ */
+public class BatchReport {
+
+    private final int filesConverted;
+    private final long rowsWritten;
+    private final long bytesRead;
+    private final long elapsedNanos;
+    private final List<Failure> failures;
+
+    public BatchReport(int filesConverted, long rowsWritten, long bytesRead, long elapsedNanos, List<Failure> failures) {
+        this.filesConverted = filesConverted;
+        this.rowsWritten = rowsWritten;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+        this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    public int getFilesConverted() {
+        return filesConverted;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public double getFilesPerSecond() {
+        return perSecond(filesConverted + failures.size());
+    }
+
+    public double getRowsPerSecond() {
+        return perSecond(rowsWritten);
+    }
+
+    public double getMegabytesPerSecond() {
+        return perSecond(bytesRead) / (1024 * 1024);
+    }
+
+    /**
+     * Human readable summary, one line per failure
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT,
+            "Converted %d files (%d failed), %d rows in %.2f s: %.1f files/s, %.0f rows/s, %.1f MB/s",
+            filesConverted, failures.size(), rowsWritten, elapsedNanos / 1e9,
+            getFilesPerSecond(), getRowsPerSecond(), getMegabytesPerSecond()));
+        for (Failure failure : failures) {
+            sb.append(System.lineSeparator()).append("  FAILED ").append(failure.getFile())
+                .append(": ").append(failure.getMessage());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private double perSecond(double count) {
+        return elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * A file that could not be converted and why
+     */
+    public static class Failure {
+        private final Path file;
+        private final String message;
+
+        public Failure(Path file, Throwable cause) {
+            this.file = file;
+            this.message = cause.getMessage() != null ? cause.getClass().getSimpleName() + ": " + cause.getMessage()
+                : cause.getClass().getName();
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes synthetic camt.053 documents for load and soak testing, version 08
+ * unless another {@link Camt053Version} is given.
+ *
+ * One document holds AppHdr plus a BkToCstmrStmt whose Stmt elements are the
+ * pages of one account statement: OPBD of each page equals CLBD of the page
+ * before, and CLBD/CLAV equal OPBD plus the signed entries of the page.
+ * Entries carry NtryDtls/TxDtls whose amounts add up to the entry amount.
+ * Before version 08 Ntry/Sts is a bare code, RltdPties has no Pty level and
+ * TxDtls amounts are given as AmtDtls/TxAmt.
+ *
+ * Output is fully determined by the seed and size parameters, and is streamed
+ * to disk: each page is generated twice from the same seed (once for the
+ * balances and totals, once for the entries), so memory use does not depend
+ * on the size of the document.
+ */
+public class Camt053CorpusGenerator {
+
+    static final String HEADER_NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:head.001.001.02";
+
+    private static final String[] COUNTERPARTIES = {
+        "ACME TRADING CO LTD", "SIAM LOGISTICS", "NORTHWIND SUPPLIES", "CONTOSO PAYROLL",
+        "GLOBEX CORPORATION", "INITECH SERVICES", "UMBRELLA RETAIL", "STARK INDUSTRIES"
+    };
+
+    private final long seed;
+    private final int statements;
+    private final int entriesPerStatement;
+    private final int txDetailsPerEntry;
+    private final Camt053Version version;
+    private final String currency = "THB";
+
+    public Camt053CorpusGenerator(long seed, int statements, int entriesPerStatement, int txDetailsPerEntry) {
+        this(seed, statements, entriesPerStatement, txDetailsPerEntry, Camt053Version.V08);
+    }
+
+    public Camt053CorpusGenerator(long seed, int statements, int entriesPerStatement, int txDetailsPerEntry,
+                                  Camt053Version version) {
+        if (statements < 1 || entriesPerStatement < 0 || txDetailsPerEntry < 0) {
+            throw new IllegalArgumentException("Need at least one statement and non-negative sizes");
+        }
+        this.seed = seed;
+        this.statements = statements;
+        this.entriesPerStatement = entriesPerStatement;
+        this.txDetailsPerEntry = txDetailsPerEntry;
+        this.version = version;
+    }
+
+    /**
+     * Write the document to a file
+     */
+    public void write(Path output) throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Write the document to a stream; the stream is not closed
+     */
+    public void write(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        Random documentRandom = new Random(seed);
+        LocalDate date = LocalDate.of(2025, 1, 1).plusDays(documentRandom.nextInt(365));
+        String accountId = String.format("%010d", documentRandom.nextInt(Integer.MAX_VALUE));
+        String messageId = "GEN" + Long.toHexString(seed).toUpperCase() + "-" + date.toString().replace("-", "");
+
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("RequestPayload");
+        xml.writeCharacters("\n");
+        writeAppHdr(xml, messageId, date);
+
+        xml.writeStartElement("Document");
+        xml.writeDefaultNamespace(version.getNamespace());
+        xml.writeStartElement("BkToCstmrStmt");
+        xml.writeStartElement("GrpHdr");
+        element(xml, "MsgId", messageId);
+        element(xml, "CreDtTm", date + "T23:59:59");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        // Opening balance of the first page, in minor units
+        long opening = 100_000_000L + (long) documentRandom.nextInt(1_000_000_000);
+        for (int page = 0; page < statements; page++) {
+            opening = writeStatement(xml, page, date, accountId, messageId, opening);
+        }
+
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+        xml.close();
+    }
+
+    private void writeAppHdr(XMLStreamWriter xml, String messageId, LocalDate date) throws XMLStreamException {
+        xml.writeStartElement("AppHdr");
+        xml.writeDefaultNamespace(HEADER_NAMESPACE);
+        writeBic(xml, "Fr", "GENBTHBKXXX");
+        writeBic(xml, "To", "CUSTTHBKXXX");
+        element(xml, "BizMsgIdr", messageId);
+        element(xml, "MsgDefIdr", version.getMessageDefinition());
+        element(xml, "CreDt", date + "T23:59:59Z");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void writeBic(XMLStreamWriter xml, String party, String bic) throws XMLStreamException {
+        xml.writeStartElement(party);
+        xml.writeStartElement("FIId");
+        xml.writeStartElement("FinInstnId");
+        element(xml, "BICFI", bic);
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    /**
+     * Write one Stmt page; returns its closing balance
+     */
+    private long writeStatement(XMLStreamWriter xml, int page, LocalDate date, String accountId, String messageId,
+                                long opening) throws XMLStreamException {
+        // First pass: totals needed by Bal and TxsSummry, which precede the entries
+        Random totalsRandom = pageRandom(page);
+        long credits = 0;
+        long debits = 0;
+        int creditCount = 0;
+        for (int i = 0; i < entriesPerStatement; i++) {
+            boolean credit = totalsRandom.nextBoolean();
+            long amount = nextAmount(totalsRandom);
+            skipDetails(totalsRandom);
+            if (credit) {
+                credits += amount;
+                creditCount++;
+            } else {
+                debits += amount;
+            }
+        }
+        long closing = opening + credits - debits;
+
+        xml.writeStartElement("Stmt");
+        element(xml, "Id", messageId + "-" + (page + 1));
+        xml.writeStartElement("StmtPgntn");
+        element(xml, "PgNb", String.valueOf(page + 1));
+        element(xml, "LastPgInd", String.valueOf(page == statements - 1));
+        xml.writeEndElement();
+        element(xml, "ElctrncSeqNb", String.valueOf(page + 1));
+        element(xml, "CreDtTm", date + "T23:59:59");
+        xml.writeStartElement("Acct");
+        xml.writeStartElement("Id");
+        xml.writeStartElement("Othr");
+        element(xml, "Id", accountId);
+        xml.writeEndElement();
+        xml.writeEndElement();
+        element(xml, "Ccy", currency);
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        writeBalance(xml, "OPBD", opening, date);
+        writeBalance(xml, "CLBD", closing, date);
+        writeBalance(xml, "CLAV", closing, date);
+        writeSummary(xml, creditCount, credits, entriesPerStatement - creditCount, debits);
+
+        // Second pass: same random sequence, now written out
+        Random entryRandom = pageRandom(page);
+        for (int i = 0; i < entriesPerStatement; i++) {
+            writeEntry(xml, entryRandom, page, i, date);
+        }
+
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        return closing;
+    }
+
+    private void writeBalance(XMLStreamWriter xml, String type, long units, LocalDate date) throws XMLStreamException {
+        xml.writeStartElement("Bal");
+        xml.writeStartElement("Tp");
+        xml.writeStartElement("CdOrPrtry");
+        element(xml, "Cd", type);
+        xml.writeEndElement();
+        xml.writeEndElement();
+        amount(xml, Math.abs(units));
+        element(xml, "CdtDbtInd", units < 0 ? "DBIT" : "CRDT");
+        xml.writeStartElement("Dt");
+        element(xml, "Dt", date.toString());
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void writeSummary(XMLStreamWriter xml, int creditCount, long credits, int debitCount, long debits)
+        throws XMLStreamException {
+        xml.writeStartElement("TxsSummry");
+        xml.writeStartElement("TtlCdtNtries");
+        element(xml, "NbOfNtries", String.valueOf(creditCount));
+        element(xml, "Sum", decimal(credits));
+        xml.writeEndElement();
+        xml.writeStartElement("TtlDbtNtries");
+        element(xml, "NbOfNtries", String.valueOf(debitCount));
+        element(xml, "Sum", decimal(debits));
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void writeEntry(XMLStreamWriter xml, Random random, int page, int index, LocalDate date)
+        throws XMLStreamException {
+        boolean credit = random.nextBoolean();
+        long amount = nextAmount(random);
+        String indicator = credit ? "CRDT" : "DBIT";
+        String reference = "ASR" + (page + 1) + "-" + (index + 1);
+
+        xml.writeStartElement("Ntry");
+        amount(xml, amount);
+        element(xml, "CdtDbtInd", indicator);
+        if (version.hasStatusChoice()) {
+            xml.writeStartElement("Sts");
+            element(xml, "Cd", "BOOK");
+            xml.writeEndElement();
+        } else {
+            element(xml, "Sts", "BOOK");
+        }
+        xml.writeStartElement("BookgDt");
+        element(xml, "Dt", date.toString());
+        xml.writeEndElement();
+        xml.writeStartElement("ValDt");
+        element(xml, "Dt", date.toString());
+        xml.writeEndElement();
+        element(xml, "AcctSvcrRef", reference);
+        xml.writeStartElement("BkTxCd");
+        xml.writeStartElement("Domn");
+        element(xml, "Cd", "PMNT");
+        xml.writeStartElement("Fmly");
+        element(xml, "Cd", credit ? "RCDT" : "ICDT");
+        element(xml, "SubFmlyCd", "ESCT");
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+
+        if (txDetailsPerEntry > 0) {
+            xml.writeStartElement("NtryDtls");
+            if (txDetailsPerEntry > 1) {
+                xml.writeStartElement("Btch");
+                element(xml, "NbOfTxs", String.valueOf(txDetailsPerEntry));
+                xml.writeEndElement();
+            }
+            long remaining = amount;
+            for (int tx = 0; tx < txDetailsPerEntry; tx++) {
+                int counterparty = random.nextInt(COUNTERPARTIES.length);
+                // Split the entry amount, leaving at least one minor unit for every remaining TxDtls
+                long part = tx == txDetailsPerEntry - 1
+                    ? remaining
+                    : 1 + (long) (random.nextDouble() * (remaining - (txDetailsPerEntry - tx)) / (txDetailsPerEntry - tx));
+                remaining -= part;
+                writeTransactionDetails(xml, reference, tx, part, indicator, credit, COUNTERPARTIES[counterparty]);
+            }
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void writeTransactionDetails(XMLStreamWriter xml, String reference, int tx, long amount, String indicator,
+                                         boolean credit, String counterparty) throws XMLStreamException {
+        String suffix = reference + "-" + (tx + 1);
+        xml.writeStartElement("TxDtls");
+        xml.writeStartElement("Refs");
+        element(xml, "AcctSvcrRef", "TX" + suffix);
+        element(xml, "EndToEndId", "E2E" + suffix);
+        element(xml, "TxId", "TXID" + suffix);
+        xml.writeEndElement();
+        // Version 08 added TxDtls/Amt and the Pty level
+        boolean since08 = version.compareTo(Camt053Version.V08) >= 0;
+        if (since08) {
+            amount(xml, amount);
+        }
+        element(xml, "CdtDbtInd", indicator);
+        if (!since08) {
+            xml.writeStartElement("AmtDtls");
+            xml.writeStartElement("TxAmt");
+            amount(xml, amount);
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        xml.writeStartElement("RltdPties");
+        // The counterparty is the debtor of a credit and the creditor of a debit
+        xml.writeStartElement(credit ? "Dbtr" : "Cdtr");
+        if (since08) {
+            xml.writeStartElement("Pty");
+        }
+        element(xml, "Nm", counterparty);
+        if (since08) {
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeStartElement(credit ? "DbtrAcct" : "CdtrAcct");
+        xml.writeStartElement("Id");
+        xml.writeStartElement("Othr");
+        element(xml, "Id", String.format("%010d", Math.abs(counterparty.hashCode()) % 1_000_000_000));
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeEndElement();
+        xml.writeStartElement("RmtInf");
+        element(xml, "Ustrd", "INVOICE " + suffix);
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    /**
+     * Consume the same random values writeEntry uses for the TxDtls split
+     */
+    private void skipDetails(Random random) {
+        for (int tx = 0; tx < txDetailsPerEntry; tx++) {
+            random.nextInt(COUNTERPARTIES.length);
+            if (tx < txDetailsPerEntry - 1) {
+                random.nextDouble();
+            }
+        }
+    }
+
+    /**
+     * Entry amount in minor units, large enough to split over all TxDtls
+     */
+    private long nextAmount(Random random) {
+        long amount = 1 + (long) (random.nextDouble() * random.nextDouble() * 10_000_000L);
+        return Math.max(amount, txDetailsPerEntry);
+    }
+
+    private Random pageRandom(int page) {
+        return new Random(seed * 1_000_003L + page);
+    }
+
+    private void amount(XMLStreamWriter xml, long units) throws XMLStreamException {
+        xml.writeStartElement("Amt");
+        xml.writeAttribute("Ccy", currency);
+        xml.writeCharacters(decimal(units));
+        xml.writeEndElement();
+    }
+
+    /**
+     * Non-negative minor units as an amount with two decimals
+     */
+    private static String decimal(long units) {
+        long cents = units % 100;
+        return (units / 100) + (cents < 10 ? ".0" : ".") + cents;
+    }
+
+    private static void element(XMLStreamWriter xml, String name, String text) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+}
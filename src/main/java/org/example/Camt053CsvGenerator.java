@@ -1,132 +1,140 @@
 package org.example;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * Generates CSV output from CAMT.053 data
+ * Generates CSV output from CAMT.053 data. Rows are rendered by
+ * {@link Camt053RowEncoder} with a {@link CsvLayout}, so they always match the
+ * files the converters write.
+ *
+ * With {@link CsvLayout#DEFAULT}:
+ * <pre>
+ * Bal|MsgId|ElctrncSeqNb|PgNb||BalDt|Ccy|ClsgBal|OpngBal|NetMvmnt||ClsgCdtDbtInd|||||FromBIC|ToBIC|AccountId|LastPgInd|StmtId
+ * Trx|MsgId|ElctrncSeqNb|PgNb|X|BookgDt|Ccy|Amt|Sts||AcctSvcrRef|CdtDbtInd|SignedAmt|TxCdtDbtInd|EndToEndId|Counterparty|FromBIC|ToBIC|AccountId|LastPgInd|StmtId
+ * </pre>
+ * Rows bound for a stream should go through {@link #newEncoder} and
+ * {@link #write}, which encode straight into the output buffer; the generate
+ * methods build one String per row, without the line separator, for callers
+ * that need Strings. Not thread-safe: the encoder and its row buffer are reused.
  */
 public class Camt053CsvGenerator {
-    
-    private static final String PIPE = "|";
-    private static final String EMPTY = "";
-    
+
+    private static final int ROW_BUFFER_SIZE = 16 * 1024;
+
+    private final CsvLayout layout;
+    private final RowBuffer row;
+    private final Camt053RowEncoder encoder;
+    private StatementInfo statement;
+
+    public Camt053CsvGenerator(CsvLayout layout) {
+        this.layout = layout;
+        this.row = new RowBuffer(layout);
+        this.encoder = new Camt053RowEncoder(row, ROW_BUFFER_SIZE, layout);
+    }
+
+    public Camt053CsvGenerator() {
+        this(CsvLayout.DEFAULT);
+    }
+
     /**
-     * Generate CSV lines from CAMT.053 data
+     * An encoder writing this generator's layout to out
      */
-    public List<String> generate(Camt053Data data) {
-        List<String> csvLines = new ArrayList<>();
-        
-        // Add balance row (one per statement)
-        csvLines.add(generateBalanceRow(data));
-        
-        // Add transaction rows (one per Ntry)
-        for (TransactionInfo transaction : data.getTransactions()) {
-            csvLines.add(generateTransactionRow(data, transaction));
-        }
-        
-        return csvLines;
+    public Camt053RowEncoder newEncoder(OutputStream out) {
+        return new Camt053RowEncoder(out, Camt053RowEncoder.DEFAULT_BUFFER_SIZE, layout);
     }
-    
+
     /**
-     * Generate balance row (Bal|...)
-     * Format: Bal|MsgId|ElctrncSeqNb|PgNb|?|Date|Ccy|ClosingBal|OpeningBal|NetMovement|?|CdtDbtInd|?|?|?|?|FromBIC|ToBIC|AccountId|LastPgInd|StmtId
+     * Write all rows of an already extracted statement to encoder; returns the encoder's row count
      */
-    private String generateBalanceRow(Camt053Data data) {
-        StatementInfo stmt = data.getStatementInfo();
-        BalanceInfo bal = data.getBalanceInfo();
-        
-        return new CsvRowBuilder()
-            .add("Bal")                                    // Row type
-            .add(stmt.getMessageId())                      // Message ID
-            .add(stmt.getElectronicSeqNb())               // Electronic Sequence Number
-            .add(stmt.getPageNumber())                     // Page Number
-            .add(EMPTY)                                    // Unknown field
-            .add(formatDate(bal.getBalanceDate()))         // Balance Date
-            .add(stmt.getCurrency())                       // Currency
-            .add(formatAmount(bal.getClosingBalance()))    // Closing Balance
-            .add(formatAmount(bal.getOpeningBalance()))    // Opening Balance
-            .add(formatAmount(bal.getNetMovement()))       // Net Movement
-            .add(EMPTY)                                    // Unknown field
-            .add(bal.getCreditDebitIndicator())            // Credit/Debit Indicator
-            .add(EMPTY)                                    // Unknown field
-            .add(EMPTY)                                    // Unknown field
-            .add(EMPTY)                                    // Unknown field
-            .add(EMPTY)                                    // Unknown field
-            .add(stmt.getFromBic())                        // From BIC
-            .add(stmt.getToBic())                          // To BIC
-            .add(stmt.getAccountId())                      // Account ID
-            .add(formatBoolean(stmt.isLastPageIndicator())) // Last Page Indicator
-            .add(stmt.getStatementId())                    // Statement ID
-            .build();
+    public static long write(Camt053Data data, Camt053RowEncoder encoder) throws IOException {
+        encoder.onStatement(data.getStatementInfo(), data.getBalanceInfo());
+        for (TransactionInfo transaction : data.getTransactions()) {
+            encoder.onTransaction(transaction);
+        }
+        encoder.onStatementEnd();
+        return encoder.getRowCount();
     }
-    
+
     /**
-     * Generate transaction row (Trx|...)
-     * Format: Trx|MsgId|ElctrncSeqNb|PgNb|?|Date|Ccy|Amount|Status|?|AcctSvcrRef|CdtDbtInd|SignedAmount|TxCdtDbtInd|?|?|FromBIC|ToBIC|AccountId|LastPgInd|StmtId
+     * Generate CSV lines from CAMT.053 data
      */
-    private String generateTransactionRow(Camt053Data data, TransactionInfo tx) {
-        StatementInfo stmt = data.getStatementInfo();
-        
-        return new CsvRowBuilder()
-            .add("Trx")                                        // Row type
-            .add(stmt.getMessageId())                          // Message ID
-            .add(stmt.getElectronicSeqNb())                   // Electronic Sequence Number
-            .add(stmt.getPageNumber())                         // Page Number
-            .add("X")                                          // Unknown field (appears as "X" in sample)
-            .add(formatDate(tx.getBookingDate()))              // Booking Date
-            .add(stmt.getCurrency())                           // Currency
-            .add(formatAmount(tx.getAmount()))                 // Amount
-            .add(tx.getStatus())                               // Status (e.g., BOOK)
-            .add(EMPTY)                                        // Unknown field
-            .add(tx.getAccountServicerReference())             // Account Servicer Reference
-            .add(tx.getEntryCreditDebitIndicator())           // Entry Credit/Debit Indicator
-            .add(formatAmount(tx.getSignedAmount()))           // Signed Amount
-            .add(tx.getTransactionCreditDebitIndicator())     // Transaction Credit/Debit Indicator
-            .add(EMPTY)                                        // Unknown field
-            .add(EMPTY)                                        // Unknown field
-            .add(stmt.getFromBic())                            // From BIC
-            .add(stmt.getToBic())                              // To BIC
-            .add(stmt.getAccountId())                          // Account ID
-            .add(formatBoolean(stmt.isLastPageIndicator()))   // Last Page Indicator
-            .add(stmt.getStatementId())                        // Statement ID
-            .build();
+    public List<String> generate(Camt053Data data) {
+        List<String> csvLines = new ArrayList<>();
+        generate(data, csvLines::add);
+        return csvLines;
     }
-    
+
     /**
-     * Format date to string (yyyy-MM-dd)
+     * Generate CSV lines from CAMT.053 data, handing each row to the sink as soon as it is built
      */
-    private String formatDate(java.time.LocalDate date) {
-        return date != null ? date.toString() : EMPTY;
+    public void generate(Camt053Data data, Consumer<String> rows) {
+        StatementInfo stmt = data.getStatementInfo();
+        String balanceRow = generateBalanceRow(stmt, data.getBalanceInfo());
+        if (balanceRow != null) {
+            rows.accept(balanceRow);
+        }
+        for (TransactionInfo transaction : data.getTransactions()) {
+            rows.accept(generateTransactionRow(stmt, transaction));
+        }
     }
-    
+
     /**
-     * Format amount to string (without trailing zeros)
+     * The Bal row, or null when the layout has no balance columns
      */
-    private String formatAmount(java.math.BigDecimal amount) {
-        return amount != null ? amount.stripTrailingZeros().toPlainString() : EMPTY;
+    String generateBalanceRow(StatementInfo stmt, BalanceInfo bal) {
+        statement = stmt;
+        try {
+            encoder.onStatement(stmt, bal);
+            encoder.flush();
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return row.take();
     }
-    
+
     /**
-     * Format boolean to string (true/false)
+     * One Trx row
      */
-    private String formatBoolean(boolean value) {
-        return String.valueOf(value);
+    String generateTransactionRow(StatementInfo stmt, TransactionInfo tx) {
+        if (stmt != statement) {
+            statement = stmt;
+            encoder.startStatement(stmt);
+        }
+        try {
+            encoder.writeTransaction(tx);
+            encoder.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return row.take();
     }
-    
+
     /**
-     * Helper class for building CSV rows with pipe delimiter
+     * Holds the bytes of the row just encoded and decodes them in place, without copying them out first
      */
-    private static class CsvRowBuilder {
-        private final List<String> fields = new ArrayList<>();
-        
-        public CsvRowBuilder add(String value) {
-            fields.add(value != null ? value : EMPTY);
-            return this;
+    static final class RowBuffer extends ByteArrayOutputStream {
+        private final int separatorLength;
+
+        RowBuffer(CsvLayout layout) {
+            super(256);
+            this.separatorLength = layout.getLineSeparator().getBytes(StandardCharsets.UTF_8).length;
         }
-        
-        public String build() {
-            return String.join(PIPE, fields);
+
+        /**
+         * The row written since the last call without its line separator, or null if none was
+         */
+        String take() {
+            String text = count == 0 ? null : new String(buf, 0, count - separatorLength, StandardCharsets.UTF_8);
+            reset();
+            return text;
         }
     }
 }
@@ -0,0 +1,220 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Turns {@link Camt053Event}s into CSV rows, one String per row without the
+ * line separator, rendered by {@link Camt053RowEncoder} with a {@link CsvLayout}.
+ * With {@link CsvLayout#DEFAULT} the rows are those of {@link Camt053CsvGenerator}.
+ *
+ * Every event renders at most one row, so downstream demand is passed upstream
+ * as it is; an event without a row, such as a statement end, asks upstream for
+ * one more. A slow subscriber therefore holds back the publisher, and through it
+ * the parse. Serves a single subscriber.
+ */
+public class Camt053CsvProcessor implements Flow.Processor<Camt053Event, String> {
+
+    private static final int ROW_BUFFER_SIZE = 16 * 1024;
+
+    private final Camt053CsvGenerator.RowBuffer row;
+    private final Camt053RowEncoder encoder;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super String> downstream;
+    private long pendingDemand;
+    private boolean cancelled;
+    // Terminal signal that arrived before the subscriber, delivered when it subscribes
+    private boolean completed;
+    private Throwable failure;
+
+    public Camt053CsvProcessor(CsvLayout layout) {
+        this.row = new Camt053CsvGenerator.RowBuffer(layout);
+        this.encoder = new Camt053RowEncoder(row, ROW_BUFFER_SIZE, layout);
+    }
+
+    public Camt053CsvProcessor() {
+        this(CsvLayout.DEFAULT);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Flow.Subscription subscription;
+        boolean complete;
+        Throwable error;
+        lock.lock();
+        try {
+            if (downstream != null) {
+                // Its cancel or request must not reach the subscriber being served
+                subscription = new Rejected();
+                error = new IllegalStateException("Only one subscriber is supported");
+                complete = false;
+            } else {
+                subscription = new Downstream();
+                downstream = subscriber;
+                complete = completed;
+                error = failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriber.onSubscribe(subscription);
+        if (error != null) {
+            subscriber.onError(error);
+        } else if (complete) {
+            subscriber.onComplete();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        lock.lock();
+        try {
+            if (upstream != null || cancelled) {
+                demand = -1;
+            } else {
+                upstream = subscription;
+                demand = pendingDemand;
+                pendingDemand = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (demand < 0) {
+            subscription.cancel();
+        } else if (demand > 0) {
+            subscription.request(demand);
+        }
+    }
+
+    @Override
+    public void onNext(Camt053Event event) {
+        String text;
+        try {
+            switch (event.getType()) {
+                case STATEMENT:
+                    encoder.onStatement(event.getStatement(), event.getBalance());
+                    break;
+                case TRANSACTION:
+                    encoder.onTransaction(event.getTransaction());
+                    break;
+                default:
+                    encoder.onStatementEnd();
+                    break;
+            }
+            encoder.flush();
+            text = row.take();
+        } catch (IOException e) {
+            // Writing to memory does not fail; keep the contract of onNext anyway
+            upstream.cancel();
+            onError(e);
+            return;
+        } finally {
+            row.reset();
+        }
+        if (text == null) {
+            upstream.request(1);
+        } else {
+            downstream.onNext(text);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Flow.Subscriber<? super String> subscriber = terminate(throwable);
+        if (subscriber != null) {
+            subscriber.onError(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        Flow.Subscriber<? super String> subscriber = terminate(null);
+        if (subscriber != null) {
+            subscriber.onComplete();
+        }
+    }
+
+    /**
+     * The subscriber to signal now, or null when the signal waits for it or it cancelled
+     */
+    private Flow.Subscriber<? super String> terminate(Throwable throwable) {
+        lock.lock();
+        try {
+            if (downstream == null) {
+                completed = throwable == null;
+                failure = throwable;
+                return null;
+            }
+            return cancelled ? null : downstream;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The subscriber's side: demand is forwarded upstream, or kept until upstream subscribes
+     */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription subscription;
+            Flow.Subscriber<? super String> rejected = null;
+            lock.lock();
+            try {
+                subscription = upstream;
+                if (subscription == null && n > 0) {
+                    pendingDemand = pendingDemand + n < 0 ? Long.MAX_VALUE : pendingDemand + n;
+                } else if (subscription == null && !cancelled) {
+                    cancelled = true;
+                    rejected = downstream;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (rejected != null) {
+                rejected.onError(new IllegalArgumentException("Requested " + n + " rows, must be positive"));
+            } else if (subscription != null) {
+                // The publisher reports a non-positive request with onError
+                subscription.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription subscription;
+            lock.lock();
+            try {
+                cancelled = true;
+                subscription = upstream;
+            } finally {
+                lock.unlock();
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    /**
+     * Subscription of a subscriber that was turned away; it only gets onError
+     */
+    private static class Rejected implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            // Nothing will be sent
+        }
+
+        @Override
+        public void cancel() {
+            // Already ended
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package org.converter;
+package org.example;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -13,7 +13,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 public class Camt053Data {
-    private Statement statement;
+    private StatementInfo statementInfo;
     private BalanceInfo balanceInfo;
     private List<TransactionInfo> transactions = new ArrayList<>();
     public void addTransaction(TransactionInfo transaction) {
@@ -25,12 +25,12 @@ public class Camt053Data {
  * Statement-level information shared across all rows
  */
 @Data
-class Statement {
-    private String stmtId;
-    private String seqNb;
+class StatementInfo {
+    private String messageId;
+    private String statementId;
+    private String electronicSeqNb;
     private String pageNumber;
     private boolean lastPageIndicator;
-    private String statementId;
     private String currency;
     private String accountId;
     private String fromBic;
@@ -46,6 +46,7 @@ class BalanceInfo {
     private BigDecimal openingBalance;  // OPBD
     private BigDecimal closingBalance;  // CLBD
     private String creditDebitIndicator; // From CLBD
+    private String openingCreditDebitIndicator; // From OPBD
 
     public BigDecimal getNetMovement() {
         if (openingBalance != null && closingBalance != null) {
@@ -53,6 +54,24 @@ class BalanceInfo {
         }
         return BigDecimal.ZERO;
     }
+
+    /**
+     * Opening balance, negative when OPBD is DBIT
+     */
+    public BigDecimal getSignedOpeningBalance() {
+        return signed(openingBalance, openingCreditDebitIndicator);
+    }
+
+    /**
+     * Closing balance, negative when CLBD is DBIT
+     */
+    public BigDecimal getSignedClosingBalance() {
+        return signed(closingBalance, creditDebitIndicator);
+    }
+
+    private static BigDecimal signed(BigDecimal value, String indicator) {
+        return value != null && "DBIT".equals(indicator) ? value.negate() : value;
+    }
 }
 
 /**
@@ -66,15 +85,65 @@ class TransactionInfo {
     private String accountServicerReference;
     private String entryCreditDebitIndicator;
     private String transactionCreditDebitIndicator;
+    // Set on rows expanded from one TxDtls: amount is the TxDtls amount and signed by its indicator
+    private boolean transactionDetail;
+
+    // Filled from TxDtls when entries are expanded to one row per transaction
+    private String endToEndId;
+    private String counterpartyName;    // Dbtr for credits, Cdtr for debits
+    private String counterpartyAccount; // IBAN or other account id of that party
+
+    // Optional fixed-point form of amount: amountUnits / 10^amountScale, used when amountScale >= 0
+    private long amountUnits;
+    private int amountScale = -1;
+
+    /**
+     * Returns amount, built from the fixed-point form when only that is set
+     */
+    public BigDecimal getAmount() {
+        if (amount == null && amountScale >= 0) {
+            return BigDecimal.valueOf(amountUnits, amountScale);
+        }
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+        this.amountScale = -1;
+    }
+
+    /**
+     * Set amount as minor units plus exponent, e.g. 12345 and 2 for 123.45
+     */
+    public void setScaledAmount(long units, int scale) {
+        this.amount = null;
+        this.amountUnits = units;
+        this.amountScale = scale;
+    }
+
+    public boolean hasScaledAmount() {
+        return amountScale >= 0;
+    }
 
     /**
      * Returns signed amount: positive for CRDT, negative for DBIT
      */
     public BigDecimal getSignedAmount() {
-        if (amount == null) {
+        BigDecimal value = getAmount();
+        if (value == null) {
             return BigDecimal.ZERO;
         }
-        return "DBIT".equals(entryCreditDebitIndicator) ? amount.negate() : amount;
+        return isDebit() ? value.negate() : value;
+    }
+
+    /**
+     * Signed amount in minor units, only meaningful when hasScaledAmount()
+     */
+    public long getSignedAmountUnits() {
+        return isDebit() ? -amountUnits : amountUnits;
     }
 
+    private boolean isDebit() {
+        return "DBIT".equals(transactionDetail ? transactionCreditDebitIndicator : entryCreditDebitIndicator);
+    }
 }
@@ -0,0 +1,72 @@
+package org.example;
+
+/**
+ * One item published by {@link Camt053Publisher}: the start of a statement
+ * with its balances, one of its entries, or its end
+ */
+public final class Camt053Event {
+
+    public enum Type {
+        /** Stmt header and balances, before any of its entries */
+        STATEMENT,
+        /** One Ntry, or one TxDtls when entries are expanded */
+        TRANSACTION,
+        /** The Stmt is complete */
+        STATEMENT_END
+    }
+
+    private final Type type;
+    private final StatementInfo statement;
+    private final BalanceInfo balance;
+    private final TransactionInfo transaction;
+
+    private Camt053Event(Type type, StatementInfo statement, BalanceInfo balance, TransactionInfo transaction) {
+        this.type = type;
+        this.statement = statement;
+        this.balance = balance;
+        this.transaction = transaction;
+    }
+
+    static Camt053Event statement(StatementInfo statement, BalanceInfo balance) {
+        return new Camt053Event(Type.STATEMENT, statement, balance, null);
+    }
+
+    static Camt053Event transaction(StatementInfo statement, TransactionInfo transaction) {
+        return new Camt053Event(Type.TRANSACTION, statement, null, transaction);
+    }
+
+    static Camt053Event statementEnd(StatementInfo statement) {
+        return new Camt053Event(Type.STATEMENT_END, statement, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The statement the event belongs to, for every type
+     */
+    public StatementInfo getStatement() {
+        return statement;
+    }
+
+    /**
+     * Balances of a STATEMENT event, otherwise null
+     */
+    public BalanceInfo getBalance() {
+        return balance;
+    }
+
+    /**
+     * Entry of a TRANSACTION event, otherwise null
+     */
+    public TransactionInfo getTransaction() {
+        return transaction;
+    }
+
+    @Override
+    public String toString() {
+        return "Camt053Event{" + type + ", statement=" + (statement != null ? statement.getStatementId() : null)
+            + (transaction != null ? ", transaction=" + transaction.getAccountServicerReference() : "") + "}";
+    }
+}
@@ -0,0 +1,134 @@
+package org.example;
+
+import com.prowidesoftware.swift.model.mx.AppHdr;
+import com.prowidesoftware.swift.model.mx.MxCamt05300108;
+import com.prowidesoftware.swift.model.mx.dic.AccountStatement9;
+import com.prowidesoftware.swift.model.mx.dic.BankToCustomerStatementV08;
+import com.prowidesoftware.swift.model.mx.dic.CashBalance8;
+import com.prowidesoftware.swift.model.mx.dic.CreditDebitCode;
+import com.prowidesoftware.swift.model.mx.dic.DateAndDateTime2Choice;
+import com.prowidesoftware.swift.model.mx.dic.EntryDetails9;
+import com.prowidesoftware.swift.model.mx.dic.ReportEntry10;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts CAMT.053 data from a parsed Prowide MxCamt05300108, one Camt053Data
+ * per Stmt. This is the reference mapping that {@link Camt053StreamingExtractor}
+ * follows with one row per Ntry.
+ */
+public class Camt053Extractor {
+
+    public List<Camt053Data> extract(MxCamt05300108 camt053) {
+        BankToCustomerStatementV08 document = camt053.getBkToCstmrStmt();
+        AppHdr header = camt053.getAppHdr();
+
+        // BizMsgIdr of the AppHdr, GrpHdr/MsgId when there is no header
+        String messageId = header != null ? header.reference() : null;
+        if (messageId == null && document.getGrpHdr() != null) {
+            messageId = document.getGrpHdr().getMsgId();
+        }
+
+        List<Camt053Data> statements = new ArrayList<>();
+        for (AccountStatement9 stmt : document.getStmt()) {
+            StatementInfo info = extractStatementInfo(stmt);
+            info.setMessageId(messageId);
+            info.setFromBic(header != null ? header.from() : null);
+            info.setToBic(header != null ? header.to() : null);
+
+            Camt053Data data = new Camt053Data();
+            data.setStatementInfo(info);
+            data.setBalanceInfo(extractBalanceInfo(stmt));
+            for (ReportEntry10 entry : stmt.getNtry()) {
+                data.addTransaction(extractTransaction(entry));
+            }
+            statements.add(data);
+        }
+        return statements;
+    }
+
+    /**
+     * Identification, pagination and account of one statement
+     */
+    private StatementInfo extractStatementInfo(AccountStatement9 stmt) {
+        StatementInfo info = new StatementInfo();
+        info.setStatementId(stmt.getId());
+        if (stmt.getElctrncSeqNb() != null) {
+            info.setElectronicSeqNb(stmt.getElctrncSeqNb().toPlainString());
+        }
+        if (stmt.getStmtPgntn() != null) {
+            info.setPageNumber(stmt.getStmtPgntn().getPgNb());
+            info.setLastPageIndicator(stmt.getStmtPgntn().isLastPgInd());
+        }
+        if (stmt.getAcct() != null) {
+            info.setCurrency(stmt.getAcct().getCcy());
+            if (stmt.getAcct().getId() != null && stmt.getAcct().getId().getOthr() != null) {
+                info.setAccountId(stmt.getAcct().getId().getOthr().getId());
+            }
+        }
+        return info;
+    }
+
+    /**
+     * OPBD and CLBD with their indicators, CLBD also provides the date
+     */
+    private BalanceInfo extractBalanceInfo(AccountStatement9 stmt) {
+        BalanceInfo info = new BalanceInfo();
+        for (CashBalance8 bal : stmt.getBal()) {
+            String type = bal.getTp() != null && bal.getTp().getCdOrPrtry() != null
+                ? bal.getTp().getCdOrPrtry().getCd() : null;
+            if ("OPBD".equals(type)) {
+                info.setOpeningBalance(bal.getAmt() != null ? bal.getAmt().getValue() : null);
+                info.setOpeningCreditDebitIndicator(code(bal.getCdtDbtInd()));
+            } else if ("CLBD".equals(type)) {
+                info.setClosingBalance(bal.getAmt() != null ? bal.getAmt().getValue() : null);
+                info.setCreditDebitIndicator(code(bal.getCdtDbtInd()));
+                info.setBalanceDate(date(bal.getDt()));
+            }
+        }
+        return info;
+    }
+
+    /**
+     * One Ntry; the transaction indicator comes from the first TxDtls, or the entry
+     */
+    private TransactionInfo extractTransaction(ReportEntry10 entry) {
+        TransactionInfo tx = new TransactionInfo();
+        tx.setAmount(entry.getAmt() != null ? entry.getAmt().getValue() : null);
+        tx.setEntryCreditDebitIndicator(code(entry.getCdtDbtInd()));
+        if (entry.getSts() != null) {
+            tx.setStatus(entry.getSts().getCd() != null ? entry.getSts().getCd() : entry.getSts().getPrtry());
+        }
+        tx.setBookingDate(date(entry.getBookgDt()));
+        tx.setAccountServicerReference(entry.getAcctSvcrRef());
+
+        for (EntryDetails9 details : entry.getNtryDtls()) {
+            if (tx.getTransactionCreditDebitIndicator() == null && !details.getTxDtls().isEmpty()) {
+                tx.setTransactionCreditDebitIndicator(code(details.getTxDtls().get(0).getCdtDbtInd()));
+            }
+        }
+        // Fallback: if no transaction details, use entry-level indicator
+        if (tx.getTransactionCreditDebitIndicator() == null) {
+            tx.setTransactionCreditDebitIndicator(tx.getEntryCreditDebitIndicator());
+        }
+        return tx;
+    }
+
+    private static String code(CreditDebitCode indicator) {
+        return indicator != null ? indicator.value() : null;
+    }
+
+    /**
+     * Dt, or the date part of DtTm
+     */
+    private static LocalDate date(DateAndDateTime2Choice choice) {
+        if (choice == null) {
+            return null;
+        }
+        if (choice.getDt() != null) {
+            return choice.getDt();
+        }
+        return choice.getDtTm() != null ? choice.getDtTm().toLocalDate() : null;
+    }
+}
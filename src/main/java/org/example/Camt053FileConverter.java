@@ -0,0 +1,430 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts one CAMT.053 file into one CSV file with the streaming path.
+ *
+ * Plain input is read through {@link MappedXmlInput}; a .gz input is inflated
+ * while parsing, and an output ending in .gz is written gzip-compressed, so
+ * neither needs a temporary file.
+ */
+public class Camt053FileConverter {
+
+    // Time one in this many transaction rows; format time is scaled up from the sample
+    private static final int FORMAT_SAMPLE_RATE = 16;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final ConversionOptions options;
+    private final int bufferSize;
+    private final ConversionMetrics metrics;
+    private final BalanceReconciler.Mode reconciliation;
+
+    public Camt053FileConverter(ConversionOptions options) {
+        this.options = options;
+        this.bufferSize = options.getBufferSize();
+        this.metrics = options.getMetrics();
+        this.reconciliation = options.getReconciliation();
+    }
+
+    public Camt053FileConverter(int bufferSize) {
+        this(new ConversionOptions().setBufferSize(bufferSize));
+    }
+
+    public Camt053FileConverter() {
+        this(new ConversionOptions());
+    }
+
+    /**
+     * Convert input to output; returns the number of CSV rows written. Rows
+     * are written to a hidden file next to output that replaces it once
+     * complete, so output never holds a partial CSV.
+     */
+    public long convert(Path input, Path output) throws IOException, XMLStreamException {
+        if (options.getShardKey() != null) {
+            try (Source source = Source.open(input)) {
+                return convertSharded(source, output);
+            }
+        }
+        ConversionCache cache = options.getCache();
+        if (cache != null && options.getDuplicateIndex() == null) {
+            return cache.convert(input, output, options.cacheVariant(), this::convertUncached);
+        }
+        return convertUncached(input, output);
+    }
+
+    /**
+     * Convert without consulting the cache. With a checkpoint interval, plain
+     * input is converted in chunks by {@link Camt053ParallelConverter}, which can
+     * resume an interrupted run; duplicate checks need a single pass over the
+     * file and are never resumed.
+     */
+    long convertUncached(Path input, Path output) throws IOException, XMLStreamException {
+        if (options.getCheckpointInterval() > 0 && options.getDuplicateIndex() == null && !isGzip(input)) {
+            return new Camt053ParallelConverter(ForkJoinPool.commonPool(),
+                Camt053ParallelConverter.DEFAULT_ENTRIES_PER_CHUNK, options).convertUncached(input, output);
+        }
+        return convertSequential(input, output);
+    }
+
+    /**
+     * Convert in one streaming pass
+     */
+    long convertSequential(Path input, Path output) throws IOException, XMLStreamException {
+        try (Source source = Source.open(input)) {
+            return convert(source, output);
+        }
+    }
+
+    /**
+     * Convert an XML stream, such as an entry of a zip archive, to output; the
+     * stream is read to the end but not closed, and the cache is not used.
+     *
+     * @param name identifies the input in messages
+     */
+    public long convert(InputStream xml, String name, Path output) throws IOException, XMLStreamException {
+        Source source = new Source(name, xml, null, -1, null);
+        return options.getShardKey() != null ? convertSharded(source, output) : convert(source, output);
+    }
+
+    /**
+     * Stream input to handler instead of a CSV file, with the same decoding,
+     * balance checks and duplicate checks as a conversion
+     */
+    public void extract(Path input, Camt053Handler handler) throws IOException, XMLStreamException {
+        try (Source source = Source.open(input)) {
+            extract(source, handler);
+        }
+    }
+
+    /**
+     * Stream an XML stream to handler; the stream is read to the end but not closed
+     *
+     * @param name identifies the input in messages
+     */
+    public void extract(InputStream xml, String name, Camt053Handler handler) throws IOException, XMLStreamException {
+        extract(new Source(name, xml, null, -1, null), handler);
+    }
+
+    /**
+     * Write one file per shard key value, named after output
+     */
+    private long convertSharded(Source source, Path output) throws IOException, XMLStreamException {
+        ShardedCsvOutput shards = new ShardedCsvOutput(output, options.getShardKey(), options.getMaxOpenShards(),
+            options);
+        DuplicateFilter duplicates = options.newDuplicateFilter(shards, source.name);
+        try {
+            parse(source, duplicates != null ? duplicates : shards);
+            shards.close();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            shards.abort();
+            if (duplicates != null) {
+                duplicates.rollback();
+            }
+            if (metrics != null) {
+                metrics.recordFailure();
+            }
+            throw e;
+        }
+        if (duplicates != null) {
+            duplicates.commit();
+        }
+        return shards.getRowCount();
+    }
+
+    private long convert(Source source, Path output) throws IOException, XMLStreamException {
+        // Renaming replaces output rather than writing into it, as it may be a link to a cache entry
+        Path part = ConversionCheckpoint.partPath(output);
+        try {
+            Files.deleteIfExists(part);
+            return write(source, part, output);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            if (metrics != null) {
+                metrics.recordFailure();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the rows of source to part and rename it to output. Keys added to the
+     * duplicate index are only committed once output is in place. With metrics,
+     * stage timings are recorded too: parsing, formatting and writing are
+     * interleaved, so format time is the sampled time spent in the handler
+     * outside output writes, and parse time is whatever is left.
+     */
+    private long write(Source source, Path part, Path output) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+        long allocatedBefore = metrics != null ? ConversionMetrics.threadAllocatedBytes() : -1;
+        OutputStream stream = newOutputStream(part, isGzip(output));
+        TimedOutputStream out = metrics != null ? new TimedOutputStream(stream) : null;
+        Camt053RowEncoder encoder;
+        try {
+            encoder = new Camt053RowEncoder(out != null ? out : stream, bufferSize, options.getLayout());
+        } catch (RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        TimedHandler handler = out != null ? new TimedHandler(encoder, out) : null;
+        Camt053Handler target = handler != null ? handler : encoder;
+        DuplicateFilter duplicates = options.newDuplicateFilter(target, source.name);
+        long rows;
+        try {
+            try (encoder) {
+                parse(source, duplicates != null ? duplicates : target);
+                rows = encoder.getRowCount();
+            }
+            ConversionCache.moveIntoPlace(part, output);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            if (duplicates != null) {
+                duplicates.rollback();
+            }
+            throw e;
+        }
+        if (duplicates != null) {
+            duplicates.commit();
+        }
+        if (metrics != null) {
+            record(source, start, allocatedBefore, handler, out);
+        }
+        return rows;
+    }
+
+    /**
+     * Open output for writing, gzip-compressed if asked
+     */
+    static OutputStream newOutputStream(Path output, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(output);
+        if (!gzip) {
+            return out;
+        }
+        try {
+            return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    /**
+     * Stream the input to the handler, checking duplicates on the way when enabled;
+     * the keys are committed as soon as the input has been read
+     */
+    private void extract(Source source, Camt053Handler handler) throws IOException, XMLStreamException {
+        DuplicateFilter duplicates = options.newDuplicateFilter(handler, source.name);
+        try {
+            parse(source, duplicates != null ? duplicates : handler);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            if (duplicates != null) {
+                duplicates.rollback();
+            }
+            throw e;
+        }
+        if (duplicates != null) {
+            duplicates.commit();
+        }
+    }
+
+    /**
+     * Stream the input to the handler, checking balances on the way when enabled.
+     * Balances are checked on all entries, including duplicates that are dropped.
+     */
+    private void parse(Source source, Camt053Handler handler) throws IOException, XMLStreamException {
+        String input = source.name;
+        BalanceReconciler reconciler = reconciliation == null ? null : new BalanceReconciler(handler, reconciliation,
+            mismatch -> System.err.println("Balance mismatch in " + input + ": " + mismatch));
+        source.extract(options.newExtractor(), reconciler != null ? reconciler : handler);
+        if (reconciler != null) {
+            reconciler.finish();
+        }
+    }
+
+    /**
+     * Whether conversions check entries against a duplicate index, so their
+     * outcome depends on the order files are converted in
+     */
+    boolean checksDuplicates() {
+        return options.getDuplicateIndex() != null;
+    }
+
+    private void record(Source source, long start, long allocatedBefore, TimedHandler handler,
+        TimedOutputStream out) {
+        long readNanos = source.openNanos;
+        long total = System.nanoTime() - start + readNanos;
+        long allocatedAfter = ConversionMetrics.threadAllocatedBytes();
+
+        long formatNanos = handler.estimatedNanos();
+        long parseNanos = Math.max(0, total - readNanos - formatNanos - out.nanos);
+        metrics.recordStage(ConversionMetrics.Stage.READ, readNanos);
+        metrics.recordStage(ConversionMetrics.Stage.PARSE, parseNanos);
+        metrics.recordStage(ConversionMetrics.Stage.FORMAT, formatNanos);
+        metrics.recordStage(ConversionMetrics.Stage.WRITE, out.nanos);
+        metrics.recordFile(total, Math.max(0, source.size), out.bytes, handler.entries,
+            allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1);
+    }
+
+    /**
+     * An opened input: a mapped file, or a stream whose encoding the parser detects
+     */
+    private static class Source implements Closeable {
+        final String name;
+        final InputStream stream;
+        final Charset encoding;
+        final long size;
+        final Closeable resource;
+        long openNanos;
+
+        Source(String name, InputStream stream, Charset encoding, long size, Closeable resource) {
+            this.name = name;
+            this.stream = stream;
+            this.encoding = encoding;
+            this.size = size;
+            this.resource = resource;
+        }
+
+        static Source open(Path input) throws IOException {
+            long start = System.nanoTime();
+            Source source;
+            if (isGzip(input)) {
+                InputStream in = Files.newInputStream(input);
+                try {
+                    InputStream xml = new BufferedInputStream(new GZIPInputStream(in, GZIP_BUFFER_SIZE), GZIP_BUFFER_SIZE);
+                    source = new Source(input.toString(), xml, null, Files.size(input), xml);
+                } catch (IOException e) {
+                    in.close();
+                    throw e;
+                }
+            } else {
+                MappedXmlInput mapped = MappedXmlInput.open(input);
+                source = new Source(input.toString(), mapped.getInputStream(), mapped.getEncoding(), mapped.size(),
+                    mapped);
+            }
+            source.openNanos = System.nanoTime() - start;
+            return source;
+        }
+
+        void extract(Camt053StreamingExtractor extractor, Camt053Handler handler)
+            throws IOException, XMLStreamException {
+            if (encoding != null) {
+                extractor.extract(stream, encoding, handler);
+            } else {
+                extractor.extract(stream, handler);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+
+    /**
+     * Passes rows to the encoder, timing every statement and a sample of
+     * transactions; time spent writing to out is not counted
+     */
+    private static class TimedHandler implements Camt053Handler {
+        private final Camt053Handler target;
+        private final TimedOutputStream out;
+        private long statementNanos;
+        private long sampledNanos;
+        private long sampled;
+        long entries;
+
+        TimedHandler(Camt053Handler target, TimedOutputStream out) {
+            this.target = target;
+            this.out = out;
+        }
+
+        @Override
+        public void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+            long writeNanos = out.nanos;
+            long start = System.nanoTime();
+            target.onStatement(statement, balance);
+            statementNanos += System.nanoTime() - start - (out.nanos - writeNanos);
+        }
+
+        @Override
+        public void onTransaction(TransactionInfo transaction) throws IOException {
+            if (entries++ % FORMAT_SAMPLE_RATE != 0) {
+                target.onTransaction(transaction);
+                return;
+            }
+            long writeNanos = out.nanos;
+            long start = System.nanoTime();
+            target.onTransaction(transaction);
+            sampledNanos += System.nanoTime() - start - (out.nanos - writeNanos);
+            sampled++;
+        }
+
+        @Override
+        public void onStatementEnd() throws IOException {
+            target.onStatementEnd();
+        }
+
+        long estimatedNanos() {
+            return statementNanos + (sampled > 0 ? sampledNanos * entries / sampled : 0);
+        }
+    }
+
+    /**
+     * Counts bytes and time spent in the underlying stream; the encoder writes whole buffers
+     */
+    private static class TimedOutputStream extends FilterOutputStream {
+        long bytes;
+        long nanos;
+
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
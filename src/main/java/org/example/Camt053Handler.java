@@ -0,0 +1,34 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * Receives CAMT.053 data one statement and one entry at a time
+ */
+public interface Camt053Handler {
+
+    /**
+     * Called once per Stmt, after its header and balances have been read
+     * and before any of its entries
+     */
+    void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException;
+
+    /**
+     * Called once per Ntry, in document order
+     */
+    void onTransaction(TransactionInfo transaction) throws IOException;
+
+    /**
+     * Called once per Ntry after the transactions it was handed out as, with the
+     * entry's own amount and indicator; the rows of an expanded entry need not
+     * add up to the entry amount, so balances are checked against this
+     */
+    default void onEntryEnd(TransactionInfo entry) throws IOException {
+    }
+
+    /**
+     * Called when the current Stmt is complete
+     */
+    default void onStatementEnd() throws IOException {
+    }
+}
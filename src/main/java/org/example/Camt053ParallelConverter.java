@@ -0,0 +1,537 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts one large CAMT.053 file using all cores.
+ *
+ * The file is scanned once for Ntry byte ranges (see {@link NtryChunkScanner}).
+ * Everything outside those ranges - AppHdr, statement headers and balances -
+ * is parsed sequentially as a small skeleton document. The Ntry chunks are
+ * parsed and encoded on a fork-join pool, and the resulting bytes are written
+ * in document order, each Bal row ahead of its statement's Trx rows. Output is
+ * identical to {@link Camt053FileConverter}.
+ *
+ * Files in an encoding that is not ASCII compatible (UTF-16/32) are converted
+ * sequentially.
+ *
+ * Output is written to a hidden .part file that is renamed over the output
+ * once complete. With a checkpoint interval set in the options, a
+ * {@link ConversionCheckpoint} is saved every so many input bytes after a
+ * chunk is written; a later run over the same input and settings skips the
+ * pieces before it and appends to the partial output, giving the same bytes
+ * as an uninterrupted run. A failed run then keeps its partial output.
+ */
+public class Camt053ParallelConverter {
+
+    public static final int DEFAULT_ENTRIES_PER_CHUNK = 2048;
+
+    private final ForkJoinPool pool;
+    private final int entriesPerChunk;
+    private final int maxChunksInFlight;
+    private final ConversionOptions options;
+
+    /**
+     * Metrics in the options are only used when the file is converted sequentially
+     */
+    public Camt053ParallelConverter(ForkJoinPool pool, int entriesPerChunk, ConversionOptions options) {
+        this.pool = pool;
+        this.entriesPerChunk = entriesPerChunk;
+        this.maxChunksInFlight = pool.getParallelism() * 4;
+        this.options = options;
+    }
+
+    public Camt053ParallelConverter(ForkJoinPool pool, int entriesPerChunk) {
+        this(pool, entriesPerChunk, new ConversionOptions());
+    }
+
+    public Camt053ParallelConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_ENTRIES_PER_CHUNK);
+    }
+
+    /**
+     * Convert input to output; returns the number of CSV rows written
+     */
+    public long convert(Path input, Path output) throws IOException, XMLStreamException {
+        if (options.getDuplicateIndex() != null || options.getShardKey() != null) {
+            // Entries must reach the index in file order, and shards are written as rows arrive
+            return new Camt053FileConverter(options).convert(input, output);
+        }
+        ConversionCache cache = options.getCache();
+        if (cache != null) {
+            return cache.convert(input, output, options.cacheVariant(), this::convertUncached);
+        }
+        return convertUncached(input, output);
+    }
+
+    long convertUncached(Path input, Path output) throws IOException, XMLStreamException {
+        if (Camt053FileConverter.isGzip(input)) {
+            // Compressed input cannot be split at byte offsets
+            return new Camt053FileConverter(options).convertSequential(input, output);
+        }
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            byte[] head = readHead(channel);
+            XmlEncoding detected = XmlEncoding.detect(head, head.length);
+            if (!detected.isAsciiCompatible()) {
+                return new Camt053FileConverter(options).convertSequential(input, output);
+            }
+            Charset encoding = detected.getCharset();
+            // Fragments of entries have no Document element to tell the version
+            Camt053Version version = Camt053Version.detect(head, head.length);
+
+            NtryChunkScanner.ScanResult scan = new NtryChunkScanner(channel, entriesPerChunk).scan();
+            List<Camt053Data> skeleton = parseSkeleton(channel, scan);
+            if (skeleton.size() != scan.statements.size()) {
+                throw new IOException("Found " + scan.statements.size() + " Stmt elements but parsed "
+                    + skeleton.size());
+            }
+
+            boolean gzip = Camt053FileConverter.isGzip(output);
+            Path part = ConversionCheckpoint.partPath(output);
+            Path checkpointFile = ConversionCheckpoint.path(output);
+            boolean resumable = options.getCheckpointInterval() > 0;
+            String source = resumable ? ConversionCheckpoint.source(input, options.cacheVariant()
+                + ";entriesPerChunk=" + entriesPerChunk + ";gzip=" + gzip) : null;
+            ConversionCheckpoint resume = resumable ? ConversionCheckpoint.read(checkpointFile, source) : null;
+            if (resume != null && (!Files.exists(part) || Files.size(part) < resume.outputBytes
+                || pieceEnd(scan, resume.pieces) != resume.inputOffset)) {
+                resume = null;
+            }
+            if (resume == null) {
+                Files.deleteIfExists(checkpointFile);
+            }
+
+            long rows;
+            try (ConversionCheckpoint.PartOutputStream out = ConversionCheckpoint.PartOutputStream.open(part,
+                resume != null ? resume.outputBytes : 0, gzip)) {
+                BalanceReconciler.Mode reconciliation = options.getReconciliation();
+                Output writer = new Output(out, reconciliation == null ? null : new BalanceReconciler(null,
+                    reconciliation, mismatch -> System.err.println("Balance mismatch: " + mismatch)));
+                if (resumable) {
+                    writer.checkpointTo(checkpointFile, source, options.getCheckpointInterval(), resume);
+                }
+                rows = writeRows(channel, encoding, version, scan, skeleton, writer,
+                    resume != null ? resume.pieces : 0);
+            } catch (IOException | XMLStreamException | RuntimeException e) {
+                if (!resumable) {
+                    Files.deleteIfExists(part);
+                }
+                throw e;
+            }
+            ConversionCache.moveIntoPlace(part, output);
+            Files.deleteIfExists(checkpointFile);
+            return rows;
+        }
+    }
+
+    /**
+     * Input byte after the last of the first pieces pieces, or -1 if that piece is not a chunk
+     */
+    private static long pieceEnd(NtryChunkScanner.ScanResult scan, int pieces) {
+        int piece = 0;
+        for (NtryChunkScanner.StatementRange statement : scan.statements) {
+            piece++;
+            for (NtryChunkScanner.Chunk chunk : statement.chunks) {
+                if (++piece == pieces) {
+                    return chunk.end;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private List<Camt053Data> parseSkeleton(FileChannel channel, NtryChunkScanner.ScanResult scan)
+        throws IOException, XMLStreamException {
+        InputStream in = new FileRangesInputStream(channel, scan.skeletonRanges(channel.size()));
+        List<Camt053Data> statements = new Camt053StreamingExtractor().extractAll(in);
+        for (Camt053Data statement : statements) {
+            if (!statement.getTransactions().isEmpty()) {
+                throw new IOException("Ntry found outside the scanned ranges in statement "
+                    + statement.getStatementInfo().getStatementId());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Write all rows, leaving out the first skip pieces (Bal rows and chunks)
+     * that a checkpointed run already wrote
+     */
+    private long writeRows(FileChannel channel, Charset encoding, Camt053Version version,
+                           NtryChunkScanner.ScanResult scan, List<Camt053Data> skeleton, Output writer, int skip)
+        throws IOException, XMLStreamException {
+        byte[] fragmentStart = fragmentStart(encoding, scan.prefixes);
+        byte[] fragmentEnd = "</Ntries>".getBytes(encoding);
+
+        ArrayDeque<ForkJoinTask<Rows>> inFlight = new ArrayDeque<>();
+        int piece = 0;
+        for (int i = 0; i < skeleton.size(); i++) {
+            final StatementInfo statement = skeleton.get(i).getStatementInfo();
+            BalanceInfo balance = skeleton.get(i).getBalanceInfo();
+            List<NtryChunkScanner.Chunk> chunks = scan.statements.get(i).chunks;
+            // The next statement's Bal row ends this one, so a statement is only
+            // finished if that row was written before the checkpoint too
+            if (piece + chunks.size() + 1 < skip) {
+                writer.skipStatement(statement, balance);
+                piece += chunks.size() + 1;
+                continue;
+            }
+            if (piece < skip) {
+                writer.resumeStatement(statement, balance);
+            } else {
+                writer.drain(inFlight, maxChunksInFlight - 1);
+                inFlight.add(completed(balanceRow(statement, balance)));
+            }
+            piece++;
+
+            for (final NtryChunkScanner.Chunk chunk : chunks) {
+                if (piece++ < skip) {
+                    continue;
+                }
+                writer.drain(inFlight, maxChunksInFlight - 1);
+                inFlight.add(pool.submit(ForkJoinTask.adapt(
+                    () -> transactionRows(channel, version, statement, chunk, fragmentStart, fragmentEnd))));
+            }
+        }
+        writer.drain(inFlight, 0);
+        writer.finish();
+        return writer.rows;
+    }
+
+    private static Rows join(ForkJoinTask<Rows> task) throws IOException, XMLStreamException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ChunkException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Chunk conversion failed", cause);
+        }
+    }
+
+    private Rows balanceRow(StatementInfo statement, BalanceInfo balance) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(bytes, 1024, options.getLayout())) {
+            encoder.startStatement(statement);
+            encoder.writeBalance(balance);
+            encoder.flush();
+            return new Rows(bytes.toByteArray(), encoder.getRowCount(), statement, balance, null, -1);
+        } catch (IOException e) {
+            throw new ChunkException(e);
+        }
+    }
+
+    /**
+     * Runs on the pool: parse one chunk of Ntry elements and encode its Trx rows
+     */
+    private Rows transactionRows(FileChannel channel, Camt053Version version, StatementInfo statement,
+                                 NtryChunkScanner.Chunk chunk, byte[] fragmentStart, byte[] fragmentEnd) {
+        try {
+            byte[] entries = readRange(channel, chunk.start, chunk.end);
+            InputStream in = new SequenceInputStream(new ByteArrayInputStream(fragmentStart),
+                new SequenceInputStream(new ByteArrayInputStream(entries), new ByteArrayInputStream(fragmentEnd)));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.length / 2);
+            Camt053RowEncoder encoder = new Camt053RowEncoder(bytes, 16 * 1024, options.getLayout());
+            encoder.startStatement(statement);
+            AmountSum sum = new AmountSum();
+            options.newExtractor(version).extract(in, new Camt053Handler() {
+                @Override
+                public void onStatement(StatementInfo ignored, BalanceInfo balance) {
+                    // Fragments contain entries only
+                }
+
+                @Override
+                public void onTransaction(TransactionInfo transaction) throws IOException {
+                    encoder.writeTransaction(transaction);
+                }
+
+                @Override
+                public void onEntryEnd(TransactionInfo entry) {
+                    sum.add(entry);
+                }
+            });
+            encoder.close();
+            // Expanded entries give one row per TxDtls, but never less than one
+            boolean expanded = options.getExpansion() == Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS;
+            if (expanded ? encoder.getRowCount() < chunk.entries : encoder.getRowCount() != chunk.entries) {
+                throw new IOException("Expected " + chunk.entries + " entries at byte " + chunk.start
+                    + " but parsed " + encoder.getRowCount() + " rows");
+            }
+            return new Rows(bytes.toByteArray(), encoder.getRowCount(), statement, null, sum, chunk.end);
+        } catch (IOException | XMLStreamException e) {
+            throw new ChunkException(e);
+        }
+    }
+
+    private static byte[] readRange(FileChannel channel, long start, long end) throws IOException {
+        byte[] bytes = new byte[Math.toIntExact(end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("File shrank while converting");
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Prolog and wrapper element for a fragment; every prefix used by the entries
+     * is bound to a placeholder namespace, only local names matter to the extractor
+     */
+    private static byte[] fragmentStart(Charset encoding, List<String> prefixes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"").append(encoding.name()).append("\"?><Ntries");
+        for (String prefix : prefixes) {
+            sb.append(" xmlns:").append(prefix).append("=\"urn:camt053:fragment\"");
+        }
+        sb.append('>');
+        return sb.toString().getBytes(encoding);
+    }
+
+    /**
+     * First bytes of the file, enough for the encoding and the message version
+     */
+    private static byte[] readHead(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(Math.max(XmlEncoding.HEAD_SIZE, Camt053Version.HEAD_SIZE));
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(head.array(), head.position());
+    }
+
+    private static ForkJoinTask<Rows> completed(Rows rows) {
+        ForkJoinTask<Rows> task = ForkJoinTask.adapt(() -> rows);
+        task.complete(rows);
+        return task;
+    }
+
+    /**
+     * Encoded rows of one piece of output: a statement's Bal row, or a chunk of
+     * its Trx rows with the sum of their signed amounts and the input byte after it
+     */
+    private static class Rows {
+        final byte[] bytes;
+        final long count;
+        final StatementInfo statement;
+        final BalanceInfo balance;
+        final AmountSum entries;
+        final long inputEnd;
+
+        Rows(byte[] bytes, long count, StatementInfo statement, BalanceInfo balance, AmountSum entries,
+             long inputEnd) {
+            this.bytes = bytes;
+            this.count = count;
+            this.statement = statement;
+            this.balance = balance;
+            this.entries = entries;
+            this.inputEnd = inputEnd;
+        }
+    }
+
+    /**
+     * Writes finished pieces in document order, feeds the reconciler and saves checkpoints
+     */
+    private static class Output {
+        private final ConversionCheckpoint.PartOutputStream out;
+        private final BalanceReconciler reconciler;
+        private final AmountSum statementSum = new AmountSum();
+        private boolean statementOpen;
+        long rows;
+
+        // Checkpointing, when enabled
+        private Path checkpointFile;
+        private String source;
+        private long interval;
+        private int pieces;
+        private long inputOffset;
+        private long checkpointOffset;
+        private BigDecimal resumeSum;
+
+        Output(ConversionCheckpoint.PartOutputStream out, BalanceReconciler reconciler) {
+            this.out = out;
+            this.reconciler = reconciler;
+        }
+
+        /**
+         * Save checkpoints to file every interval input bytes, continuing from resume if not null
+         */
+        void checkpointTo(Path file, String source, long interval, ConversionCheckpoint resume) {
+            this.checkpointFile = file;
+            this.source = source;
+            this.interval = interval;
+            if (resume != null) {
+                rows = resume.rows;
+                pieces = resume.pieces;
+                inputOffset = resume.inputOffset;
+                checkpointOffset = resume.inputOffset;
+                resumeSum = resume.statementSum;
+            }
+        }
+
+        /**
+         * A statement wholly written before the checkpoint
+         */
+        void skipStatement(StatementInfo statement, BalanceInfo balance) {
+            if (reconciler != null) {
+                reconciler.skipStatement(statement, balance);
+            }
+        }
+
+        /**
+         * The statement the checkpoint is in; its entries so far are taken from the checkpoint
+         */
+        void resumeStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+            if (reconciler != null) {
+                endStatement();
+                reconciler.startStatement(statement, balance);
+                statementSum.reset();
+                if (resumeSum != null) {
+                    statementSum.add(resumeSum);
+                    reconciler.addEntries(statementSum);
+                }
+                statementOpen = true;
+            }
+        }
+
+        /**
+         * Write pieces until at most keep are left in flight
+         */
+        void drain(ArrayDeque<ForkJoinTask<Rows>> inFlight, int keep) throws IOException, XMLStreamException {
+            while (inFlight.size() > keep) {
+                Rows piece = join(inFlight.poll());
+                if (reconciler != null) {
+                    if (piece.balance != null) {
+                        endStatement();
+                        reconciler.startStatement(piece.statement, piece.balance);
+                        statementSum.reset();
+                        statementOpen = true;
+                    } else {
+                        reconciler.addEntries(piece.entries);
+                        statementSum.add(piece.entries);
+                    }
+                }
+                out.write(piece.bytes);
+                rows += piece.count;
+                pieces++;
+                if (piece.inputEnd >= 0) {
+                    inputOffset = piece.inputEnd;
+                    if (checkpointFile != null && inputOffset - checkpointOffset >= interval) {
+                        checkpoint();
+                    }
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (reconciler != null) {
+                endStatement();
+                reconciler.finish();
+            }
+        }
+
+        private void checkpoint() throws IOException {
+            long outputBytes = out.sync();
+            new ConversionCheckpoint(source, pieces, inputOffset, outputBytes, rows,
+                reconciler != null ? statementSum.toBigDecimal() : null).write(checkpointFile);
+            checkpointOffset = inputOffset;
+        }
+
+        private void endStatement() throws IOException {
+            if (statementOpen) {
+                reconciler.endStatement();
+                statementOpen = false;
+            }
+        }
+    }
+
+    /**
+     * Reads a list of start/end byte ranges of a channel as one stream
+     */
+    private static class FileRangesInputStream extends InputStream {
+        private final FileChannel channel;
+        private final List<long[]> ranges;
+        private int range;
+        private long position;
+
+        FileRangesInputStream(FileChannel channel, List<long[]> ranges) {
+            this.channel = channel;
+            this.ranges = ranges;
+            this.position = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (range < ranges.size() && position >= ranges.get(range)[1]) {
+                range++;
+                if (range < ranges.size()) {
+                    position = ranges.get(range)[0];
+                }
+            }
+            if (range >= ranges.size()) {
+                return -1;
+            }
+            int count = (int) Math.min(len, ranges.get(range)[1] - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, count), position);
+            if (read < 0) {
+                throw new IOException("File shrank while converting");
+            }
+            position += read;
+            return read;
+        }
+    }
+
+    /**
+     * Carries checked exceptions out of pool tasks
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Publishes a CAMT.053 document as a {@link Flow} of {@link Camt053Event}s:
+ * each statement with its balances, its entries and its end, in document order,
+ * while the document is being parsed.
+ *
+ * Every subscription parses the input on its own thread from the executor, a
+ * new virtual thread by default. The parser only runs while the subscriber has
+ * outstanding demand: when demand is used up it blocks before the next item,
+ * so a slow subscriber holds back the parse instead of letting items pile up
+ * on the heap. Expansion and reconciliation come from the options; a FAIL
+ * reconciliation mismatch, like a parse error, ends the flow with onError.
+ * Cancelling stops the parse at the next item.
+ *
+ * A publisher over a file can be subscribed to any number of times, each
+ * subscription reading the file anew. A publisher over a stream serves only
+ * its first subscriber and does not close the stream.
+ */
+public class Camt053Publisher implements Flow.Publisher<Camt053Event> {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final InputStream stream;
+    private final AtomicBoolean streamTaken = new AtomicBoolean();
+    private final ConversionOptions options;
+    private final Executor executor;
+
+    public Camt053Publisher(Path file, ConversionOptions options, Executor executor) {
+        this(file, null, options, executor);
+    }
+
+    public Camt053Publisher(Path file, ConversionOptions options) {
+        this(file, options, Camt053Publisher::startVirtualThread);
+    }
+
+    public Camt053Publisher(InputStream stream, ConversionOptions options, Executor executor) {
+        this(null, stream, options, executor);
+    }
+
+    public Camt053Publisher(InputStream stream, ConversionOptions options) {
+        this(stream, options, Camt053Publisher::startVirtualThread);
+    }
+
+    private Camt053Publisher(Path file, InputStream stream, ConversionOptions options, Executor executor) {
+        this.file = file;
+        this.stream = stream;
+        this.options = Objects.requireNonNull(options);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Camt053Event> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Emission emission = new Emission(subscriber);
+        subscriber.onSubscribe(emission);
+        if (file == null && !streamTaken.compareAndSet(false, true)) {
+            emission.fail(new IllegalStateException("A stream can only be published to one subscriber"));
+            return;
+        }
+        try {
+            executor.execute(emission);
+        } catch (RejectedExecutionException e) {
+            emission.fail(e);
+        }
+    }
+
+    private static void startVirtualThread(Runnable task) {
+        Thread.ofVirtual().name("camt053-publisher").start(task);
+    }
+
+    /**
+     * Thrown through the parser to stop it once the subscription is cancelled
+     */
+    private static class Stopped extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Stopped() {
+            super("Subscription cancelled");
+        }
+    }
+
+    /**
+     * One subscription: parses on the executor's thread and hands each item to
+     * the subscriber as demand allows. Signals to the subscriber only come from
+     * that thread, so they never overlap.
+     */
+    private class Emission implements Flow.Subscription, Runnable, Camt053Handler {
+        private final Flow.Subscriber<? super Camt053Event> subscriber;
+
+        // A lock rather than a monitor, so a waiting virtual thread does not pin its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+        private IllegalArgumentException badRequest;
+
+        private StatementInfo statement;
+
+        Emission(Flow.Subscriber<? super Camt053Event> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    if (badRequest == null) {
+                        badRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+                    }
+                    cancelled = true;
+                } else {
+                    // Demand that overflows a long is unbounded
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            try {
+                publish();
+            } catch (Stopped e) {
+                // Cancelled, or a bad request reported below
+            } catch (IOException | XMLStreamException | RuntimeException | Error e) {
+                failure = e;
+            }
+            IllegalArgumentException request;
+            boolean stop;
+            lock.lock();
+            try {
+                request = badRequest;
+                stop = cancelled;
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+            if (request != null) {
+                subscriber.onError(request);
+            } else if (!stop) {
+                if (failure != null) {
+                    subscriber.onError(failure);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+        }
+
+        /**
+         * End the subscription before it started, with onError
+         */
+        void fail(Throwable failure) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+            subscriber.onError(failure);
+        }
+
+        private void publish() throws IOException, XMLStreamException {
+            BalanceReconciler.Mode reconciliation = options.getReconciliation();
+            String name = file != null ? file.toString() : "stream";
+            BalanceReconciler reconciler = reconciliation == null ? null : new BalanceReconciler(this, reconciliation,
+                mismatch -> System.err.println("Balance mismatch in " + name + ": " + mismatch));
+            Camt053Handler handler = reconciler != null ? reconciler : this;
+            Camt053StreamingExtractor extractor = options.newExtractor();
+            if (file == null) {
+                extractor.extract(stream, handler);
+            } else if (Camt053FileConverter.isGzip(file)) {
+                try (InputStream in = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file),
+                    GZIP_BUFFER_SIZE), GZIP_BUFFER_SIZE)) {
+                    extractor.extract(in, handler);
+                }
+            } else {
+                try (MappedXmlInput in = MappedXmlInput.open(file)) {
+                    extractor.extract(in, handler);
+                }
+            }
+            if (reconciler != null) {
+                reconciler.finish();
+            }
+        }
+
+        @Override
+        public void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+            this.statement = statement;
+            emit(Camt053Event.statement(statement, balance));
+        }
+
+        @Override
+        public void onTransaction(TransactionInfo transaction) throws IOException {
+            emit(Camt053Event.transaction(statement, transaction));
+        }
+
+        @Override
+        public void onStatementEnd() throws IOException {
+            emit(Camt053Event.statementEnd(statement));
+        }
+
+        /**
+         * Wait for demand, then hand the item to the subscriber
+         */
+        private void emit(Camt053Event event) throws IOException {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled) {
+                    demanded.await();
+                }
+                if (cancelled) {
+                    throw new Stopped();
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for demand");
+            } finally {
+                lock.unlock();
+            }
+            subscriber.onNext(event);
+        }
+    }
+}
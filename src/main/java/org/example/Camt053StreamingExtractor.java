@@ -0,0 +1,768 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts CAMT.053 data with a StAX pull parser, without building the
+ * MxCamt05300108 object tree.
+ *
+ * Statements, balances and entries are handed to a {@link Camt053Handler}
+ * as soon as they are read, so heap use does not grow with the number of Ntry
+ * elements. Field mapping follows the Prowide based extractor.
+ *
+ * Elements are matched by local name, so one parse reads every version from
+ * camt.053.001.02 to .13 into the same model; the {@link Camt053Version} taken
+ * from the Document namespace or AppHdr/MsgDefIdr decides how the elements that
+ * changed between versions are read. Other ISO 20022 messages are rejected.
+ */
+public class Camt053StreamingExtractor {
+
+    /**
+     * What one transaction handed to the handler stands for
+     */
+    public enum Expansion {
+        /** One per Ntry, details from its first TxDtls */
+        ENTRY,
+        /**
+         * One per TxDtls, so batch bookings produce a row per underlying
+         * transaction. Each row carries its TxDtls amount signed by its own
+         * CdtDbtInd; only an entry's single TxDtls falls back to the entry amount.
+         */
+        TRANSACTION_DETAILS
+    }
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final Expansion expansion;
+    private final Camt053Version version;
+
+    /**
+     * @param version version of input that does not name one, such as a fragment
+     *                of Ntry elements; null to accept the forms of every version there
+     */
+    public Camt053StreamingExtractor(Expansion expansion, Camt053Version version) {
+        this.expansion = expansion;
+        this.version = version;
+    }
+
+    public Camt053StreamingExtractor(Expansion expansion) {
+        this(expansion, null);
+    }
+
+    public Camt053StreamingExtractor() {
+        this(Expansion.ENTRY);
+    }
+
+    /**
+     * Stream all statements in the input to the handler
+     */
+    public void extract(InputStream input, Camt053Handler handler) throws XMLStreamException, IOException {
+        parse(INPUT_FACTORY.createXMLStreamReader(input), handler);
+    }
+
+    /**
+     * Stream all statements to the handler, decoding the input with a known charset
+     */
+    public void extract(InputStream input, Charset encoding, Camt053Handler handler)
+        throws XMLStreamException, IOException {
+        parse(INPUT_FACTORY.createXMLStreamReader(input, encoding.name()), handler);
+    }
+
+    /**
+     * Stream all statements of a memory-mapped file to the handler
+     */
+    public void extract(MappedXmlInput input, Camt053Handler handler) throws XMLStreamException, IOException {
+        extract(input.getInputStream(), input.getEncoding(), handler);
+    }
+
+    private void parse(XMLStreamReader reader, Camt053Handler handler) throws XMLStreamException, IOException {
+        try {
+            new Parse(reader, handler, expansion, version).run();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Extract all statements into memory, one Camt053Data per Stmt. Entries are
+     * held in a {@link TransactionStore}, so the list hands out copies: changing
+     * a TransactionInfo taken from it does not change the statement.
+     */
+    public List<Camt053Data> extractAll(InputStream input) throws XMLStreamException, IOException {
+        Collector collector = new Collector();
+        extract(input, collector);
+        return collector.getStatements();
+    }
+
+    /**
+     * Handler behind {@link #extractAll}, for callers that pass the events
+     * through another handler, such as a {@link BalanceReconciler}, on the way
+     */
+    static final class Collector implements Camt053Handler {
+        private final List<Camt053Data> statements = new ArrayList<>();
+        private TransactionStore store;
+
+        @Override
+        public void onStatement(StatementInfo statement, BalanceInfo balance) {
+            Camt053Data data = new Camt053Data();
+            data.setStatementInfo(statement);
+            data.setBalanceInfo(balance);
+            store = new TransactionStore();
+            data.setTransactions(store);
+            statements.add(data);
+        }
+
+        @Override
+        public void onTransaction(TransactionInfo transaction) {
+            store.add(transaction);
+        }
+
+        @Override
+        public void onStatementEnd() {
+            store.trimToSize();
+        }
+
+        List<Camt053Data> getStatements() {
+            return statements;
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        // The JDK's own parser, without the service lookup over the class path that newInstance() does
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        // Statements come from outside, never resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Reads one child element; must consume it up to and including its end tag
+     */
+    private interface ChildReader {
+        void read(String name) throws XMLStreamException, IOException;
+    }
+
+    /**
+     * State of a single parse run
+     */
+    private static class Parse {
+        private final XMLStreamReader reader;
+        private final Camt053Handler handler;
+        private final boolean expandDetails;
+
+        // Declared by the document, or given for input that does not declare one
+        private Camt053Version version;
+        private boolean versionDeclared;
+
+        // Document-level values, shared by every statement
+        private String bizMsgIdr;
+        private String groupMsgId;
+        private String fromBic;
+        private String toBic;
+
+        // Current statement; balance is handed out before the first entry
+        private StatementInfo statement;
+        private BalanceInfo balance;
+        private boolean statementEmitted;
+
+        // Exponent of the last seen Amt currency, entries rarely change currency
+        private String lastCurrency;
+        private int lastCurrencyExponent;
+
+        Parse(XMLStreamReader reader, Camt053Handler handler, Expansion expansion, Camt053Version version) {
+            this.reader = reader;
+            this.handler = handler;
+            this.expandDetails = expansion == Expansion.TRANSACTION_DETAILS;
+            this.version = version;
+        }
+
+        void run() throws XMLStreamException, IOException {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "AppHdr":
+                        readAppHdr();
+                        break;
+                    case "Document":
+                        // The namespace of the body outranks what the header says
+                        declareVersion(reader.getNamespaceURI(), true);
+                        break;
+                    case "GrpHdr":
+                        readGrpHdr();
+                        break;
+                    case "Stmt":
+                        readStatement();
+                        break;
+                    case "Ntry":
+                        // Only outside a Stmt when parsing a fragment of entries
+                        readEntry();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Take the version from a namespace or message identifier that names one
+         */
+        private void declareVersion(String identifier, boolean document) throws XMLStreamException {
+            Camt053Version declared = Camt053Version.fromIdentifier(identifier);
+            if (declared != null && (document || !versionDeclared)) {
+                version = declared;
+                versionDeclared = true;
+            }
+        }
+
+        /**
+         * AppHdr: BizMsgIdr, Fr and To BICs, MsgDefIdr
+         */
+        private void readAppHdr() throws XMLStreamException, IOException {
+            readChildren(name -> {
+                switch (name) {
+                    case "BizMsgIdr":
+                        bizMsgIdr = reader.getElementText();
+                        break;
+                    case "Fr":
+                        fromBic = findText("BICFI");
+                        break;
+                    case "To":
+                        toBic = findText("BICFI");
+                        break;
+                    case "MsgDefIdr":
+                        declareVersion(reader.getElementText(), false);
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+        }
+
+        /**
+         * GrpHdr: MsgId, used when there is no AppHdr
+         */
+        private void readGrpHdr() throws XMLStreamException, IOException {
+            readChildren(name -> {
+                if ("MsgId".equals(name)) {
+                    groupMsgId = reader.getElementText();
+                } else {
+                    skipElement();
+                }
+            });
+        }
+
+        /**
+         * Stmt: identification, pagination, account, balances and entries
+         */
+        private void readStatement() throws XMLStreamException, IOException {
+            statement = new StatementInfo();
+            statement.setMessageId(bizMsgIdr != null ? bizMsgIdr : groupMsgId);
+            statement.setFromBic(fromBic);
+            statement.setToBic(toBic);
+            balance = new BalanceInfo();
+            statementEmitted = false;
+
+            readChildren(name -> {
+                switch (name) {
+                    case "Id":
+                        statement.setStatementId(reader.getElementText());
+                        break;
+                    case "ElctrncSeqNb":
+                        statement.setElectronicSeqNb(reader.getElementText());
+                        break;
+                    case "StmtPgntn":
+                        readPagination();
+                        break;
+                    case "Acct":
+                        readAccount();
+                        break;
+                    case "Bal":
+                        readBalance();
+                        break;
+                    case "Ntry":
+                        emitStatement();
+                        readEntry();
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+
+            emitStatement();
+            handler.onStatementEnd();
+            statement = null;
+            balance = null;
+        }
+
+        private void emitStatement() throws IOException {
+            if (!statementEmitted) {
+                statementEmitted = true;
+                handler.onStatement(statement, balance);
+            }
+        }
+
+        private void readPagination() throws XMLStreamException, IOException {
+            readChildren(name -> {
+                switch (name) {
+                    case "PgNb":
+                        statement.setPageNumber(reader.getElementText());
+                        break;
+                    case "LastPgInd":
+                        statement.setLastPageIndicator(parseBoolean(reader.getElementText()));
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+        }
+
+        /**
+         * Acct: Ccy and Id/Othr/Id
+         */
+        private void readAccount() throws XMLStreamException, IOException {
+            readChildren(name -> {
+                switch (name) {
+                    case "Ccy":
+                        statement.setCurrency(reader.getElementText());
+                        break;
+                    case "Id":
+                        readChildren(idName -> {
+                            if ("Othr".equals(idName)) {
+                                readChildren(othrName -> {
+                                    if ("Id".equals(othrName)) {
+                                        statement.setAccountId(reader.getElementText());
+                                    } else {
+                                        skipElement();
+                                    }
+                                });
+                            } else {
+                                skipElement();
+                            }
+                        });
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+        }
+
+        /**
+         * Bal: only OPBD and CLBD are kept with their indicators, CLBD also provides the date
+         */
+        private void readBalance() throws XMLStreamException, IOException {
+            final String[] type = new String[1];
+            final String[] amount = new String[1];
+            final String[] cdtDbtInd = new String[1];
+            final String[] date = new String[1];
+
+            readChildren(name -> {
+                switch (name) {
+                    case "Tp":
+                        type[0] = findText("Cd");
+                        break;
+                    case "Amt":
+                        amount[0] = reader.getElementText();
+                        break;
+                    case "CdtDbtInd":
+                        cdtDbtInd[0] = reader.getElementText();
+                        break;
+                    case "Dt":
+                        date[0] = readDateChoice();
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+
+            if ("OPBD".equals(type[0])) {
+                balance.setOpeningBalance(parseAmount(amount[0]));
+                balance.setOpeningCreditDebitIndicator(cdtDbtInd[0]);
+            } else if ("CLBD".equals(type[0])) {
+                balance.setClosingBalance(parseAmount(amount[0]));
+                balance.setCreditDebitIndicator(cdtDbtInd[0]);
+                balance.setBalanceDate(parseDate(date[0]));
+            }
+        }
+
+        /**
+         * Ntry: amount, status, booking date, reference and indicators, handed to the handler
+         */
+        private void readEntry() throws XMLStreamException, IOException {
+            final TransactionInfo tx = new TransactionInfo();
+            final long[] detailRows = new long[1];
+            final TransactionInfo[] held = new TransactionInfo[1];
+
+            readChildren(name -> {
+                switch (name) {
+                    case "Amt":
+                        readEntryAmount(tx);
+                        break;
+                    case "CdtDbtInd":
+                        tx.setEntryCreditDebitIndicator(reader.getElementText());
+                        break;
+                    case "Sts":
+                        tx.setStatus(readStatus());
+                        break;
+                    case "BookgDt":
+                        tx.setBookingDate(parseDate(readDateChoice()));
+                        break;
+                    case "AcctSvcrRef":
+                        tx.setAccountServicerReference(reader.getElementText());
+                        break;
+                    case "NtryDtls":
+                        if (expandDetails) {
+                            readTransactionDetails(tx, detailRows, held);
+                        } else if (tx.getTransactionCreditDebitIndicator() == null) {
+                            tx.setTransactionCreditDebitIndicator(readFirstTransactionIndicator());
+                        } else {
+                            skipElement();
+                        }
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+
+            if (detailRows[0] > 0) {
+                TransactionInfo only = held[0];
+                if (only != null) {
+                    // The entry's only TxDtls stands for the whole entry
+                    if (only.getAmount() == null) {
+                        copyAmount(tx, only);
+                    }
+                    handler.onTransaction(only);
+                }
+            } else {
+                // Fallback: if no transaction details, use entry-level indicator
+                if (tx.getTransactionCreditDebitIndicator() == null) {
+                    tx.setTransactionCreditDebitIndicator(tx.getEntryCreditDebitIndicator());
+                }
+                handler.onTransaction(tx);
+            }
+            handler.onEntryEnd(tx);
+        }
+
+        /**
+         * NtryDtls in expansion mode: hand out one transaction per TxDtls as it is
+         * read, starting from the entry's fields. The first is held back in held
+         * until a second one shows it is not the entry's only TxDtls; count is the
+         * number read so far for the entry, which may have several NtryDtls.
+         */
+        private void readTransactionDetails(final TransactionInfo entry, final long[] count,
+                                            final TransactionInfo[] held) throws XMLStreamException, IOException {
+            readChildren(name -> {
+                if ("TxDtls".equals(name)) {
+                    TransactionInfo tx = new TransactionInfo();
+                    tx.setTransactionDetail(true);
+                    tx.setBookingDate(entry.getBookingDate());
+                    tx.setStatus(entry.getStatus());
+                    tx.setAccountServicerReference(entry.getAccountServicerReference());
+                    tx.setEntryCreditDebitIndicator(entry.getEntryCreditDebitIndicator());
+                    readTransactionDetail(tx);
+                    if (tx.getTransactionCreditDebitIndicator() == null) {
+                        tx.setTransactionCreditDebitIndicator(entry.getEntryCreditDebitIndicator());
+                    }
+                    if (count[0]++ == 0) {
+                        held[0] = tx;
+                        return;
+                    }
+                    if (held[0] != null) {
+                        handler.onTransaction(held[0]);
+                        held[0] = null;
+                    }
+                    handler.onTransaction(tx);
+                } else {
+                    skipElement();
+                }
+            });
+        }
+
+        private static void copyAmount(TransactionInfo from, TransactionInfo to) {
+            if (from.hasScaledAmount()) {
+                to.setScaledAmount(from.getAmountUnits(), from.getAmountScale());
+            } else {
+                to.setAmount(from.getAmount());
+            }
+        }
+
+        /**
+         * TxDtls: references, amount (Amt, or AmtDtls/TxAmt/Amt before version 08),
+         * indicator and the counterparty on the other side of the booking
+         */
+        private void readTransactionDetail(final TransactionInfo tx) throws XMLStreamException, IOException {
+            final boolean[] amountRead = new boolean[1];
+            readChildren(name -> {
+                switch (name) {
+                    case "Refs":
+                        readChildren(refName -> {
+                            if ("AcctSvcrRef".equals(refName)) {
+                                tx.setAccountServicerReference(reader.getElementText());
+                            } else if ("EndToEndId".equals(refName)) {
+                                tx.setEndToEndId(reader.getElementText());
+                            } else {
+                                skipElement();
+                            }
+                        });
+                        break;
+                    case "Amt":
+                        readEntryAmount(tx);
+                        amountRead[0] = true;
+                        break;
+                    case "AmtDtls":
+                        readChildren(amountName -> {
+                            if ("TxAmt".equals(amountName) && !amountRead[0]) {
+                                readChildren(txAmountName -> {
+                                    if ("Amt".equals(txAmountName)) {
+                                        readEntryAmount(tx);
+                                        amountRead[0] = true;
+                                    } else {
+                                        skipElement();
+                                    }
+                                });
+                            } else {
+                                skipElement();
+                            }
+                        });
+                        break;
+                    case "CdtDbtInd":
+                        tx.setTransactionCreditDebitIndicator(reader.getElementText());
+                        break;
+                    case "RltdPties":
+                        readCounterparty(tx);
+                        break;
+                    default:
+                        skipElement();
+                        break;
+                }
+            });
+        }
+
+        /**
+         * RltdPties: Dbtr and DbtrAcct for credits, Cdtr and CdtrAcct for debits
+         */
+        private void readCounterparty(final TransactionInfo tx) throws XMLStreamException, IOException {
+            String indicator = tx.getTransactionCreditDebitIndicator() != null
+                ? tx.getTransactionCreditDebitIndicator() : tx.getEntryCreditDebitIndicator();
+            final String party = "DBIT".equals(indicator) ? "Cdtr" : "Dbtr";
+            final String account = party + "Acct";
+            readChildren(name -> {
+                if (party.equals(name)) {
+                    // Pty/Nm from version 08, Nm directly below the party before
+                    tx.setCounterpartyName(findText("Nm"));
+                } else if (account.equals(name)) {
+                    tx.setCounterpartyAccount(readAccountId());
+                } else {
+                    skipElement();
+                }
+            });
+        }
+
+        /**
+         * CashAccount: Id/IBAN or Id/Othr/Id
+         */
+        private String readAccountId() throws XMLStreamException, IOException {
+            final String[] id = new String[1];
+            readChildren(name -> {
+                if ("Id".equals(name)) {
+                    readChildren(idName -> {
+                        if ("IBAN".equals(idName)) {
+                            id[0] = reader.getElementText();
+                        } else if ("Othr".equals(idName)) {
+                            id[0] = findText("Id");
+                        } else {
+                            skipElement();
+                        }
+                    });
+                } else {
+                    skipElement();
+                }
+            });
+            return id[0];
+        }
+
+        /**
+         * Amt as minor units of its currency, BigDecimal only when it does not fit a long
+         */
+        private void readEntryAmount(TransactionInfo tx) throws XMLStreamException {
+            String currency = reader.getAttributeValue(null, "Ccy");
+            String text = reader.getElementText().trim();
+            int scale = Math.max(FixedPointAmounts.fractionDigits(text), currencyExponent(currency));
+            long units = FixedPointAmounts.parseUnits(text, scale);
+            if (units != FixedPointAmounts.NOT_REPRESENTABLE) {
+                tx.setScaledAmount(units, scale);
+            } else {
+                tx.setAmount(parseAmount(text));
+            }
+        }
+
+        private int currencyExponent(String currency) {
+            if (currency != null && !currency.equals(lastCurrency)) {
+                lastCurrency = currency;
+                lastCurrencyExponent = FixedPointAmounts.currencyExponent(currency);
+            }
+            return currency != null ? lastCurrencyExponent : 0;
+        }
+
+        /**
+         * NtryDtls: CdtDbtInd of the first TxDtls, or null
+         */
+        private String readFirstTransactionIndicator() throws XMLStreamException, IOException {
+            final String[] indicator = new String[1];
+            final boolean[] seen = new boolean[1];
+            readChildren(name -> {
+                if ("TxDtls".equals(name) && !seen[0]) {
+                    seen[0] = true;
+                    readChildren(txName -> {
+                        if ("CdtDbtInd".equals(txName)) {
+                            indicator[0] = reader.getElementText();
+                        } else {
+                            skipElement();
+                        }
+                    });
+                } else {
+                    skipElement();
+                }
+            });
+            return indicator[0];
+        }
+
+        /**
+         * Sts: Cd or Prtry from version 08, the code as text before; either when
+         * the version is not known
+         */
+        private String readStatus() throws XMLStreamException, IOException {
+            if (version != null && !version.hasStatusChoice()) {
+                return reader.getElementText();
+            }
+            if (version != null) {
+                final String[] code = new String[1];
+                readChildren(name -> {
+                    if (("Cd".equals(name) || "Prtry".equals(name)) && code[0] == null) {
+                        code[0] = reader.getElementText();
+                    } else {
+                        skipElement();
+                    }
+                });
+                return code[0];
+            }
+            StringBuilder text = new StringBuilder();
+            String code = null;
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 1 && code == null) {
+                        code = reader.getElementText();
+                    } else {
+                        depth++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (depth == 1 && reader.isCharacters()) {
+                    text.append(reader.getText());
+                }
+            }
+            String bare = text.toString().trim();
+            return code != null ? code : bare.isEmpty() ? null : bare;
+        }
+
+        /**
+         * DateAndDateTime choice: Dt or DtTm
+         */
+        private String readDateChoice() throws XMLStreamException, IOException {
+            final String[] value = new String[1];
+            readChildren(name -> {
+                if ("Dt".equals(name) || "DtTm".equals(name)) {
+                    value[0] = reader.getElementText();
+                } else {
+                    skipElement();
+                }
+            });
+            return value[0];
+        }
+
+        /**
+         * Visit each child element of the current element
+         */
+        private void readChildren(ChildReader child) throws XMLStreamException, IOException {
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                child.read(reader.getLocalName());
+            }
+        }
+
+        /**
+         * Text of the first descendant with the given name; consumes the current element
+         */
+        private String findText(String localName) throws XMLStreamException {
+            String value = null;
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (value == null && localName.equals(reader.getLocalName())) {
+                        value = reader.getElementText();
+                    } else {
+                        depth++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Skip the current element including all its children
+         */
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+    }
+
+    private static BigDecimal parseAmount(String value) {
+        return value != null ? new BigDecimal(value.trim()) : null;
+    }
+
+    /**
+     * Date part of an ISODate or ISODateTime (yyyy-MM-dd...)
+     */
+    private static LocalDate parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return LocalDate.parse(trimmed.length() > 10 ? trimmed.substring(0, 10) : trimmed);
+    }
+
+    private static boolean parseBoolean(String value) {
+        String trimmed = value.trim();
+        return "true".equals(trimmed) || "1".equals(trimmed);
+    }
+}
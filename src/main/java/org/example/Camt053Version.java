@@ -0,0 +1,137 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Message version of a camt.053 document, camt.053.001.02 to camt.053.001.13.
+ *
+ * Banks send different versions side by side. All of them are read by the one
+ * streaming extractor into the same model; the version only selects how the
+ * few elements that changed shape are read. Within a document the extractor
+ * takes the version from the Document namespace, or from AppHdr/MsgDefIdr, as
+ * it passes them. Callers that need it before parsing, such as the chunked
+ * converter whose fragments have no Document element, {@link #detect} it from
+ * the first {@link #HEAD_SIZE} bytes of the file.
+ */
+public enum Camt053Version {
+    V02, V03, V04, V05, V06, V07, V08, V09, V10, V11, V12, V13;
+
+    /** Bytes to read from the start of a file before calling {@link #detect} */
+    static final int HEAD_SIZE = 4 * 1024;
+
+    private static final String NAMESPACE_PREFIX = "urn:iso:std:iso:20022:tech:xsd:";
+    private static final String MESSAGE_PREFIX = "camt.053.001.";
+    private static final byte[] MESSAGE_PREFIX_BYTES = MESSAGE_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    /** Newest version known; later ones are read like it */
+    public static final Camt053Version LATEST = V13;
+
+    /**
+     * The two-digit version number, 2 to 13
+     */
+    public int getNumber() {
+        return ordinal() + 2;
+    }
+
+    /**
+     * Message definition identifier as used in AppHdr/MsgDefIdr, e.g. camt.053.001.08
+     */
+    public String getMessageDefinition() {
+        return String.format("%s%02d", MESSAGE_PREFIX, getNumber());
+    }
+
+    /**
+     * Namespace of the Document element
+     */
+    public String getNamespace() {
+        return NAMESPACE_PREFIX + getMessageDefinition();
+    }
+
+    /**
+     * Ntry/Sts is a Cd or Prtry choice from version 08, a bare code before
+     */
+    boolean hasStatusChoice() {
+        return compareTo(V08) >= 0;
+    }
+
+    public static Camt053Version of(int number) {
+        if (number < 2 || number > LATEST.getNumber()) {
+            throw new IllegalArgumentException("Unknown camt.053 version " + number);
+        }
+        return values()[number - 2];
+    }
+
+    /**
+     * Version named by a Document namespace or a message definition identifier.
+     * Returns null for an empty or non-ISO namespace, which says nothing about the
+     * version, and fails for any other ISO 20022 message.
+     */
+    static Camt053Version fromIdentifier(String identifier) throws XMLStreamException {
+        if (identifier == null) {
+            return null;
+        }
+        String id = identifier.trim();
+        if (id.startsWith(NAMESPACE_PREFIX)) {
+            id = id.substring(NAMESPACE_PREFIX.length());
+        } else if (id.contains(":")) {
+            return null;
+        }
+        if (id.isEmpty()) {
+            return null;
+        }
+        if (!id.startsWith(MESSAGE_PREFIX)) {
+            throw new XMLStreamException("Not a camt.053 statement but " + id);
+        }
+        return version(id.substring(MESSAGE_PREFIX.length()));
+    }
+
+    /**
+     * Detect the version from the first bytes of a document: the Document
+     * namespace if it is among them, otherwise the first camt.053.001.nn, which
+     * is the AppHdr's MsgDefIdr. Returns null when there is neither, e.g. in
+     * UTF-16 documents or when a long header pushes both past the head.
+     */
+    static Camt053Version detect(byte[] head, int length) throws XMLStreamException {
+        int last = length - MESSAGE_PREFIX_BYTES.length - 2;
+        int first = -1;
+        for (int i = 0; i <= last; i++) {
+            if (head[i] == 'c' && matchesPrefix(head, i)) {
+                if (first < 0) {
+                    first = i;
+                }
+                if (i >= 4 && head[i - 4] == 'x' && head[i - 3] == 's' && head[i - 2] == 'd' && head[i - 1] == ':') {
+                    return version(head, i);
+                }
+            }
+        }
+        return first >= 0 ? version(head, first) : null;
+    }
+
+    private static Camt053Version version(byte[] head, int offset) throws XMLStreamException {
+        return version(new String(head, offset + MESSAGE_PREFIX_BYTES.length, 2, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean matchesPrefix(byte[] head, int offset) {
+        for (int j = 1; j < MESSAGE_PREFIX_BYTES.length; j++) {
+            if (head[offset + j] != MESSAGE_PREFIX_BYTES[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Camt053Version version(String digits) throws XMLStreamException {
+        int number;
+        try {
+            number = Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Malformed message identifier " + MESSAGE_PREFIX + digits);
+        }
+        if (number < 2) {
+            throw new XMLStreamException("Unsupported message " + MESSAGE_PREFIX + digits);
+        }
+        // A version newer than this code is read like the latest one
+        return number > LATEST.getNumber() ? LATEST : of(number);
+    }
+}
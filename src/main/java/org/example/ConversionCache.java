@@ -0,0 +1,392 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * On-disk cache of converted CSV files keyed by the SHA-256 of the input bytes
+ * and the converter variant (row layout version and output options).
+ *
+ * A resent or renamed statement hashes to the same key, so on a hit the stored
+ * CSV is copied to the output without parsing. Entries live in
+ * dir/ab/abcdef....csv with a small .rows file holding the row count, size and
+ * SHA-256 of the CSV, which is checked on every hit; the last use is the .rows
+ * file's modification time. Entries unused for longer than maxAge, and the
+ * least recently used ones once the cache is larger than maxBytes, are evicted.
+ *
+ * With {@link #setLinking} entries are hard-linked to outputs instead, which
+ * saves the copy but shares the file: an output changed in place changes the
+ * entry, which the hash check then drops.
+ */
+public final class ConversionCache {
+
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final String ENTRY_SUFFIX = ".csv";
+    private static final String ROWS_SUFFIX = ".rows";
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+    // Evicting by size trims to this fraction of maxBytes so it does not run on every store
+    private static final double EVICT_TO = 0.9;
+
+    /**
+     * Writes input converted to output and returns the row count
+     */
+    public interface Conversion {
+        long convert(Path input, Path output) throws IOException, XMLStreamException;
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean linking;
+
+    /**
+     * Open or create the cache in dir, dropping entries older than maxAgeMillis
+     */
+    public ConversionCache(Path dir, long maxBytes, long maxAgeMillis) throws IOException {
+        if (maxBytes < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        Files.createDirectories(dir);
+        evict();
+    }
+
+    public ConversionCache(Path dir) throws IOException {
+        this(dir, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Hard-link cached files to outputs instead of copying them, where the file
+     * system allows it
+     */
+    public ConversionCache setLinking(boolean linking) {
+        this.linking = linking;
+        return this;
+    }
+
+    /**
+     * Produce output from the cache, or run the conversion and store its result
+     *
+     * @param variant everything besides the input bytes that changes the output
+     */
+    public long convert(Path input, Path output, String variant, Conversion conversion)
+        throws IOException, XMLStreamException {
+        String key = key(input, variant);
+        Path entry = entryPath(key);
+        long rows = lookup(key, entry, output);
+        if (rows >= 0) {
+            hits.incrementAndGet();
+            return rows;
+        }
+        misses.incrementAndGet();
+
+        Files.deleteIfExists(output);
+        rows = conversion.convert(input, output);
+        store(key, entry, output, rows);
+        return rows;
+    }
+
+    /**
+     * Hash of the input bytes and the variant, as lowercase hex
+     */
+    public String key(Path input, String variant) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(variant.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Bytes held by cache entries, as of the last store or eviction
+     */
+    public long getSize() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Delete entries past maxAge, then the least recently used ones until the
+     * cache is back under its size limit
+     */
+    public synchronized void evict() throws IOException {
+        List<Entry> entries = listEntries();
+        long now = System.currentTimeMillis();
+        long total = 0;
+        List<Entry> kept = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (now - entry.lastUsed > maxAgeMillis) {
+                delete(entry.path);
+            } else {
+                kept.add(entry);
+                total += entry.size;
+            }
+        }
+        if (total > maxBytes) {
+            kept.sort(Comparator.comparingLong(e -> e.lastUsed));
+            long target = (long) (maxBytes * EVICT_TO);
+            for (Entry entry : kept) {
+                if (total <= target) {
+                    break;
+                }
+                delete(entry.path);
+                total -= entry.size;
+            }
+        }
+        totalBytes.set(total);
+    }
+
+    /**
+     * Place a cached entry at output; returns its row count, or -1 on a miss
+     */
+    private long lookup(String key, Path entry, Path output) throws IOException {
+        Meta meta = readMeta(key);
+        if (meta == null) {
+            return -1;
+        }
+        Path part = ConversionCheckpoint.partPath(output);
+        try {
+            // A size that differs means the entry was changed or is half written
+            if (Files.size(entry) != meta.size) {
+                return -1;
+            }
+            Files.deleteIfExists(part);
+            String hash = linking && link(part, entry) ? copy(entry, null) : copy(entry, part);
+            if (!hash.equals(meta.hash)) {
+                // Changed since it was stored, e.g. through a linked output
+                Files.delete(part);
+                delete(entry);
+                return -1;
+            }
+            Files.setLastModifiedTime(rowsPath(key), FileTime.fromMillis(System.currentTimeMillis()));
+            moveIntoPlace(part, output);
+        } catch (NoSuchFileException e) {
+            // Evicted by another thread in the meantime
+            Files.deleteIfExists(part);
+            return -1;
+        }
+        return meta.rows;
+    }
+
+    private void store(String key, Path entry, Path output, long rows) throws IOException {
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            Files.delete(temp);
+            String hash = linking && link(temp, output) ? copy(output, null) : copy(output, temp);
+            long size = Files.size(temp);
+            moveIntoPlace(temp, entry);
+
+            Path rowsTemp = Files.createTempFile(entry.getParent(), key, ".tmp");
+            temp = rowsTemp;
+            Files.write(rowsTemp, (rows + " " + size + " " + hash).getBytes(StandardCharsets.US_ASCII));
+            moveIntoPlace(rowsTemp, rowsPath(key));
+
+            if (totalBytes.addAndGet(size) > maxBytes) {
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The entry's .rows file, or null when there is none or it is unreadable
+     */
+    private Meta readMeta(String key) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(rowsPath(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        String[] fields = new String(bytes, StandardCharsets.US_ASCII).trim().split(" ");
+        try {
+            return new Meta(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private List<Entry> listEntries() throws IOException {
+        try (Stream<Path> files = Files.walk(dir, 2)) {
+            List<Path> paths = files.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                .collect(Collectors.toList());
+            List<Entry> entries = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                try {
+                    entries.add(new Entry(path, Files.size(path), lastUsed(path)));
+                } catch (NoSuchFileException e) {
+                    // Deleted while listing
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Remove an entry; the .rows file goes first so a lookup never trusts a missing CSV
+     */
+    private void delete(Path entry) throws IOException {
+        String name = entry.getFileName().toString();
+        String key = name.substring(0, name.length() - ENTRY_SUFFIX.length());
+        Files.deleteIfExists(entry.resolveSibling(key + ROWS_SUFFIX));
+        Files.deleteIfExists(entry);
+    }
+
+    /**
+     * Modification time of the entry's .rows file, or of the entry while it has none
+     */
+    private static long lastUsed(Path entry) throws IOException {
+        String name = entry.getFileName().toString();
+        Path rows = entry.resolveSibling(name.substring(0, name.length() - ENTRY_SUFFIX.length()) + ROWS_SUFFIX);
+        try {
+            return Files.getLastModifiedTime(rows).toMillis();
+        } catch (NoSuchFileException e) {
+            return Files.getLastModifiedTime(entry).toMillis();
+        }
+    }
+
+    private Path entryPath(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private Path rowsPath(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ROWS_SUFFIX);
+    }
+
+    /**
+     * Hard-link target to link; false where the file system does not allow it
+     */
+    private static boolean link(Path link, Path target) throws IOException {
+        try {
+            Files.createLink(link, target);
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        } catch (IOException e) {
+            // Different file stores, or links not supported by this file system
+            if (Files.exists(link)) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Copy source to target, or only read it when target is null; returns the
+     * SHA-256 of its bytes as lowercase hex
+     */
+    private static String copy(Path source, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = target == null ? null
+                 : FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                if (out != null) {
+                    buffer.mark();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.reset();
+                }
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Rename source over target, atomically where the file system allows it
+     */
+    static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class Meta {
+        final long rows;
+        final long size;
+        final String hash;
+
+        Meta(long rows, long size, String hash) {
+            this.rows = rows;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    private static class Entry {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        Entry(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Progress of a resumable conversion: how many pieces of output (Bal rows and
+ * Ntry chunks) are written, the input byte where the next one starts, the
+ * length of the partial output and the signed entry total of the statement in
+ * progress. Stored as a small properties file next to the output.
+ *
+ * A checkpoint only applies to the input and settings it was written for: the
+ * source string holds the input's size and modification time and the
+ * converter variant, and a checkpoint with another source is ignored.
+ */
+final class ConversionCheckpoint {
+
+    private static final String VERSION = "1";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    final String source;
+    final int pieces;
+    final long inputOffset;
+    final long outputBytes;
+    final long rows;
+    /** Entry total of the open statement, null without reconciliation */
+    final BigDecimal statementSum;
+
+    ConversionCheckpoint(String source, int pieces, long inputOffset, long outputBytes, long rows,
+                         BigDecimal statementSum) {
+        this.source = source;
+        this.pieces = pieces;
+        this.inputOffset = inputOffset;
+        this.outputBytes = outputBytes;
+        this.rows = rows;
+        this.statementSum = statementSum;
+    }
+
+    /**
+     * Identifies input as it is now, converted with the given settings
+     */
+    static String source(Path input, String variant) throws IOException {
+        return "size=" + Files.size(input) + ";modified=" + Files.getLastModifiedTime(input).toMillis() + ";" + variant;
+    }
+
+    /**
+     * Hidden checkpoint file next to output
+     */
+    static Path path(Path output) {
+        return output.resolveSibling("." + output.getFileName() + ".ckpt");
+    }
+
+    /**
+     * Hidden file the output is written to before it is renamed into place
+     */
+    static Path partPath(Path output) {
+        return output.resolveSibling("." + output.getFileName() + ".part");
+    }
+
+    /**
+     * The checkpoint in file if it was written for source, otherwise null
+     */
+    static ConversionCheckpoint read(Path file, String source) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!VERSION.equals(properties.getProperty("version")) || !source.equals(properties.getProperty("source"))) {
+            return null;
+        }
+        try {
+            String sum = properties.getProperty("statementSum");
+            return new ConversionCheckpoint(source,
+                Integer.parseInt(properties.getProperty("pieces")),
+                Long.parseLong(properties.getProperty("inputOffset")),
+                Long.parseLong(properties.getProperty("outputBytes")),
+                Long.parseLong(properties.getProperty("rows")),
+                sum != null ? new BigDecimal(sum) : null);
+        } catch (RuntimeException e) {
+            // Missing or damaged field: start over
+            return null;
+        }
+    }
+
+    /**
+     * Replace file with this checkpoint. It is written to disk under another name
+     * first, so a crash leaves either the old or the new checkpoint.
+     */
+    void write(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("version", VERSION);
+        properties.setProperty("source", source);
+        properties.setProperty("pieces", Integer.toString(pieces));
+        properties.setProperty("inputOffset", Long.toString(inputOffset));
+        properties.setProperty("outputBytes", Long.toString(outputBytes));
+        properties.setProperty("rows", Long.toString(rows));
+        if (statementSum != null) {
+            properties.setProperty("statementSum", statementSum.toPlainString());
+        }
+        StringWriter text = new StringWriter();
+        properties.store(text, null);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        ConversionCache.moveIntoPlace(temp, file);
+    }
+
+    /**
+     * Partial output that can be cut back to a checkpoint and continued. Gzip
+     * output is written as one gzip member per checkpoint interval so that every
+     * checkpoint falls between members; gzip readers accept concatenated members.
+     */
+    static final class PartOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final OutputStream file;
+        private final boolean gzip;
+        private Member member;
+
+        private PartOutputStream(FileChannel channel, boolean gzip) {
+            this.channel = channel;
+            this.file = new BufferedOutputStream(Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE);
+            this.gzip = gzip;
+        }
+
+        /**
+         * Open part for writing after its first length bytes, dropping anything beyond them
+         */
+        static PartOutputStream open(Path part, long length, boolean gzip) throws IOException {
+            FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.truncate(length);
+                channel.position(length);
+                return new PartOutputStream(channel, gzip);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        /**
+         * Write everything so far to disk and return the length of the file
+         */
+        long sync() throws IOException {
+            endMember();
+            file.flush();
+            channel.force(false);
+            return channel.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (gzip && member == null && channel.position() == 0) {
+                    // Empty output is still a valid gzip file
+                    target();
+                }
+                endMember();
+            } finally {
+                file.close();
+            }
+        }
+
+        private OutputStream target() throws IOException {
+            if (!gzip) {
+                return file;
+            }
+            if (member == null) {
+                member = new Member(file);
+            }
+            return member;
+        }
+
+        private void endMember() throws IOException {
+            if (member != null) {
+                member.finish();
+                member.release();
+                member = null;
+            }
+        }
+    }
+
+    /**
+     * A gzip member ended without closing the file under it
+     */
+    private static final class Member extends GZIPOutputStream {
+        Member(OutputStream out) throws IOException {
+            super(out, OUTPUT_BUFFER_SIZE);
+        }
+
+        void release() {
+            def.end();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.example;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Conversion counters and per-stage latency histograms, shared by all threads.
+ *
+ * Values are recorded once per file and stage, so leaving metrics on costs a
+ * few LongAdder updates per file. Exposed over JMX ({@link #registerMBean})
+ * and in Prometheus text format ({@link #writePrometheus}).
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+
+    public enum Stage {
+        /** Opening the input, or reading it into memory */
+        READ,
+        /** XML parsing and field extraction */
+        PARSE,
+        /** Encoding CSV rows */
+        FORMAT,
+        /** Writing CSV bytes to the output */
+        WRITE
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationThreadBean();
+
+    private final Map<Stage, Histogram> stageLatency = new EnumMap<>(Stage.class);
+    private final Histogram fileLatency = new Histogram(Histogram.LATENCY_NANOS);
+    private final Histogram fileAllocation = new Histogram(Histogram.SIZE_BYTES);
+    private final LongAdder filesConverted = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+
+    public ConversionMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageLatency.put(stage, new Histogram(Histogram.LATENCY_NANOS));
+        }
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageLatency.get(stage).record(nanos);
+    }
+
+    /**
+     * One converted file; allocatedBytes is negative when the JVM cannot measure it
+     */
+    public void recordFile(long nanos, long inputBytes, long outputBytes, long entryCount, long allocatedBytes) {
+        filesConverted.increment();
+        fileLatency.record(nanos);
+        bytesIn.add(inputBytes);
+        bytesOut.add(outputBytes);
+        entries.add(entryCount);
+        if (allocatedBytes >= 0) {
+            fileAllocation.record(allocatedBytes);
+        }
+    }
+
+    public void recordFailure() {
+        filesFailed.increment();
+    }
+
+    public Histogram getStageLatency(Stage stage) {
+        return stageLatency.get(stage);
+    }
+
+    public Histogram getFileLatency() {
+        return fileLatency;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if not supported by the JVM
+     */
+    public static long threadAllocatedBytes() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId()) : -1;
+    }
+
+    /**
+     * Register under org.example:type=ConversionMetrics,name=name on the platform MBean server
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("org.example:type=ConversionMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public long getFilesConverted() {
+        return filesConverted.sum();
+    }
+
+    @Override
+    public long getFilesFailed() {
+        return filesFailed.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getEntries() {
+        return entries.sum();
+    }
+
+    @Override
+    public double getEntriesPerSecond() {
+        long nanos = fileLatency.getSum();
+        return nanos > 0 ? getEntries() * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return fileAllocation.getSum();
+    }
+
+    @Override
+    public double getAllocatedBytesPerFile() {
+        return fileAllocation.getMean();
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        return perStage(h -> h.getMean() / 1e6);
+    }
+
+    @Override
+    public Map<String, Double> getStageP50Millis() {
+        return perStage(h -> h.quantile(0.5) / 1e6);
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        return perStage(h -> h.quantile(0.99) / 1e6);
+    }
+
+    @Override
+    public double getFileP99Millis() {
+        return fileLatency.quantile(0.99) / 1e6;
+    }
+
+    private Map<String, Double> perStage(ToDoubleFunction<Histogram> value) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<Stage, Histogram> entry : stageLatency.entrySet()) {
+            values.put(entry.getKey().name().toLowerCase(Locale.ROOT), value.applyAsDouble(entry.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Prometheus text exposition format, latencies in seconds
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        counter(out, "camt053_files_converted_total", "Files converted", getFilesConverted());
+        counter(out, "camt053_files_failed_total", "Files that failed to convert", getFilesFailed());
+        counter(out, "camt053_input_bytes_total", "Bytes of XML read", getBytesIn());
+        counter(out, "camt053_output_bytes_total", "Bytes of CSV written", getBytesOut());
+        counter(out, "camt053_entries_total", "Ntry elements converted", getEntries());
+
+        String stageName = "camt053_stage_duration_seconds";
+        out.append("# HELP ").append(stageName).append(" Time per file spent in each conversion stage\n");
+        out.append("# TYPE ").append(stageName).append(" histogram\n");
+        for (Map.Entry<Stage, Histogram> entry : stageLatency.entrySet()) {
+            String label = "stage=\"" + entry.getKey().name().toLowerCase(Locale.ROOT) + "\"";
+            histogramSeries(out, stageName, label, entry.getValue(), 1e9);
+        }
+
+        String fileName = "camt053_file_duration_seconds";
+        out.append("# HELP ").append(fileName).append(" Time to convert one file\n");
+        out.append("# TYPE ").append(fileName).append(" histogram\n");
+        histogramSeries(out, fileName, null, fileLatency, 1e9);
+
+        String allocationName = "camt053_file_allocated_bytes";
+        out.append("# HELP ").append(allocationName).append(" Heap allocated while converting one file\n");
+        out.append("# TYPE ").append(allocationName).append(" histogram\n");
+        histogramSeries(out, allocationName, null, fileAllocation, 1);
+    }
+
+    private static void counter(Appendable out, String name, String help, long value) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(Long.toString(value)).append('\n');
+    }
+
+    private static void histogramSeries(Appendable out, String name, String label, Histogram histogram, double divisor)
+        throws IOException {
+        String prefix = label != null ? label + "," : "";
+        long[] bounds = histogram.getBounds();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < bounds.length ? number(bounds[i] / divisor) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                .append(Long.toString(cumulative)).append('\n');
+        }
+        String labels = label != null ? "{" + label + "}" : "";
+        out.append(name).append("_sum").append(labels).append(' ').append(number(histogram.getSum() / divisor)).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(Long.toString(cumulative)).append('\n');
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+            ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ConversionMetrics}; stage maps are keyed by stage name
+ */
+public interface ConversionMetricsMXBean {
+
+    long getFilesConverted();
+
+    long getFilesFailed();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getEntries();
+
+    /** Entries per second of conversion time, summed over all converted files */
+    double getEntriesPerSecond();
+
+    long getAllocatedBytes();
+
+    double getAllocatedBytesPerFile();
+
+    Map<String, Double> getStageMeanMillis();
+
+    Map<String, Double> getStageP50Millis();
+
+    Map<String, Double> getStageP99Millis();
+
+    double getFileP99Millis();
+}
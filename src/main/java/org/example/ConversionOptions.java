@@ -0,0 +1,215 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings shared by the file, parallel and watch-folder converters
+ */
+public class ConversionOptions {
+
+    /** Checkpoint interval used by --resume */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 64L * 1024 * 1024;
+
+    private int bufferSize = Camt053RowEncoder.DEFAULT_BUFFER_SIZE;
+    private ConversionMetrics metrics;
+    private BalanceReconciler.Mode reconciliation;
+    private Camt053StreamingExtractor.Expansion expansion = Camt053StreamingExtractor.Expansion.ENTRY;
+    private ConversionCache cache;
+    private CsvLayout layout = CsvLayout.DEFAULT;
+    private DuplicateIndex duplicateIndex;
+    private DuplicateFilter.Mode duplicateMode = DuplicateFilter.Mode.FLAG;
+    private long checkpointInterval;
+    private List<CsvLayout.Field> shardKey;
+    private int maxOpenShards = ShardedCsvOutput.DEFAULT_MAX_OPEN_FILES;
+    private long sortMemory = DailySummaryAggregator.DEFAULT_MEMORY_LIMIT;
+    private Path sortDirectory;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Output buffer of the row encoder
+     */
+    public ConversionOptions setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where to record per-stage timings, or null for none
+     */
+    public ConversionOptions setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public BalanceReconciler.Mode getReconciliation() {
+        return reconciliation;
+    }
+
+    /**
+     * How to check balances while converting, or null for no check
+     */
+    public ConversionOptions setReconciliation(BalanceReconciler.Mode reconciliation) {
+        this.reconciliation = reconciliation;
+        return this;
+    }
+
+    public Camt053StreamingExtractor.Expansion getExpansion() {
+        return expansion;
+    }
+
+    /**
+     * One row per Ntry (default) or one per TxDtls
+     */
+    public ConversionOptions setExpansion(Camt053StreamingExtractor.Expansion expansion) {
+        this.expansion = expansion;
+        return this;
+    }
+
+    public CsvLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Columns, delimiter and formatting of the CSV rows
+     */
+    public ConversionOptions setLayout(CsvLayout layout) {
+        this.layout = layout;
+        return this;
+    }
+
+    public ConversionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Reuse CSV files converted earlier from identical input, or null to always convert
+     */
+    public ConversionOptions setCache(ConversionCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public DuplicateIndex getDuplicateIndex() {
+        return duplicateIndex;
+    }
+
+    public DuplicateFilter.Mode getDuplicateMode() {
+        return duplicateMode;
+    }
+
+    /**
+     * Check entries against an index of bookings seen before, or null index for no check.
+     * Output then depends on earlier conversions, so the cache is bypassed.
+     */
+    public ConversionOptions setDuplicates(DuplicateIndex index, DuplicateFilter.Mode mode) {
+        this.duplicateIndex = index;
+        this.duplicateMode = mode;
+        return this;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Input bytes between checkpoints of a resumable conversion, or 0 to start
+     * every conversion from scratch (default). With checkpoints an interrupted
+     * conversion continues where it left off when it is run again.
+     */
+    public ConversionOptions setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative");
+        }
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public List<CsvLayout.Field> getShardKey() {
+        return shardKey;
+    }
+
+    public int getMaxOpenShards() {
+        return maxOpenShards;
+    }
+
+    /**
+     * Split the output into one file per value of key (see {@link ShardedCsvOutput}),
+     * keeping at most maxOpenFiles of them open; a null key writes a single file.
+     * Sharded conversions are sequential and bypass the cache.
+     */
+    public ConversionOptions setSharding(List<CsvLayout.Field> key, int maxOpenFiles) {
+        this.shardKey = key == null ? null : Collections.unmodifiableList(new ArrayList<>(key));
+        this.maxOpenShards = maxOpenFiles;
+        return this;
+    }
+
+    public long getSortMemory() {
+        return sortMemory;
+    }
+
+    public Path getSortDirectory() {
+        return sortDirectory;
+    }
+
+    /**
+     * Memory of the daily summary's external sort, whatever the input size, and
+     * where it spills sorted runs; a null directory uses java.io.tmpdir
+     */
+    public ConversionOptions setSorting(long memory, Path directory) {
+        if (memory < DailySummaryAggregator.MIN_MEMORY_LIMIT) {
+            throw new IllegalArgumentException("Sort memory must be at least "
+                + DailySummaryAggregator.MIN_MEMORY_LIMIT + " bytes");
+        }
+        this.sortMemory = memory;
+        this.sortDirectory = directory;
+        return this;
+    }
+
+    /**
+     * A filter in front of target reporting duplicates from source, or null when not configured
+     */
+    DuplicateFilter newDuplicateFilter(Camt053Handler target, Object source) {
+        if (duplicateIndex == null) {
+            return null;
+        }
+        return new DuplicateFilter(target, duplicateIndex, duplicateMode, (statement, transaction) ->
+            System.err.println("Duplicate entry in " + source + ": account " + statement.getAccountId()
+                + " AcctSvcrRef " + transaction.getAccountServicerReference()
+                + " booked " + transaction.getBookingDate()));
+    }
+
+    /**
+     * The settings that change the CSV produced for the same input, as part of the cache key.
+     * Reconciliation is included so entries stored without a FAIL check do not satisfy one.
+     */
+    String cacheVariant() {
+        return "layout=" + Camt053RowEncoder.LAYOUT_VERSION + ";" + layout.describe() + ";expansion=" + expansion
+            + ";reconcile=" + reconciliation;
+    }
+
+    DailySummaryAggregator newSummaryAggregator() {
+        return sortDirectory != null ? new DailySummaryAggregator(sortMemory, sortDirectory)
+            : new DailySummaryAggregator(sortMemory);
+    }
+
+    Camt053StreamingExtractor newExtractor() {
+        return new Camt053StreamingExtractor(expansion);
+    }
+
+    /**
+     * Extractor for input that does not name its version itself
+     */
+    Camt053StreamingExtractor newExtractor(Camt053Version version) {
+        return new Camt053StreamingExtractor(expansion, version);
+    }
+}
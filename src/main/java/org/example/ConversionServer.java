@@ -0,0 +1,289 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * HTTP service that converts the CAMT.053 document POSTed to /convert and
+ * answers with the CSV, so other systems can use one warm JVM instead of
+ * starting the converter per file.
+ *
+ * Every request runs on its own virtual thread. The request body is parsed as
+ * it arrives and rows are sent with chunked encoding as the encoder's buffer
+ * fills, so neither document is held in memory. At most maxConcurrent
+ * conversions run at once; a request that waits longer than a second for a
+ * slot gets 503. A request body with Content-Encoding gzip is inflated.
+ *
+ * The JDK server's body streams block inside synchronized methods, which pins
+ * a virtual thread to its carrier on JDK 21; a few slow uploads would stall
+ * every other request, 503s and health checks included. Conversions therefore
+ * run on one platform thread per slot while the request's virtual thread
+ * waits for them.
+ *
+ * Layout, expansion and reconciliation come from the options; the cache,
+ * duplicate checks and sharding are file features and not used here. If a
+ * conversion fails before any row was sent the response is 400 (or 500) with
+ * the error; after that the connection is dropped, so a client never takes a
+ * truncated CSV for a complete one.
+ */
+public class ConversionServer implements Closeable {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 64;
+
+    private static final long SLOT_WAIT_MILLIS = 1000;
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    static {
+        // Without TCP_NODELAY each small response waits for a delayed ACK, about 40 ms.
+        // Read once, when the JDK server classes are first used.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // One per slot, so a conversion holding a slot never waits for a thread
+    private final ExecutorService workers;
+    private final Semaphore slots;
+    private final ConversionOptions options;
+    private final AtomicLong converted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConversionServer(InetSocketAddress address, int maxConcurrent, ConversionOptions options) throws IOException {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        this.slots = new Semaphore(maxConcurrent);
+        this.workers = Executors.newFixedThreadPool(maxConcurrent,
+            Thread.ofPlatform().name("conversion-", 1).daemon().factory());
+        this.options = options;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/convert", this::convert);
+        server.createContext("/health", this::health);
+        server.setExecutor(executor);
+    }
+
+    public ConversionServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Port the server listens on, useful when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getConverted() {
+        return converted.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Requests answered with 503 because every slot was busy
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Stop accepting requests, give running ones a few seconds to finish, and stop
+     */
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.close();
+        workers.close();
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        // Closing the exchange would end a chunked body normally, so on failure it is left to the server
+        boolean answered = false;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "POST a CAMT.053 document to convert it");
+            } else if (!acquireSlot()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Too many conversions in progress");
+            } else {
+                try {
+                    convertOnWorker(exchange);
+                } finally {
+                    slots.release();
+                }
+            }
+            answered = true;
+        } finally {
+            if (answered) {
+                exchange.close();
+            }
+        }
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return slots.tryAcquire(SLOT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Run convertBody on a platform thread and wait for it without pinning this one
+     */
+    private void convertOnWorker(HttpExchange exchange) throws IOException {
+        Future<?> conversion = workers.submit(() -> {
+            convertBody(exchange);
+            return null;
+        });
+        try {
+            conversion.get();
+        } catch (InterruptedException e) {
+            conversion.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Conversion failed", cause);
+        }
+    }
+
+    private void convertBody(HttpExchange exchange) throws IOException {
+        ResponseStream response = new ResponseStream(exchange);
+        try {
+            InputStream body = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                body = new GZIPInputStream(body);
+            }
+            // Not closed on failure: rows still buffered must not start a 200 response
+            Camt053RowEncoder encoder = new Camt053RowEncoder(response, options.getBufferSize(), options.getLayout());
+            BalanceReconciler.Mode reconciliation = options.getReconciliation();
+            BalanceReconciler reconciler = reconciliation == null ? null : new BalanceReconciler(encoder,
+                reconciliation, mismatch -> System.err.println("Balance mismatch in request from "
+                + exchange.getRemoteAddress() + ": " + mismatch));
+            options.newExtractor().extract(body, reconciler != null ? reconciler : encoder);
+            if (reconciler != null) {
+                reconciler.finish();
+            }
+            encoder.close();
+            response.finish();
+            converted.incrementAndGet();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            failed.incrementAndGet();
+            if (response.started) {
+                // Rows were sent already; let the server drop the connection
+                throw e instanceof IOException ? (IOException) e : new IOException("Conversion failed", e);
+            }
+            boolean badInput = e instanceof XMLStreamException || e instanceof ReconciliationException
+                || e instanceof ZipException;
+            sendText(exchange, badInput ? 400 : 500, e.toString());
+        }
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, 200, "ok converted=" + converted.get() + " failed=" + failed.get()
+                + " rejected=" + rejected.get() + " available=" + slots.availablePermits());
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Response body that sends the 200 headers with the first bytes, so an error
+     * found before then can still get its own status
+     */
+    private static class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream body;
+        boolean started;
+
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                body().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // The exchange is closed by the handler once the conversion is complete
+        }
+
+        /**
+         * Send the headers of an empty response if no row was written
+         */
+        void finish() throws IOException {
+            if (!started) {
+                started = true;
+                exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+                exchange.sendResponseHeaders(200, -1);
+            }
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                started = true;
+                exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+                // 0: length unknown, chunked
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+    }
+}
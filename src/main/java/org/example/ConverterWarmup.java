@@ -0,0 +1,105 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Converts small generated statements before real work arrives, so the first
+ * file of a long-running process does not pay for class loading, the XML
+ * parser factory lookup and interpreted code. The parser factory is shared by
+ * every extractor in the process, so it is set up once here and reused by
+ * all files after.
+ *
+ * {@link #train} is the workload of the AppCDS training run (appcds profile in
+ * pom.xml): it touches every input and output form the command line handles,
+ * so the classes of all of them end up in the archive.
+ */
+public final class ConverterWarmup {
+
+    private static final int STATEMENTS = 2;
+    private static final int ENTRIES_PER_STATEMENT = 100;
+    private static final int TX_DETAILS_PER_ENTRY = 2;
+    private static final int ROUNDS = 20;
+
+    private ConverterWarmup() {
+    }
+
+    /**
+     * Convert a generated document a few times with the layout, expansion and
+     * reconciliation of options. The cache, duplicate index and metrics are
+     * left out so the warm-up leaves no trace; files go to a temporary
+     * directory that is deleted afterwards.
+     */
+    public static void run(ConversionOptions options) throws IOException, XMLStreamException {
+        ConversionOptions settings = new ConversionOptions()
+            .setBufferSize(options.getBufferSize())
+            .setLayout(options.getLayout())
+            .setExpansion(options.getExpansion())
+            .setReconciliation(options.getReconciliation());
+        Path dir = Files.createTempDirectory("camt053-warmup");
+        try {
+            Path input = generate(dir, Camt053Version.V08);
+            Camt053FileConverter converter = new Camt053FileConverter(settings);
+            for (int i = 0; i < ROUNDS; i++) {
+                converter.convert(input, dir.resolve("warmup.csv"));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Training run for the class-data-sharing archive; leaves its files in dir
+     */
+    public static void train(Path dir) throws IOException, XMLStreamException {
+        Files.createDirectories(dir);
+        Path current = generate(dir, Camt053Version.V08);
+        Path older = generate(dir, Camt053Version.V05);
+        Path gzipped = dir.resolve("statement-v08.xml.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+            Files.copy(current, out);
+        }
+
+        ConversionOptions plain = new ConversionOptions();
+        Camt053FileConverter converter = new Camt053FileConverter(plain);
+        converter.convert(current, dir.resolve("v08.csv"));
+        converter.convert(older, dir.resolve("v05.csv"));
+        converter.convert(gzipped, dir.resolve("gzip.csv.gz"));
+
+        ConversionOptions checked = new ConversionOptions()
+            .setExpansion(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+            .setReconciliation(BalanceReconciler.Mode.FAIL);
+        new Camt053FileConverter(checked).convert(current, dir.resolve("expanded.csv"));
+
+        ConversionOptions resumable = new ConversionOptions()
+            .setReconciliation(BalanceReconciler.Mode.REPORT)
+            .setCheckpointInterval(ConversionOptions.DEFAULT_CHECKPOINT_INTERVAL);
+        new Camt053ParallelConverter(ForkJoinPool.commonPool(), ENTRIES_PER_STATEMENT / 4, resumable)
+            .convert(current, dir.resolve("parallel.csv"));
+    }
+
+    private static Path generate(Path dir, Camt053Version version) throws IOException, XMLStreamException {
+        Path file = dir.resolve("statement-v" + String.format("%02d", version.getNumber()) + ".xml");
+        new Camt053CorpusGenerator(1L, STATEMENTS, ENTRIES_PER_STATEMENT, TX_DETAILS_PER_ENTRY, version).write(file);
+        return file;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
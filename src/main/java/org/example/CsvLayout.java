@@ -0,0 +1,355 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Column layout of the Bal and Trx rows, read from a properties file:
+ *
+ * <pre>
+ * delimiter=|
+ * # none, minimal (fields containing the delimiter, quote or a line break) or all
+ * quoting=none
+ * quote="
+ * # DateTimeFormatter pattern
+ * date=yyyy-MM-dd
+ * decimalSeparator=.
+ * # system, lf or crlf
+ * lineSeparator=system
+ * balance='Bal',MsgId,ElctrncSeqNb,PgNb,,BalDt,Ccy,ClsgBal,OpngBal,NetMvmnt,...
+ * transaction='Trx',MsgId,ElctrncSeqNb,PgNb,'X',BookgDt,Ccy,Amt,Sts,,AcctSvcrRef,...
+ * </pre>
+ *
+ * A column is a field name (see {@link Field}), a literal in single quotes, or
+ * empty. An empty balance list leaves out the Bal rows. {@link Camt053RowEncoder}
+ * compiles the layout once per statement into constant byte runs and a list of
+ * per-entry fields, so a custom layout costs the same as the built-in one.
+ */
+public final class CsvLayout {
+
+    /** Where a field's value comes from; statement and balance fields are rendered once per statement */
+    public enum Scope { STATEMENT, BALANCE, TRANSACTION }
+
+    public enum Field {
+        MSG_ID("MsgId", Scope.STATEMENT),
+        ELCTRNC_SEQ_NB("ElctrncSeqNb", Scope.STATEMENT),
+        PG_NB("PgNb", Scope.STATEMENT),
+        CCY("Ccy", Scope.STATEMENT),
+        FROM_BIC("FromBIC", Scope.STATEMENT),
+        TO_BIC("ToBIC", Scope.STATEMENT),
+        ACCOUNT_ID("AccountId", Scope.STATEMENT),
+        LAST_PG_IND("LastPgInd", Scope.STATEMENT),
+        STMT_ID("StmtId", Scope.STATEMENT),
+        BAL_DT("BalDt", Scope.BALANCE),
+        CLSG_BAL("ClsgBal", Scope.BALANCE),
+        OPNG_BAL("OpngBal", Scope.BALANCE),
+        NET_MVMNT("NetMvmnt", Scope.BALANCE),
+        CLSG_CDT_DBT_IND("ClsgCdtDbtInd", Scope.BALANCE),
+        OPNG_CDT_DBT_IND("OpngCdtDbtInd", Scope.BALANCE),
+        BOOKG_DT("BookgDt", Scope.TRANSACTION),
+        AMT("Amt", Scope.TRANSACTION),
+        STS("Sts", Scope.TRANSACTION),
+        ACCT_SVCR_REF("AcctSvcrRef", Scope.TRANSACTION),
+        CDT_DBT_IND("CdtDbtInd", Scope.TRANSACTION),
+        SIGNED_AMT("SignedAmt", Scope.TRANSACTION),
+        TX_CDT_DBT_IND("TxCdtDbtInd", Scope.TRANSACTION),
+        END_TO_END_ID("EndToEndId", Scope.TRANSACTION),
+        COUNTERPARTY("Counterparty", Scope.TRANSACTION),
+        COUNTERPARTY_ACCT("CounterpartyAcct", Scope.TRANSACTION);
+
+        private final String specName;
+        private final Scope scope;
+
+        Field(String specName, Scope scope) {
+            this.specName = specName;
+            this.scope = scope;
+        }
+
+        public String getSpecName() {
+            return specName;
+        }
+
+        public Scope getScope() {
+            return scope;
+        }
+
+        static Field bySpecName(String name) {
+            for (Field field : values()) {
+                if (field.specName.equals(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum Quoting { NONE, MINIMAL, ALL }
+
+    // Written without a DateTimeFormatter
+    private static final String ISO_DATE = "yyyy-MM-dd";
+
+    /** The built-in Bal and Trx rows, written unless another layout is given */
+    public static final CsvLayout DEFAULT;
+
+    static {
+        try {
+            DEFAULT = parse(new StringReader(
+                "balance='Bal',MsgId,ElctrncSeqNb,PgNb,,BalDt,Ccy,ClsgBal,OpngBal,NetMvmnt,,ClsgCdtDbtInd,,,,,"
+                    + "FromBIC,ToBIC,AccountId,LastPgInd,StmtId\n"
+                    + "transaction='Trx',MsgId,ElctrncSeqNb,PgNb,'X',BookgDt,Ccy,Amt,Sts,,AcctSvcrRef,CdtDbtInd,"
+                    + "SignedAmt,TxCdtDbtInd,EndToEndId,Counterparty,FromBIC,ToBIC,AccountId,LastPgInd,StmtId\n"));
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String delimiter;
+    private final Quoting quoting;
+    private final char quote;
+    private final DateTimeFormatter dateFormat;
+    private final char decimalSeparator;
+    private final String lineSeparator;
+    private final List<Column> balanceColumns;
+    private final List<Column> transactionColumns;
+
+    private CsvLayout(Properties spec) throws IOException {
+        this.delimiter = spec.getProperty("delimiter", "|");
+        this.quoting = quoting(spec.getProperty("quoting", "none").trim());
+        this.quote = single(spec.getProperty("quote", "\""), "quote");
+        String date = spec.getProperty("date", ISO_DATE).trim();
+        this.dateFormat = date.isEmpty() || date.equals(ISO_DATE) ? null : DateTimeFormatter.ofPattern(date);
+        this.decimalSeparator = single(spec.getProperty("decimalSeparator", "."), "decimalSeparator");
+        this.lineSeparator = lineSeparator(spec.getProperty("lineSeparator", "system").trim());
+        if (delimiter.isEmpty()) {
+            throw new IOException("Layout delimiter must not be empty");
+        }
+        if (quoting == Quoting.NONE && delimiter.equals(String.valueOf(decimalSeparator))) {
+            throw new IOException("Layout decimalSeparator " + decimalSeparator
+                + " is also the delimiter, amounts need quoting=minimal or all");
+        }
+        this.balanceColumns = columns(spec.getProperty("balance", ""), Scope.BALANCE);
+        String transaction = spec.getProperty("transaction");
+        if (transaction == null) {
+            throw new IOException("Layout has no transaction columns");
+        }
+        this.transactionColumns = columns(transaction, Scope.TRANSACTION);
+    }
+
+    public static CsvLayout load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    public static CsvLayout parse(Reader spec) throws IOException {
+        Properties properties = new Properties();
+        properties.load(spec);
+        return new CsvLayout(properties);
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public Quoting getQuoting() {
+        return quoting;
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    /**
+     * Date format, or null for ISO yyyy-MM-dd
+     */
+    public DateTimeFormatter getDateFormat() {
+        return dateFormat;
+    }
+
+    public char getDecimalSeparator() {
+        return decimalSeparator;
+    }
+
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    public List<Column> getBalanceColumns() {
+        return balanceColumns;
+    }
+
+    public List<Column> getTransactionColumns() {
+        return transactionColumns;
+    }
+
+    /**
+     * Everything that affects the bytes written, for keying cached output
+     */
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("delimiter=").append(delimiter).append(";quoting=").append(quoting).append(";quote=").append(quote)
+            .append(";date=").append(dateFormat).append(";decimal=").append(decimalSeparator)
+            .append(";eol=").append(lineSeparator.replace("\r", "CR").replace("\n", "LF"));
+        describe(sb.append(";balance="), balanceColumns);
+        describe(sb.append(";transaction="), transactionColumns);
+        return sb.toString();
+    }
+
+    private static void describe(StringBuilder sb, List<Column> columns) {
+        for (Column column : columns) {
+            if (column.field != null) {
+                sb.append(column.field.specName);
+            } else {
+                sb.append('\'').append(column.literal.replace("'", "''")).append('\'');
+            }
+            sb.append(',');
+        }
+    }
+
+    /**
+     * value as it appears between delimiters, quoted as the layout asks
+     */
+    String quote(String value) {
+        if (quoting == Quoting.NONE || (quoting == Quoting.MINIMAL && !needsQuotes(value))) {
+            return value;
+        }
+        String q = String.valueOf(quote);
+        return q + value.replace(q, q + q) + q;
+    }
+
+    /**
+     * Whether a value has to be quoted under MINIMAL quoting
+     */
+    boolean needsQuotes(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == quote || c == '\n' || c == '\r' || c == delimiter.charAt(0) && startsWith(value, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean startsWith(CharSequence value, int offset) {
+        if (offset + delimiter.length() > value.length()) {
+            return false;
+        }
+        for (int i = 1; i < delimiter.length(); i++) {
+            if (value.charAt(offset + i) != delimiter.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Column> columns(String spec, Scope rowScope) throws IOException {
+        List<Column> columns = new ArrayList<>();
+        if (spec.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (String token : splitColumns(spec)) {
+            String name = token.trim();
+            if (name.isEmpty()) {
+                columns.add(new Column(null, ""));
+            } else if (name.length() >= 2 && name.startsWith("'") && name.endsWith("'")) {
+                columns.add(new Column(null, name.substring(1, name.length() - 1).replace("''", "'")));
+            } else {
+                Field field = Field.bySpecName(name);
+                if (field == null) {
+                    throw new IOException("Unknown layout field " + name);
+                }
+                if (field.scope != Scope.STATEMENT && field.scope != rowScope) {
+                    throw new IOException("Field " + name + " is not available in "
+                        + rowScope.name().toLowerCase(Locale.ROOT) + " rows");
+                }
+                columns.add(new Column(field, null));
+            }
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Split on commas outside single-quoted literals
+     */
+    private static List<String> splitColumns(String spec) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == ',' && !quoted) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        tokens.add(current.toString());
+        return tokens;
+    }
+
+    private static char single(String value, String name) throws IOException {
+        if (value.length() != 1 || value.charAt(0) >= 0x80) {
+            throw new IOException("Layout " + name + " must be one ASCII character: '" + value + "'");
+        }
+        return value.charAt(0);
+    }
+
+    private static Quoting quoting(String value) throws IOException {
+        try {
+            return Quoting.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown quoting " + value + ", expected none, minimal or all");
+        }
+    }
+
+    private static String lineSeparator(String value) throws IOException {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "system":
+                return System.lineSeparator();
+            case "lf":
+                return "\n";
+            case "crlf":
+                return "\r\n";
+            default:
+                throw new IOException("Unknown lineSeparator " + value + ", expected system, lf or crlf");
+        }
+    }
+
+    /**
+     * One column: a field, or a literal (empty for a blank column)
+     */
+    public static final class Column {
+        private final Field field;
+        private final String literal;
+
+        Column(Field field, String literal) {
+            this.field = field;
+            this.literal = literal;
+        }
+
+        /**
+         * The field, or null for a literal
+         */
+        public Field getField() {
+            return field;
+        }
+
+        public String getLiteral() {
+            return literal;
+        }
+    }
+}
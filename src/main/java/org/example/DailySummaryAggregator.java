@@ -0,0 +1,804 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Daily totals per account, booking date, currency and credit/debit indicator
+ * over any number of statements, in memory bounded by configuration rather than
+ * by the input.
+ *
+ * Every entry is appended to a fixed in-memory run of primitive columns:
+ * account and currency with indicator as indexes into the run's distinct
+ * values, the booking day, and the amount as a scaled long, about 37 bytes an
+ * entry. When the run is full it is sorted, entries with the same key are
+ * combined, and it is spilled to a temporary file with the keys as bytes that
+ * sort the same way. {@link #write} merges the spilled runs and the last run k
+ * ways and totals equal keys as they come out of the merge, so neither the
+ * entries nor the summary rows are ever all in memory. Half of the memory limit
+ * is the run, the other half the read buffers of the merge; with more runs than
+ * those buffers allow, the oldest runs are first merged into bigger ones.
+ *
+ * One row per group, sorted by account, then booking date:
+ *
+ * <pre>
+ * Sum|AccountId|BookgDt|Ccy|CdtDbtInd|Count|Total
+ * </pre>
+ *
+ * with the delimiter, quoting, date and decimal format of a {@link CsvLayout}.
+ * Count is the number of Ntry elements and Total the sum of their amounts, also
+ * when rows are expanded to TxDtls; without sign, as the indicator is part of the
+ * key. Ccy is the currency of the statement's account.
+ */
+public class DailySummaryAggregator implements Camt053Handler, Closeable {
+
+    public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+    public static final long MIN_MEMORY_LIMIT = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAN_IN = 128;
+    // Bytes per entry of the in-memory run: its five columns, the sort key and two ints for the merge sort
+    private static final int ENTRY_SIZE = 4 + 4 + 4 + 8 + 1 + 8 + 4 + 4;
+    // Estimated cost of a distinct account or currency and indicator pair, besides its bytes
+    private static final int KEY_PART_OVERHEAD = 96;
+    // Two parts and a day make a key that fits a run file's read buffer with room to spare
+    private static final int MAX_KEY_PART_LENGTH = 0x3FF0;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final Path parentDirectory;
+    private final int fanIn;
+
+    // The in-memory run, one column per field of an entry, as in TransactionStore
+    private final int[] accounts;      // index into accountKeys
+    private final int[] tails;         // index into tailKeys
+    private final int[] days;          // epoch days, NO_DATE when there is none
+    private final long[] amountUnits;
+    private final byte[] amountScales;
+    private int size;
+
+    // Filled when the run is sorted: a long key per entry, and the entries in key order
+    private final long[] sortKeys;
+    private final int[] order;
+    private final int[] scratch;
+    private int[] tailRanks;
+
+    // The distinct parts of the run's keys: account ids, and currencies with indicators
+    private final List<byte[]> accountKeys = new ArrayList<>();
+    private final Map<String, Integer> accountIds = new HashMap<>();
+    private final List<byte[]> tailKeys = new ArrayList<>();
+    private final Map<String, Integer> tailIds = new HashMap<>();
+    private final long maxKeyPartBytes;
+    private long keyPartBytes;
+
+    private Path directory;
+    private final List<Path> runs = new ArrayList<>();  // spilled, oldest first
+    private int runFiles;
+    private long entryCount;
+    private long spilledRuns;
+    private boolean written;
+
+    // Current statement, and its index among the run's accounts once it has an entry there
+    private String account;
+    private String currency;
+    private int accountId = -1;
+    // Tail ids of the current statement by indicator, usually just CRDT and DBIT
+    private final String[] cachedIndicators = new String[4];
+    private final int[] cachedTails = new int[4];
+    private int cachedCount;
+
+    /**
+     * @param memoryLimit bytes for the run and the merge buffers, at least {@link #MIN_MEMORY_LIMIT}
+     * @param directory   where runs are spilled, in a temporary directory of their own
+     */
+    public DailySummaryAggregator(long memoryLimit, Path directory) {
+        if (memoryLimit < MIN_MEMORY_LIMIT) {
+            throw new IllegalArgumentException("Memory limit must be at least " + MIN_MEMORY_LIMIT + " bytes: "
+                + memoryLimit);
+        }
+        this.parentDirectory = directory;
+        long runMemory = memoryLimit / 2;
+        // Merge buffers: one per run read, plus the output
+        this.fanIn = (int) Math.max(3, Math.min(MAX_FAN_IN, (memoryLimit - runMemory) / READ_BUFFER_SIZE));
+        this.maxKeyPartBytes = runMemory / 8;
+        int maxEntries = (int) Math.min((runMemory - maxKeyPartBytes) / ENTRY_SIZE, MAX_ARRAY_SIZE);
+        this.accounts = new int[maxEntries];
+        this.tails = new int[maxEntries];
+        this.days = new int[maxEntries];
+        this.amountUnits = new long[maxEntries];
+        this.amountScales = new byte[maxEntries];
+        this.sortKeys = new long[maxEntries];
+        this.order = new int[maxEntries];
+        this.scratch = new int[maxEntries];
+    }
+
+    public DailySummaryAggregator(long memoryLimit) {
+        this(memoryLimit, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    public DailySummaryAggregator() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Entries added so far
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Runs written to disk so far, including those merged from other runs
+     */
+    public long getSpilledRuns() {
+        return spilledRuns;
+    }
+
+    @Override
+    public void onStatement(StatementInfo statement, BalanceInfo balance) {
+        account = statement.getAccountId() != null ? statement.getAccountId() : "";
+        currency = statement.getCurrency() != null ? statement.getCurrency() : "";
+        accountId = -1;
+        cachedCount = 0;
+    }
+
+    @Override
+    public void onTransaction(TransactionInfo transaction) {
+        // Rows may be TxDtls; entries are counted in onEntryEnd
+    }
+
+    @Override
+    public void onEntryEnd(TransactionInfo transaction) throws IOException {
+        if (written) {
+            throw new IllegalStateException("Summary was written already");
+        }
+        if (account == null) {
+            throw new IllegalStateException("Entry before its statement");
+        }
+        long units;
+        int scale;
+        if (transaction.hasScaledAmount()) {
+            units = transaction.getAmountUnits();
+            scale = transaction.getAmountScale();
+        } else if (transaction.getAmount() == null) {
+            units = 0;
+            scale = 0;
+        } else {
+            BigDecimal amount = transaction.getAmount();
+            if (amount.scale() < 0) {
+                amount = amount.setScale(0);
+            }
+            if (amount.precision() > FixedPointAmounts.MAX_DIGITS || amount.scale() > FixedPointAmounts.MAX_DIGITS) {
+                throw new IOException("Amount " + amount.toPlainString() + " has more than "
+                    + FixedPointAmounts.MAX_DIGITS + " digits");
+            }
+            units = amount.unscaledValue().longValue();
+            scale = amount.scale();
+        }
+        if (size == accounts.length || keyPartBytes > maxKeyPartBytes) {
+            spill();
+        }
+        if (accountId < 0) {
+            accountId = keyPart(accountKeys, accountIds, account + '\0');
+        }
+        LocalDate date = transaction.getBookingDate();
+        accounts[size] = accountId;
+        tails[size] = tailId(transaction.getEntryCreditDebitIndicator());
+        days[size] = date != null ? (int) date.toEpochDay() : NO_DATE;
+        amountUnits[size] = units;
+        amountScales[size] = (byte) scale;
+        size++;
+        entryCount++;
+    }
+
+    /**
+     * Write the summary to output, gzip-compressed if it ends in .gz; the file
+     * is replaced only once complete. Returns the number of rows.
+     */
+    public long write(Path output, CsvLayout layout) throws IOException {
+        Path part = ConversionCheckpoint.partPath(output);
+        try {
+            Files.deleteIfExists(part);
+            long rows;
+            try (OutputStream out = Camt053FileConverter.newOutputStream(part, Camt053FileConverter.isGzip(output))) {
+                rows = write(out, layout);
+            }
+            ConversionCache.moveIntoPlace(part, output);
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+    }
+
+    /**
+     * Merge all runs and write the summary rows to out, which is flushed but not
+     * closed. Returns the number of rows. Can be called once; no entries can be
+     * added after.
+     */
+    public long write(OutputStream out, CsvLayout layout) throws IOException {
+        if (written) {
+            throw new IllegalStateException("Summary was written already");
+        }
+        written = true;
+        // The final merge reads the in-memory run from memory, so it has as many buffers for files
+        while (runs.size() > fanIn - 1) {
+            List<Path> oldest = new ArrayList<>(runs.subList(0, fanIn - 1));
+            runs.subList(0, fanIn - 1).clear();
+            runs.add(mergeRuns(oldest));
+        }
+        sortRun();
+        List<Run> sources = new ArrayList<>(runs.size() + 1);
+        try {
+            for (Path run : runs) {
+                sources.add(new FileRun(run));
+            }
+            sources.add(new MemoryRun());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+            RowSink rows = new RowSink(writer, layout);
+            merge(sources, rows);
+            writer.flush();
+            return rows.count;
+        } finally {
+            for (Run source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Delete the spilled runs
+     */
+    @Override
+    public void close() throws IOException {
+        runs.clear();
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+        directory = null;
+    }
+
+    /**
+     * Sort the in-memory run, combine equal keys and write it to a new run file
+     */
+    private void spill() throws IOException {
+        sortRun();
+        Path file = newRunFile();
+        try (RunSink sink = new RunSink(file)) {
+            merge(List.of(new MemoryRun()), sink);
+        }
+        runs.add(file);
+        size = 0;
+        accountKeys.clear();
+        accountIds.clear();
+        tailKeys.clear();
+        tailIds.clear();
+        keyPartBytes = 0;
+        accountId = -1;
+        cachedCount = 0;
+    }
+
+    private Path mergeRuns(List<Path> files) throws IOException {
+        Path file = newRunFile();
+        List<Run> sources = new ArrayList<>(files.size());
+        try {
+            for (Path run : files) {
+                sources.add(new FileRun(run));
+            }
+            try (RunSink sink = new RunSink(file)) {
+                merge(sources, sink);
+            }
+        } finally {
+            for (Run source : sources) {
+                source.close();
+            }
+        }
+        for (Path run : files) {
+            Files.delete(run);
+        }
+        return file;
+    }
+
+    private Path newRunFile() throws IOException {
+        if (directory == null) {
+            Files.createDirectories(parentDirectory);
+            directory = Files.createTempDirectory(parentDirectory, "camt053-summary");
+        }
+        spilledRuns++;
+        return directory.resolve("run-" + (runFiles++) + ".bin");
+    }
+
+    /**
+     * K-way merge of sorted sources, handing each distinct key with its count and total to sink
+     */
+    private static void merge(List<Run> sources, GroupSink sink) throws IOException {
+        // Binary heap on the sources' current keys; a sorted array is one to start with
+        Run[] heap = new Run[sources.size()];
+        int heapSize = 0;
+        for (Run source : sources) {
+            if (source.next()) {
+                heap[heapSize++] = source;
+            }
+        }
+        Arrays.sort(heap, 0, heapSize);
+        byte[] key = new byte[256];
+        int keyLength = -1;
+        long count = 0;
+        AmountSum total = new AmountSum();
+        while (heapSize > 0) {
+            Run run = heap[0];
+            if (keyLength < 0 || Arrays.compareUnsigned(key, 0, keyLength,
+                run.key, run.keyOffset, run.keyOffset + run.keyLength) != 0) {
+                if (keyLength >= 0) {
+                    sink.accept(key, keyLength, count, total);
+                }
+                if (key.length < run.keyLength) {
+                    key = new byte[Math.max(run.keyLength, key.length * 2)];
+                }
+                System.arraycopy(run.key, run.keyOffset, key, 0, run.keyLength);
+                keyLength = run.keyLength;
+                count = 0;
+                total.reset();
+            }
+            count += run.count;
+            if (run.bigTotal != null) {
+                total.add(run.bigTotal);
+            } else {
+                total.add(run.units, run.scale);
+            }
+            if (!run.next()) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize);
+        }
+        if (keyLength >= 0) {
+            sink.accept(key, keyLength, count, total);
+        }
+    }
+
+    /**
+     * Restore the heap after its top changed
+     */
+    private static void siftDown(Run[] heap, int heapSize) {
+        if (heapSize < 2) {
+            return;
+        }
+        Run top = heap[0];
+        int at = 0;
+        int child;
+        while ((child = 2 * at + 1) < heapSize) {
+            if (child + 1 < heapSize && heap[child + 1].compareTo(heap[child]) < 0) {
+                child++;
+            }
+            if (top.compareTo(heap[child]) <= 0) {
+                break;
+            }
+            heap[at] = heap[child];
+            at = child;
+        }
+        heap[at] = top;
+    }
+
+    /**
+     * Put the in-memory run in key order. Keys are compared by the rank of their
+     * parts among the run's distinct parts, which orders them as their bytes would.
+     * Usually account rank, day, currency and indicator rank and the entry's index
+     * fit one long, and the run is sorted as a plain long[]; otherwise by a merge
+     * sort of the indexes on account rank and day, then the rest.
+     */
+    private void sortRun() {
+        int[] accountRanks = ranks(accountKeys);
+        tailRanks = ranks(tailKeys);
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (days[i] != NO_DATE) {
+                firstDay = Math.min(firstDay, days[i]);
+                lastDay = Math.max(lastDay, days[i]);
+            }
+        }
+        int accountBits = bits(accountKeys.size());
+        int tailBits = bits(tailKeys.size());
+        // Day 0 is no date, the others count from the first day
+        int dayBits = bits(lastDay >= firstDay ? (long) lastDay - firstDay + 2 : 1);
+        int indexBits = bits(size);
+        if (accountBits + dayBits + tailBits + indexBits <= 63) {
+            long indexMask = (1L << indexBits) - 1;
+            for (int i = 0; i < size; i++) {
+                long day = days[i] == NO_DATE ? 0 : (long) days[i] - firstDay + 1;
+                long key = ((long) accountRanks[accounts[i]] << dayBits | day) << tailBits | tailRanks[tails[i]];
+                sortKeys[i] = key << indexBits | i;
+            }
+            Arrays.sort(sortKeys, 0, size);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) (sortKeys[i] & indexMask);
+            }
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            sortKeys[i] = (long) accountRanks[accounts[i]] << 32 | (days[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            order[i] = i;
+        }
+        sort(0, size);
+    }
+
+    /**
+     * Bits needed for the numbers 0 to count - 1
+     */
+    private static int bits(long count) {
+        return count <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(count - 1);
+    }
+
+    /**
+     * Merge sort of order[from, to); stable, and without boxing
+     */
+    private void sort(int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int entry = order[i];
+                int j = i - 1;
+                while (j >= from && compare(order[j], entry) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = entry;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(from, middle);
+        sort(middle, to);
+        if (compare(order[middle - 1], order[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && compare(scratch[left], scratch[right]) <= 0) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private int compare(int a, int b) {
+        int result = Long.compare(sortKeys[a], sortKeys[b]);
+        return result != 0 ? result : Integer.compare(tailRanks[tails[a]], tailRanks[tails[b]]);
+    }
+
+    /**
+     * Rank of each key part in unsigned byte order
+     */
+    private static int[] ranks(List<byte[]> parts) {
+        Integer[] sorted = new Integer[parts.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Arrays.compareUnsigned(parts.get(a), parts.get(b)));
+        int[] ranks = new int[sorted.length];
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks[sorted[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Index of the current currency with indicator among the run's tails
+     */
+    private int tailId(String indicator) throws IOException {
+        for (int i = 0; i < cachedCount; i++) {
+            if (Objects.equals(cachedIndicators[i], indicator)) {
+                return cachedTails[i];
+            }
+        }
+        String tail = indicator != null ? currency + '\0' + indicator : currency + '\0';
+        int id = keyPart(tailKeys, tailIds, tail);
+        if (cachedCount < cachedIndicators.length) {
+            cachedIndicators[cachedCount] = indicator;
+            cachedTails[cachedCount++] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Index of a key part in the run, added if new
+     */
+    private int keyPart(List<byte[]> parts, Map<String, Integer> ids, String value) throws IOException {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_PART_LENGTH) {
+            throw new IOException("Too long to summarize: " + value.substring(0, 40) + "...");
+        }
+        ids.put(value, parts.size());
+        parts.add(bytes);
+        keyPartBytes += bytes.length + KEY_PART_OVERHEAD;
+        return parts.size() - 1;
+    }
+
+    /**
+     * Current record of a sorted source: its key, and the count and total of the entries it stands for
+     */
+    private abstract static class Run implements Comparable<Run>, Closeable {
+        byte[] key;
+        int keyOffset;
+        int keyLength;
+        long count;
+        long units;
+        int scale;
+        BigDecimal bigTotal;  // set instead of units and scale when the total does not fit a long
+
+        /**
+         * Move to the next record; false at the end
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public int compareTo(Run other) {
+            return Arrays.compareUnsigned(key, keyOffset, keyOffset + keyLength,
+                other.key, other.keyOffset, other.keyOffset + other.keyLength);
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * The sorted in-memory run, one entry per record; keys are built from their parts
+     */
+    private class MemoryRun extends Run {
+        private int index;
+
+        MemoryRun() {
+            key = new byte[256];
+            count = 1;
+        }
+
+        @Override
+        boolean next() {
+            if (index == size) {
+                return false;
+            }
+            int entry = order[index++];
+            byte[] account = accountKeys.get(accounts[entry]);
+            byte[] tail = tailKeys.get(tails[entry]);
+            keyLength = account.length + 4 + tail.length;
+            if (key.length < keyLength) {
+                key = new byte[Math.max(keyLength, key.length * 2)];
+            }
+            System.arraycopy(account, 0, key, 0, account.length);
+            // Flipping the sign bit makes the unsigned byte order that of the days, with no date first
+            int day = days[entry] ^ Integer.MIN_VALUE;
+            int at = account.length;
+            key[at] = (byte) (day >>> 24);
+            key[at + 1] = (byte) (day >>> 16);
+            key[at + 2] = (byte) (day >>> 8);
+            key[at + 3] = (byte) day;
+            System.arraycopy(tail, 0, key, at + 4, tail.length);
+            units = amountUnits[entry];
+            scale = amountScales[entry];
+            return true;
+        }
+    }
+
+    /**
+     * A spilled run: key length, key, count, then the total as scale and units,
+     * or as scale -1 and the length and ASCII digits of its decimal text when it
+     * does not fit a long
+     */
+    private static class FileRun extends Run {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        FileRun(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.key = new byte[256];
+            buffer.limit(0);
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (!fill(2)) {
+                return false;
+            }
+            int length = buffer.getShort() & 0xFFFF;
+            if (key.length < length) {
+                key = new byte[Math.max(length, key.length * 2)];
+            }
+            require(length + 8 + 1);
+            buffer.get(key, 0, length);
+            keyLength = length;
+            count = buffer.getLong();
+            scale = buffer.get();
+            if (scale >= 0) {
+                require(8);
+                units = buffer.getLong();
+                bigTotal = null;
+            } else {
+                require(2);
+                byte[] digits = new byte[buffer.getShort()];
+                require(digits.length);
+                buffer.get(digits);
+                bigTotal = new BigDecimal(new String(digits, StandardCharsets.US_ASCII));
+            }
+            return true;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (!fill(bytes)) {
+                throw new EOFException("Truncated sort run " + file);
+            }
+        }
+
+        /**
+         * Make bytes available in the buffer; false at the end of the file, failing within a record
+         */
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    boolean empty = buffer.position() == 0;
+                    buffer.flip();
+                    if (empty) {
+                        return false;
+                    }
+                    throw new EOFException("Truncated sort run " + file);
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private interface GroupSink {
+        void accept(byte[] key, int keyLength, long count, AmountSum total) throws IOException;
+    }
+
+    /**
+     * Writes groups as records of a run file, see {@link FileRun}
+     */
+    private static class RunSink implements GroupSink, Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        RunSink(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public void accept(byte[] key, int keyLength, long count, AmountSum total) throws IOException {
+            String digits = total.fitsLong() ? null : total.toBigDecimal().toPlainString();
+            int length = 2 + keyLength + 8 + 1 + (digits == null ? 8 : 2 + digits.length());
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            buffer.putShort((short) keyLength);
+            buffer.put(key, 0, keyLength);
+            buffer.putLong(count);
+            if (digits == null) {
+                buffer.put((byte) total.getScale());
+                buffer.putLong(total.getUnits());
+            } else {
+                buffer.put((byte) -1);
+                buffer.putShort((short) digits.length());
+                buffer.put(digits.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes groups as Sum rows
+     */
+    private static class RowSink implements GroupSink {
+        private final Writer out;
+        private final CsvLayout layout;
+        private final String delimiter;
+        private final StringBuilder row = new StringBuilder(128);
+        long count;
+
+        RowSink(Writer out, CsvLayout layout) {
+            this.out = out;
+            this.layout = layout;
+            this.delimiter = layout.getDelimiter();
+        }
+
+        @Override
+        public void accept(byte[] key, int keyLength, long entries, AmountSum total) throws IOException {
+            int accountEnd = indexOfZero(key, 0);
+            int dateStart = accountEnd + 1;
+            int currencyStart = dateStart + 4;
+            int currencyEnd = indexOfZero(key, currencyStart);
+            int day = 0;
+            for (int i = dateStart; i < currencyStart; i++) {
+                day = day << 8 | key[i] & 0xFF;
+            }
+            day ^= Integer.MIN_VALUE;
+
+            row.setLength(0);
+            row.append(layout.quote("Sum")).append(delimiter)
+                .append(layout.quote(new String(key, 0, accountEnd, StandardCharsets.UTF_8))).append(delimiter)
+                .append(layout.quote(day == NO_DATE ? "" : formatDate(LocalDate.ofEpochDay(day)))).append(delimiter)
+                .append(layout.quote(new String(key, currencyStart, currencyEnd - currencyStart,
+                    StandardCharsets.UTF_8))).append(delimiter)
+                .append(layout.quote(new String(key, currencyEnd + 1, keyLength - currencyEnd - 1,
+                    StandardCharsets.UTF_8))).append(delimiter)
+                .append(layout.quote(Long.toString(entries))).append(delimiter)
+                .append(layout.quote(total.toString().replace('.', layout.getDecimalSeparator())))
+                .append(layout.getLineSeparator());
+            out.write(row.toString());
+            count++;
+        }
+
+        private String formatDate(LocalDate date) {
+            return layout.getDateFormat() != null ? layout.getDateFormat().format(date) : date.toString();
+        }
+
+        private static int indexOfZero(byte[] key, int from) {
+            int i = from;
+            while (key[i] != 0) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Passes rows to another handler, flagging or dropping entries whose account,
+ * AcctSvcrRef and booking date are already in a {@link DuplicateIndex}.
+ *
+ * Keys added while converting a file are only kept once {@link #commit} is
+ * called; {@link #rollback} removes them again so a failed file can be retried
+ * without all of its entries looking like duplicates. Consecutive rows with the
+ * same key are the TxDtls of one expanded entry and share the verdict of the
+ * first. Entries without an AcctSvcrRef are never treated as duplicates.
+ */
+public class DuplicateFilter implements Camt053Handler {
+
+    public enum Mode {
+        /** Keep duplicate rows and report them to the listener */
+        FLAG,
+        /** Leave duplicate rows out of the output */
+        DROP
+    }
+
+    private final Camt053Handler target;
+    private final DuplicateIndex index;
+    private final Mode mode;
+    private final BiConsumer<StatementInfo, TransactionInfo> listener;
+
+    private StatementInfo statement;
+    private long lastHash1;
+    private long lastHash2;
+    private boolean lastDuplicate;
+    private boolean entryDropped;
+    private long duplicates;
+    // Hash pairs added by this file, removed again on rollback
+    private long[] added = new long[64];
+    private int addedLength;
+
+    /**
+     * @param listener receives each duplicate entry, may be null
+     */
+    public DuplicateFilter(Camt053Handler target, DuplicateIndex index, Mode mode,
+                           BiConsumer<StatementInfo, TransactionInfo> listener) {
+        this.target = target;
+        this.index = index;
+        this.mode = mode;
+        this.listener = listener;
+    }
+
+    public DuplicateFilter(Camt053Handler target, DuplicateIndex index, Mode mode) {
+        this(target, index, mode, null);
+    }
+
+    @Override
+    public void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+        this.statement = statement;
+        lastHash1 = 0;
+        lastHash2 = 0;
+        target.onStatement(statement, balance);
+    }
+
+    @Override
+    public void onTransaction(TransactionInfo transaction) throws IOException {
+        if (isDuplicate(transaction)) {
+            duplicates++;
+            if (listener != null) {
+                listener.accept(statement, transaction);
+            }
+            if (mode == Mode.DROP) {
+                entryDropped = true;
+                return;
+            }
+        }
+        target.onTransaction(transaction);
+    }
+
+    @Override
+    public void onEntryEnd(TransactionInfo entry) throws IOException {
+        // A dropped entry is left out of totals taken here, such as the daily summary
+        if (!entryDropped) {
+            target.onEntryEnd(entry);
+        }
+        entryDropped = false;
+    }
+
+    @Override
+    public void onStatementEnd() throws IOException {
+        target.onStatementEnd();
+    }
+
+    /**
+     * Keep the keys added so far in the index
+     */
+    public void commit() {
+        addedLength = 0;
+    }
+
+    /**
+     * Remove the keys added since the last commit from the index
+     */
+    public void rollback() {
+        for (int i = 0; i < addedLength; i += 2) {
+            index.remove(added[i], added[i + 1]);
+        }
+        addedLength = 0;
+    }
+
+    /**
+     * Duplicate entries seen so far
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    private boolean isDuplicate(TransactionInfo transaction) throws IOException {
+        String reference = transaction.getAccountServicerReference();
+        if (reference == null) {
+            lastHash1 = 0;
+            lastHash2 = 0;
+            return false;
+        }
+        String accountId = statement != null ? statement.getAccountId() : null;
+        long hash1 = DuplicateIndex.hash1(accountId, reference, transaction.getBookingDate());
+        long hash2 = DuplicateIndex.hash2(accountId, reference, transaction.getBookingDate());
+        if (hash1 == lastHash1 && hash2 == lastHash2) {
+            return lastDuplicate;
+        }
+        lastHash1 = hash1;
+        lastHash2 = hash2;
+        lastDuplicate = !index.add(hash1, hash2);
+        if (!lastDuplicate) {
+            if (addedLength == added.length) {
+                added = Arrays.copyOf(added, added.length * 2);
+            }
+            added[addedLength++] = hash1;
+            added[addedLength++] = hash2;
+        }
+        return lastDuplicate;
+    }
+}
@@ -0,0 +1,344 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Persistent set of booking keys (account + AcctSvcrRef + booking date) in a
+ * memory-mapped file, used to spot entries already seen in earlier statements.
+ *
+ * Each key is stored as a 128-bit hash in an open-addressing table with linear
+ * probing, so lookups touch one or two cache lines of the mapping and nothing
+ * is allocated on the Java heap. An optional Bloom filter in the same file
+ * answers most lookups of new keys without touching the table, and lets a new
+ * key take the first removed slot instead of probing to an empty one. The table
+ * doubles (into a new file renamed over the old one) once it is 60% full; a
+ * single mapping limits it to 2^26 keys.
+ *
+ * File layout: a 64-byte header, the Bloom filter bits (if any), then the
+ * table of 16-byte slots. A slot of two zero longs is empty, zero and one is a
+ * removed key.
+ */
+public final class DuplicateIndex implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final long MAGIC = 0x43414d5444555031L; // "CAMTDUP1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final double MAX_LOAD = 0.6;
+    private static final int BLOOM_HASHES = 4;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_OFFSET_2 = 0x84222325cbf29ce4L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Header offsets
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int REMOVED_OFFSET = 32;
+    private static final int BLOOM_OFFSET = 40;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private long size;
+    private long removed;
+    private long bloomBits;
+    private int tableOffset;
+
+    private DuplicateIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the index in file, creating it with room for initialCapacity keys if it does not exist
+     *
+     * @param bloom whether a new index gets a Bloom filter; an existing file keeps what it was created with
+     */
+    public static DuplicateIndex open(Path file, int initialCapacity, boolean bloom) throws IOException {
+        DuplicateIndex index = new DuplicateIndex(file);
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            index.create(file, tableCapacity(initialCapacity), bloom);
+        }
+        index.map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        return index;
+    }
+
+    public static DuplicateIndex open(Path file) throws IOException {
+        return open(file, DEFAULT_CAPACITY, true);
+    }
+
+    /**
+     * Add the key; returns false if it was already present
+     */
+    public boolean add(String accountId, String reference, LocalDate bookingDate) throws IOException {
+        return add(hash1(accountId, reference, bookingDate), hash2(accountId, reference, bookingDate));
+    }
+
+    public boolean contains(String accountId, String reference, LocalDate bookingDate) {
+        return contains(hash1(accountId, reference, bookingDate), hash2(accountId, reference, bookingDate));
+    }
+
+    /**
+     * Remove the key; returns false if it was not present
+     */
+    public boolean remove(String accountId, String reference, LocalDate bookingDate) {
+        return remove(hash1(accountId, reference, bookingDate), hash2(accountId, reference, bookingDate));
+    }
+
+    /**
+     * Number of keys held
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Write changed pages to disk
+     */
+    public synchronized void force() {
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            map.force();
+            unmap();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    synchronized boolean add(long hash1, long hash2) throws IOException {
+        hash1 = nonZero(hash1);
+        if (size + removed + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        // A key the Bloom filter has never seen is not further along the probe sequence
+        boolean known = bloomMightContain(hash1, hash2);
+        int mask = capacity - 1;
+        int free = -1;
+        for (int i = (int) hash1 & mask; ; i = (i + 1) & mask) {
+            int position = tableOffset + i * SLOT_SIZE;
+            long stored1 = map.getLong(position);
+            long stored2 = map.getLong(position + 8);
+            if (stored1 == 0) {
+                if (stored2 != 0 && free < 0) {
+                    free = position;
+                }
+                if (stored2 == 0 || !known) {
+                    int slot = free >= 0 ? free : position;
+                    if (free >= 0) {
+                        setRemoved(removed - 1);
+                    }
+                    map.putLong(slot, hash1);
+                    map.putLong(slot + 8, hash2);
+                    setSize(size + 1);
+                    bloomAdd(hash1, hash2);
+                    return true;
+                }
+            } else if (stored1 == hash1 && stored2 == hash2) {
+                return false;
+            }
+        }
+    }
+
+    synchronized boolean contains(long hash1, long hash2) {
+        hash1 = nonZero(hash1);
+        if (!bloomMightContain(hash1, hash2)) {
+            return false;
+        }
+        return find(hash1, hash2) >= 0;
+    }
+
+    synchronized boolean remove(long hash1, long hash2) {
+        hash1 = nonZero(hash1);
+        int position = find(hash1, hash2);
+        if (position < 0) {
+            return false;
+        }
+        // Bloom bits stay set; they may be shared with other keys
+        map.putLong(position, 0);
+        map.putLong(position + 8, 1);
+        setSize(size - 1);
+        setRemoved(removed + 1);
+        return true;
+    }
+
+    /**
+     * Position of the slot holding the hash, or -1
+     */
+    private int find(long hash1, long hash2) {
+        int mask = capacity - 1;
+        for (int i = (int) hash1 & mask; ; i = (i + 1) & mask) {
+            int position = tableOffset + i * SLOT_SIZE;
+            long stored1 = map.getLong(position);
+            long stored2 = map.getLong(position + 8);
+            if (stored1 == hash1 && stored2 == hash2) {
+                return position;
+            }
+            if (stored1 == 0 && stored2 == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Rehash into a file twice the size and rename it over the current one
+     */
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IOException("Duplicate index " + file + " is full at " + size + " keys");
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        DuplicateIndex bigger = new DuplicateIndex(temp);
+        bigger.create(temp, capacity * 2, bloomBits > 0);
+        bigger.map(FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        for (int i = 0; i < capacity; i++) {
+            int position = tableOffset + i * SLOT_SIZE;
+            long stored1 = map.getLong(position);
+            if (stored1 != 0) {
+                bigger.add(stored1, map.getLong(position + 8));
+            }
+        }
+        bigger.close();
+        // Released before the rename, which Windows refuses over a mapped file
+        unmap();
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        map(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private void create(Path target, int tableCapacity, boolean withBloom) throws IOException {
+        long bits = withBloom ? (long) tableCapacity * 8 : 0;
+        long length = HEADER_SIZE + bits / 8 + (long) tableCapacity * SLOT_SIZE;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Duplicate index of " + tableCapacity + " slots does not fit one mapping");
+        }
+        try (FileChannel created = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = created.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putLong(CAPACITY_OFFSET, tableCapacity);
+            header.putLong(BLOOM_OFFSET, bits);
+            header.force();
+        }
+    }
+
+    private void map(FileChannel opened) throws IOException {
+        MappedByteBuffer mapped = opened.map(FileChannel.MapMode.READ_WRITE, 0, opened.size());
+        if (mapped.getLong(MAGIC_OFFSET) != MAGIC || mapped.getInt(VERSION_OFFSET) != VERSION) {
+            opened.close();
+            throw new IOException(file + " is not a duplicate index of version " + VERSION);
+        }
+        channel = opened;
+        map = mapped;
+        capacity = (int) mapped.getLong(CAPACITY_OFFSET);
+        size = mapped.getLong(SIZE_OFFSET);
+        removed = mapped.getLong(REMOVED_OFFSET);
+        bloomBits = mapped.getLong(BLOOM_OFFSET);
+        tableOffset = (int) (HEADER_SIZE + bloomBits / 8);
+    }
+
+    /**
+     * Release the mapping now; the field is cleared so a late use fails instead of reading freed memory
+     */
+    private void unmap() {
+        MappedXmlInput.unmap(map);
+        map = null;
+    }
+
+    private void setSize(long size) {
+        this.size = size;
+        map.putLong(SIZE_OFFSET, size);
+    }
+
+    private void setRemoved(long removed) {
+        this.removed = removed;
+        map.putLong(REMOVED_OFFSET, removed);
+    }
+
+    private void bloomAdd(long hash1, long hash2) {
+        for (int i = 0; i < BLOOM_HASHES && bloomBits > 0; i++) {
+            long bit = Math.floorMod(hash2 + i * (hash1 >>> 17), bloomBits);
+            int position = HEADER_SIZE + (int) (bit >>> 3);
+            map.put(position, (byte) (map.get(position) | (1 << (bit & 7))));
+        }
+    }
+
+    private boolean bloomMightContain(long hash1, long hash2) {
+        for (int i = 0; i < BLOOM_HASHES && bloomBits > 0; i++) {
+            long bit = Math.floorMod(hash2 + i * (hash1 >>> 17), bloomBits);
+            if ((map.get(HEADER_SIZE + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tableCapacity(int keys) {
+        long slots = Long.highestOneBit(Math.max(16, (long) (keys / MAX_LOAD)) * 2 - 1);
+        return (int) Math.min(slots, MAX_CAPACITY);
+    }
+
+    // The first hash is never zero, which marks empty and removed slots
+    private static long nonZero(long hash) {
+        return hash != 0 ? hash : 1;
+    }
+
+    static long hash1(String accountId, String reference, LocalDate bookingDate) {
+        return hash(FNV_OFFSET, accountId, reference, bookingDate);
+    }
+
+    static long hash2(String accountId, String reference, LocalDate bookingDate) {
+        return hash(FNV_OFFSET_2, accountId, reference, bookingDate);
+    }
+
+    /**
+     * FNV-1a over the chars of the key parts, finished with the MurmurHash3 mixer;
+     * two seeds give the 128 bits stored per key
+     */
+    private static long hash(long seed, String accountId, String reference, LocalDate bookingDate) {
+        long h = seed;
+        h = hashChars(h, accountId);
+        h = (h ^ 0x1F) * FNV_PRIME;
+        h = hashChars(h, reference);
+        h = (h ^ 0x1F) * FNV_PRIME;
+        h = (h ^ (bookingDate != null ? bookingDate.toEpochDay() : Long.MIN_VALUE)) * FNV_PRIME;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hashChars(long h, String value) {
+        if (value == null) {
+            return h;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,195 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+
+/**
+ * Parsing and formatting of amounts held as scaled longs (minor units plus exponent).
+ *
+ * Formatting gives exactly what BigDecimal.stripTrailingZeros().toPlainString()
+ * gives for the same value, without creating BigDecimal or String objects.
+ * Values with more than 18 significant digits are not representable; callers
+ * fall back to BigDecimal for those.
+ */
+public final class FixedPointAmounts {
+
+    /** Returned by parseUnits when the value does not fit a scaled long */
+    public static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+
+    /** Free space formatPlain needs in the target buffer */
+    public static final int MAX_FORMATTED_LENGTH = 40;
+
+    static final int MAX_DIGITS = 18;
+
+    private FixedPointAmounts() {
+    }
+
+    /**
+     * ISO 4217 minor unit exponent, 0 for unknown or pseudo currencies
+     */
+    public static int currencyExponent(String currency) {
+        if (currency == null) {
+            return 0;
+        }
+        try {
+            return Math.max(Currency.getInstance(currency).getDefaultFractionDigits(), 0);
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Number of digits after the decimal point
+     */
+    public static int fractionDigits(String text) {
+        int point = text.indexOf('.');
+        return point < 0 ? 0 : text.length() - point - 1;
+    }
+
+    /**
+     * Parse a plain decimal (e.g. "-123.45") into units of 10^-scale,
+     * or NOT_REPRESENTABLE if it has too many digits or is not plain decimal
+     */
+    public static long parseUnits(String text, int scale) {
+        if (scale < 0 || scale > MAX_DIGITS) {
+            return NOT_REPRESENTABLE;
+        }
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        int fraction = -1;
+        boolean anyDigit = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (fraction >= 0 && ++fraction > scale) {
+                    // Zeros beyond the requested scale do not change the value
+                    if (c != '0') {
+                        return NOT_REPRESENTABLE;
+                    }
+                    continue;
+                }
+                if (units != 0 || c != '0') {
+                    if (++digits > MAX_DIGITS) {
+                        return NOT_REPRESENTABLE;
+                    }
+                }
+                units = units * 10 + (c - '0');
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return NOT_REPRESENTABLE;
+            }
+        }
+        if (!anyDigit) {
+            return NOT_REPRESENTABLE;
+        }
+        for (int pad = scale - Math.max(fraction, 0); pad > 0; pad--) {
+            if (units != 0 && ++digits > MAX_DIGITS) {
+                return NOT_REPRESENTABLE;
+            }
+            units *= 10;
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * Write units / 10^scale like stripTrailingZeros().toPlainString(); returns the new position.
+     * The buffer must have MAX_FORMATTED_LENGTH bytes free at pos.
+     */
+    public static int formatPlain(long units, int scale, byte[] buf, int pos) {
+        if (units == Long.MIN_VALUE || scale < 0 || scale > MAX_DIGITS) {
+            byte[] text = BigDecimal.valueOf(units, scale).stripTrailingZeros().toPlainString()
+                .getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(text, 0, buf, pos, text.length);
+            return pos + text.length;
+        }
+        while (scale > 0 && units % 10 == 0) {
+            units /= 10;
+            scale--;
+        }
+        if (units == 0) {
+            buf[pos] = '0';
+            return pos + 1;
+        }
+        if (units < 0) {
+            buf[pos++] = '-';
+            units = -units;
+        }
+        int digits = digitCount(units);
+        if (scale == 0) {
+            return writeDigits(units, digits, buf, pos);
+        }
+        if (digits > scale) {
+            // Integer part, point, fraction
+            int end = pos + digits + 1;
+            int p = end;
+            for (int i = 0; i < scale; i++) {
+                buf[--p] = (byte) ('0' + units % 10);
+                units /= 10;
+            }
+            buf[--p] = '.';
+            while (p > pos) {
+                buf[--p] = (byte) ('0' + units % 10);
+                units /= 10;
+            }
+            return end;
+        }
+        // 0.000ddd
+        buf[pos++] = '0';
+        buf[pos++] = '.';
+        for (int i = digits; i < scale; i++) {
+            buf[pos++] = '0';
+        }
+        return writeDigits(units, digits, buf, pos);
+    }
+
+    /**
+     * Same as formatPlain, as a String
+     */
+    public static String toPlainString(long units, int scale) {
+        byte[] buf = new byte[MAX_FORMATTED_LENGTH];
+        int length = formatPlain(units, scale, buf, 0);
+        return new String(buf, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * stripTrailingZeros().toPlainString(), formatted from the unscaled long when it fits
+     */
+    public static String toPlainString(BigDecimal amount) {
+        int scale = amount.scale();
+        if (scale >= 0 && scale <= MAX_DIGITS && amount.precision() <= MAX_DIGITS) {
+            return toPlainString(amount.unscaledValue().longValue(), scale);
+        }
+        return amount.stripTrailingZeros().toPlainString();
+    }
+
+    private static int writeDigits(long value, int digits, byte[] buf, int pos) {
+        int end = pos + digits;
+        int p = end;
+        while (p > pos) {
+            buf[--p] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static int digitCount(long value) {
+        long limit = 10;
+        for (int digits = 1; digits < 19; digits++) {
+            if (value < limit) {
+                return digits;
+            }
+            limit *= 10;
+        }
+        return 19;
+    }
+}
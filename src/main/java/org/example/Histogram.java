@@ -0,0 +1,107 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram over fixed bucket bounds, recorded without locks.
+ *
+ * Meant for per-file and per-stage values, not per row: recording is a short
+ * scan over the bounds and two LongAdder increments.
+ */
+public final class Histogram {
+
+    /** Latency bounds in nanoseconds, 50 µs to 60 s */
+    public static final long[] LATENCY_NANOS = {
+        50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+        100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L, 30_000_000_000L, 60_000_000_000L,
+    };
+
+    /** Size bounds in bytes, 64 KB to 16 GB */
+    public static final long[] SIZE_BYTES = {
+        1L << 16, 1L << 18, 1L << 20, 1L << 22, 1L << 24, 1L << 26, 1L << 28, 1L << 30, 1L << 32, 1L << 34,
+    };
+
+    private final long[] bounds;
+    // One more than bounds: the last bucket counts values above every bound
+    private final LongAdder[] counts;
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram(long[] bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Upper bucket bounds; bucket i counts values up to bounds[i]
+     */
+    public long[] getBounds() {
+        return bounds.clone();
+    }
+
+    /**
+     * Count per bucket, the last entry counting values above every bound
+     */
+    public long[] getBucketCounts() {
+        long[] snapshot = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Estimate of the q quantile (0..1), interpolating linearly within the bucket
+     */
+    public double quantile(double q) {
+        long[] snapshot = getBucketCounts();
+        long total = Arrays.stream(snapshot).sum();
+        if (total == 0) {
+            return 0;
+        }
+        double rank = q * total;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (seen + snapshot[i] >= rank && snapshot[i] > 0) {
+                if (i == bounds.length) {
+                    return bounds[bounds.length - 1];
+                }
+                double lower = i == 0 ? 0 : bounds[i - 1];
+                return lower + (bounds[i] - lower) * ((rank - seen) / snapshot[i]);
+            }
+            seen += snapshot[i];
+        }
+        return bounds[bounds.length - 1];
+    }
+}
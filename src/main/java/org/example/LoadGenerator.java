@@ -0,0 +1,215 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test for {@link ConversionServer}: POSTs the same document from a fixed
+ * number of clients for a while and reports requests per second and latency
+ * percentiles, one step per concurrency level.
+ *
+ * Each client is a virtual thread sending requests back to back over a shared
+ * HTTP/1.1 client. Latency is measured until the last byte of the CSV is read,
+ * and every latency is kept, so the percentiles are exact.
+ */
+public class LoadGenerator {
+
+    private final HttpClient client;
+    private final URI uri;
+    private final byte[] body;
+
+    public LoadGenerator(URI uri, byte[] body) {
+        this.uri = uri;
+        this.body = body;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    /**
+     * Send requests from concurrency clients for duration; warmup is run first and not counted
+     */
+    public Result run(int concurrency, Duration warmup, Duration duration) throws IOException, InterruptedException {
+        if (!warmup.isZero()) {
+            load(concurrency, System.nanoTime() + warmup.toNanos());
+        }
+        long start = System.nanoTime();
+        List<Client> clients = load(concurrency, start + duration.toNanos());
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[0];
+        long errors = 0;
+        long bytes = 0;
+        for (Client c : clients) {
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + c.count);
+            System.arraycopy(c.latencies, 0, latencies, offset, c.count);
+            errors += c.errors;
+            bytes += c.bytes;
+        }
+        Arrays.sort(latencies);
+        return new Result(concurrency, latencies, errors, bytes, elapsed);
+    }
+
+    /**
+     * Run each concurrency level in turn, printing one line per level
+     */
+    public List<Result> sweep(int[] concurrencies, Duration warmup, Duration duration, PrintStream out)
+        throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        out.println(Result.HEADER);
+        for (int concurrency : concurrencies) {
+            Result result = run(concurrency, warmup, duration);
+            out.println(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private List<Client> load(int concurrency, long deadline) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+            .header("Content-Type", "application/xml")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+        List<Client> clients = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                Client c = new Client();
+                clients.add(c);
+                running.add(threads.submit(() -> c.run(request, deadline)));
+            }
+        }
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Load client failed", e.getCause());
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * One client sending requests back to back
+     */
+    private class Client {
+        long[] latencies = new long[1024];
+        int count;
+        long errors;
+        long bytes;
+
+        void run(HttpRequest request, long deadline) {
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                try {
+                    HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                    long read = drain(response.body());
+                    if (response.statusCode() != 200) {
+                        errors++;
+                        continue;
+                    }
+                    bytes += read;
+                } catch (IOException e) {
+                    errors++;
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Read the CSV to the end without keeping it; returns its length
+     */
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (in) {
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Outcome of one concurrency level; latencies of successful requests, sorted
+     */
+    public static class Result {
+        static final String HEADER = String.format("%11s %9s %9s %9s %9s %9s %7s",
+            "concurrency", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+
+        private final int concurrency;
+        private final long[] latencies;
+        private final long errors;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        Result(int concurrency, long[] latencies, long errors, long bytes, long elapsedNanos) {
+            this.concurrency = concurrency;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public long getRequests() {
+            return latencies.length;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getRequestsPerSecond() {
+            return latencies.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Latency at percentile p (0-100) in milliseconds, NaN without successful requests
+         */
+        public double getPercentileMillis(double p) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(p / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%11d %9d %9.1f %9.2f %9.2f %9.2f %7d", concurrency, getRequests(),
+                getRequestsPerSecond(), getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(100),
+                errors);
+        }
+    }
+}
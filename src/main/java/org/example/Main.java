@@ -1,27 +1,336 @@
 package org.example;
 
-import com.prowidesoftware.swift.utils.Lib;
-import com.prowidesoftware.swift.model.mx.MxCamt05300108;
-
-
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
+import javax.xml.stream.XMLStreamException;
 
 public class Main {
-    public static void main(String[] args) throws IOException {
-        String input = "C:\\iso20022-converter\\testfile-cbpr\\kasikorn.xml";
-        String outputPath = "result.csv";
-        //read xml file from path
-        MxCamt05300108 camt053 = MxCamt05300108.parse(Lib.readFile(input));
+    public static void main(String[] args) throws IOException, XMLStreamException, InterruptedException {
+        // Options that may appear anywhere on the command line:
+        // --metrics <file.prom> records metrics, --reconcile report|fail checks balances,
+        // --expand writes one row per TxDtls instead of one per Ntry,
+        // --cache <dir> reuses CSV files converted earlier from identical input,
+        // --cache-link hard-links them to outputs instead of copying,
+        // --dedup <index file> with --dedup-mode flag|drop checks entries against earlier bookings (not in --summarize),
+        // --gzip writes .csv.gz files in batch mode (a single output ending in .gz is always compressed),
+        // --layout <file.properties> sets the CSV columns and format (see CsvLayout),
+        // --resume saves checkpoints so a conversion that was killed continues where it stopped,
+        // --shard-by <fields, e.g. AccountId,Ccy> writes one file per key value, --shard-files <n> open at most,
+        // --prewarm converts a small generated statement before the first real file (batch, watch and serve),
+        // --sort-memory <MB> with --sort-dir <dir> caps the memory of --summarize and says where it spills
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String metricsFile = takeOption(arguments, "--metrics");
+        String reconcile = takeOption(arguments, "--reconcile");
+        boolean expand = arguments.remove("--expand");
+        boolean gzipOutput = arguments.remove("--gzip");
+        String cacheDir = takeOption(arguments, "--cache");
+        boolean cacheLink = arguments.remove("--cache-link");
+        String dedupFile = takeOption(arguments, "--dedup");
+        String dedupMode = takeOption(arguments, "--dedup-mode");
+        String layoutFile = takeOption(arguments, "--layout");
+        boolean resume = arguments.remove("--resume");
+        String shardBy = takeOption(arguments, "--shard-by");
+        String shardFiles = takeOption(arguments, "--shard-files");
+        boolean prewarm = arguments.remove("--prewarm");
+        String sortMemory = takeOption(arguments, "--sort-memory");
+        String sortDir = takeOption(arguments, "--sort-dir");
+        args = arguments.toArray(new String[0]);
+
+        ConversionOptions options = new ConversionOptions();
+        if (metricsFile != null) {
+            options.setMetrics(startMetrics(Paths.get(metricsFile)));
+        }
+        if (reconcile != null) {
+            options.setReconciliation(BalanceReconciler.Mode.valueOf(reconcile.toUpperCase(Locale.ROOT)));
+        }
+        if (expand) {
+            options.setExpansion(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS);
+        }
+        if (layoutFile != null) {
+            options.setLayout(CsvLayout.load(Paths.get(layoutFile)));
+        }
+        if (resume) {
+            options.setCheckpointInterval(ConversionOptions.DEFAULT_CHECKPOINT_INTERVAL);
+        }
+        if (shardBy != null) {
+            List<CsvLayout.Field> key = new ArrayList<>();
+            for (String name : shardBy.split(",")) {
+                CsvLayout.Field field = CsvLayout.Field.bySpecName(name.trim());
+                if (field == null) {
+                    System.err.println("Unknown shard field " + name);
+                    System.exit(2);
+                }
+                key.add(field);
+            }
+            options.setSharding(key, shardFiles != null
+                ? Integer.parseInt(shardFiles) : ShardedCsvOutput.DEFAULT_MAX_OPEN_FILES);
+        }
+        if (sortMemory != null || sortDir != null) {
+            options.setSorting(sortMemory != null ? Long.parseLong(sortMemory) * 1024 * 1024
+                : DailySummaryAggregator.DEFAULT_MEMORY_LIMIT, sortDir != null ? Paths.get(sortDir) : null);
+        }
+        if (cacheDir != null) {
+            options.setCache(new ConversionCache(Paths.get(cacheDir)).setLinking(cacheLink));
+        }
+        if (dedupFile != null && args.length > 0 && "--summarize".equals(args[0])) {
+            // Summarizing would record every entry as booked, and converting the files later would flag them all
+            System.err.println("--dedup cannot be used with --summarize");
+            System.exit(2);
+        }
+        if (dedupFile != null) {
+            DuplicateIndex index = DuplicateIndex.open(Paths.get(dedupFile));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println("Closing duplicate index failed: " + e);
+                }
+            }));
+            options.setDuplicates(index, dedupMode != null
+                ? DuplicateFilter.Mode.valueOf(dedupMode.toUpperCase(Locale.ROOT)) : DuplicateFilter.Mode.FLAG);
+        }
+
+        if (prewarm && args.length > 0 && Arrays.asList("--batch", "--watch", "--serve").contains(args[0])) {
+            ConverterWarmup.run(options);
+        }
+
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            runBatch(args, options, gzipOutput);
+            return;
+        }
+        if (args.length > 0 && "--parallel".equals(args[0])) {
+            runParallel(args, options);
+            return;
+        }
+        if (args.length > 0 && "--watch".equals(args[0])) {
+            runWatch(args, options);
+            return;
+        }
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            runServer(args, options);
+            return;
+        }
+        if (args.length > 0 && "--load".equals(args[0])) {
+            runLoad(args);
+            return;
+        }
+        if (args.length > 0 && "--summarize".equals(args[0])) {
+            runSummary(args, options);
+            return;
+        }
+        if (args.length > 0 && "--generate".equals(args[0])) {
+            runGenerate(args);
+            return;
+        }
+        if (args.length > 0 && "--train".equals(args[0])) {
+            // Workload of the AppCDS training run, see the appcds profile in pom.xml
+            ConverterWarmup.train(Paths.get(args.length > 1 ? args[1] : "target/cds-training"));
+            return;
+        }
+
+        String input = args.length > 0 ? args[0] : "C:\\iso20022-converter\\testfile-cbpr\\kasikorn.xml";
+        String outputPath = args.length > 1 ? args[1] : "result.csv";
+
+        // Stream xml file from path straight into the CSV file, row by row
+        new Camt053FileConverter(options).convert(Paths.get(input), Paths.get(outputPath));
+    }
+
+    /**
+     * Remove name and its value from args; returns the value, or null when absent
+     */
+    private static String takeOption(List<String> args, String name) {
+        int index = args.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        if (index + 1 >= args.size()) {
+            System.err.println("Missing value for " + name);
+            System.exit(2);
+        }
+        String value = args.get(index + 1);
+        args.subList(index, index + 2).clear();
+        return value;
+    }
+
+    /**
+     * Register the metrics MBean and keep the Prometheus file current until the JVM exits
+     */
+    private static ConversionMetrics startMetrics(Path file) {
+        ConversionMetrics metrics = new ConversionMetrics();
+        try {
+            metrics.registerMBean("converter");
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e);
+        }
+        PrometheusTextFile textFile = new PrometheusTextFile(metrics, file);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                textFile.close();
+            } catch (IOException e) {
+                System.err.println("Writing metrics failed: " + e);
+            }
+        }));
+        return metrics;
+    }
+
+    /**
+     * --generate &lt;output.xml&gt; &lt;statements&gt; &lt;entries per statement&gt; &lt;TxDtls per entry&gt; [seed] [version]
+     */
+    private static void runGenerate(String[] args) throws IOException, XMLStreamException {
+        if (args.length < 5) {
+            System.err.println("Usage: --generate <output.xml> <statements> <entries per statement> <TxDtls per entry>"
+                + " [seed] [camt.053 version, 2-13]");
+            System.exit(2);
+        }
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1L;
+        Camt053Version version = args.length > 6 ? Camt053Version.of(Integer.parseInt(args[6])) : Camt053Version.V08;
+        new Camt053CorpusGenerator(seed, Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+            version).write(Paths.get(args[1]));
+    }
+
+    /**
+     * --serve &lt;port&gt; [max concurrent conversions]; runs until the JVM is stopped
+     */
+    private static void runServer(String[] args, ConversionOptions options) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: --serve <port> [max concurrent conversions]");
+            System.exit(2);
+        }
+        int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : ConversionServer.DEFAULT_MAX_CONCURRENT;
+        ConversionServer server = new ConversionServer(new InetSocketAddress(Integer.parseInt(args[1])),
+            maxConcurrent, options).start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        System.out.println("Listening on port " + server.getPort() + ", POST to /convert");
+        stopped.await();
+    }
+
+    /**
+     * --load &lt;url&gt; &lt;input.xml&gt; [seconds per level] [concurrency levels, e.g. 1,2,4,8,16]
+     */
+    private static void runLoad(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: --load <url> <input.xml> [seconds per level] [concurrency levels, e.g. 1,2,4,8]");
+            System.exit(2);
+        }
+        Duration duration = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 10);
+        String[] levels = (args.length > 4 ? args[4] : "1,2,4,8,16,32,64").split(",");
+        int[] concurrencies = new int[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            concurrencies[i] = Integer.parseInt(levels[i].trim());
+        }
+        LoadGenerator load = new LoadGenerator(URI.create(args[1]), Files.readAllBytes(Paths.get(args[2])));
+        // A short warm-up per level lets the server's JIT and connections settle
+        load.sweep(concurrencies, duration.dividedBy(5), duration, System.out);
+    }
+
+    /**
+     * --watch &lt;inbox&gt; &lt;outbox&gt; &lt;done dir&gt; &lt;error dir&gt; [extract threads]; runs until the JVM is stopped
+     */
+    private static void runWatch(String[] args, ConversionOptions options) throws IOException, InterruptedException {
+        if (args.length < 5) {
+            System.err.println("Usage: --watch <inbox> <outbox> <done dir> <error dir> [extract threads]");
+            System.exit(2);
+        }
+        if (options.getShardKey() != null) {
+            System.err.println("--shard-by cannot be used with --watch");
+            System.exit(2);
+        }
+        WatchFolderDaemon daemon = new WatchFolderDaemon(Paths.get(args[1]), Paths.get(args[2]),
+            Paths.get(args[3]), Paths.get(args[4]))
+            .setOptions(options);
+        if (args.length > 5) {
+            daemon.setParallelism(WatchFolderDaemon.Stage.EXTRACT, Integer.parseInt(args[5]));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                System.err.println("Stopping failed: " + e);
+            }
+        }));
+        daemon.start();
+        System.out.println("Watching " + args[1]);
+        daemon.awaitTermination();
+    }
+
+    /**
+     * --parallel &lt;input.xml&gt; &lt;output.csv&gt; [threads]
+     */
+    private static void runParallel(String[] args, ConversionOptions options) throws IOException, XMLStreamException {
+        if (args.length < 3) {
+            System.err.println("Usage: --parallel <input.xml> <output.csv> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            new Camt053ParallelConverter(pool, Camt053ParallelConverter.DEFAULT_ENTRIES_PER_CHUNK, options)
+                .convert(Paths.get(args[1]), Paths.get(args[2]));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * --summarize &lt;input dir or glob&gt; &lt;output.csv&gt;: daily totals per account over all inputs
+     */
+    private static void runSummary(String[] args, ConversionOptions options) throws IOException, XMLStreamException {
+        if (args.length < 3) {
+            System.err.println("Usage: --summarize <input dir or glob> <output.csv>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        BatchConverter.InputSet inputs = BatchConverter.listInputs(args[1]);
+        Camt053FileConverter converter = new Camt053FileConverter(options);
+        try (DailySummaryAggregator summary = options.newSummaryAggregator()) {
+            BatchConverter.read(inputs, (name, in) -> {
+                if (in == null) {
+                    converter.extract(name, summary);
+                } else {
+                    converter.extract(in, name.toString(), summary);
+                }
+            });
+            long rows = summary.write(Paths.get(args[2]), options.getLayout());
+            System.out.printf("Summarized %d entries from %d files into %d rows in %d ms, %d runs spilled%n",
+                summary.getEntryCount(), inputs.files.size(), rows, (System.nanoTime() - start) / 1_000_000,
+                summary.getSpilledRuns());
+        }
+    }
 
-        // Extract data
-        Camt053Data data = new Camt053DataExtractor().extract(camt053);
-        // Generate CSV
-        List<String> csvLines = new Camt053CsvGenerator().generate(data);
+    /**
+     * --batch &lt;input dir or glob&gt; &lt;output dir&gt; [threads]
+     */
+    private static void runBatch(String[] args, ConversionOptions options, boolean gzipOutput)
+        throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: --batch <input dir or glob> <output dir> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
 
-        // Write to file
-        Files.write(Paths.get(outputPath), csvLines);
+        BatchReport report = new BatchConverter(threads, new Camt053FileConverter(options))
+            .setGzipOutput(gzipOutput)
+            .convert(args[1], Paths.get(args[2]));
+        System.out.println(report.summary());
+        if (!report.getFailures().isEmpty()) {
+            System.exit(1);
+        }
     }
-}
\ No newline at end of file
+}
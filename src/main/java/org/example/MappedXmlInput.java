@@ -0,0 +1,190 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An XML file read through memory-mapped segments.
+ *
+ * The file is mapped with FileChannel.map one segment (1 GB) at a time, so
+ * files above 2 GB work, and bytes are copied from the page cache straight into
+ * the parser's own buffer. Unlike Lib.readFile nothing is decoded into a String
+ * up front: heap use for the input is the parser's buffer, whatever the file
+ * size. The encoding is detected from the byte order mark or prolog and passed
+ * to the parser; the byte order mark itself is skipped.
+ *
+ * Closing the input unmaps the segment there and then: Windows cannot move or
+ * delete a file while part of it is mapped, and the watch daemon moves every
+ * input as soon as it is converted.
+ */
+public class MappedXmlInput implements Closeable {
+
+    static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    // Unsafe.invokeCleaner bound to the Unsafe instance, or null when the JDK does not offer it
+    private static final MethodHandle UNMAP = unmapper();
+
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentSize;
+    private final XmlEncoding encoding;
+    private final Stream stream = new Stream();
+
+    MappedXmlInput(FileChannel channel, long segmentSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+
+        ByteBuffer head = ByteBuffer.allocate(XmlEncoding.HEAD_SIZE);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // Short reads are possible on some channels
+        }
+        this.encoding = XmlEncoding.detect(head.array(), head.position());
+        stream.map(encoding.getBomLength());
+    }
+
+    /**
+     * Map the file for reading; close the result to release the channel
+     */
+    public static MappedXmlInput open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedXmlInput(channel, DEFAULT_SEGMENT_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Document bytes after the byte order mark; one stream per input
+     */
+    public InputStream getInputStream() {
+        return stream;
+    }
+
+    /**
+     * Charset of the bytes returned by {@link #getInputStream()}
+     */
+    public Charset getEncoding() {
+        return encoding.getCharset();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        MappedByteBuffer segment = stream.segment;
+        stream.segment = null;
+        unmap(segment);
+        channel.close();
+    }
+
+    /**
+     * Release a mapping now rather than when the buffer is collected. Outside the
+     * java.lang.foreign API, still a preview in 21, the JDK only unmaps through
+     * Unsafe.invokeCleaner; without it the mapping is left to the collector.
+     * The buffer must not be used afterwards.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // Not unmapped: the collector releases it
+        }
+    }
+
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafeClass.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(instance.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the file front to back, mapping the next segment when one is used up
+     */
+    private class Stream extends InputStream {
+        private MappedByteBuffer segment;
+        private long segmentStart;
+
+        void map(long position) throws IOException {
+            MappedByteBuffer previous = segment;
+            segment = null;
+            unmap(previous);
+            segmentStart = position;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (segment == null) {
+                throw new IOException("Input is closed");
+            }
+            if (segment.hasRemaining()) {
+                return true;
+            }
+            long next = segmentStart + segment.limit();
+            if (next >= size) {
+                return false;
+            }
+            map(next);
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureAvailable() ? segment.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            int count = Math.min(len, segment.remaining());
+            segment.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && ensureAvailable()) {
+                int count = (int) Math.min(n - skipped, segment.remaining());
+                segment.position(segment.position() + count);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return segment != null ? segment.remaining() : 0;
+        }
+    }
+}
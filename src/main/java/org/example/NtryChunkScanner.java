@@ -0,0 +1,302 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the byte ranges of Ntry elements in a CAMT.053 file without parsing it.
+ *
+ * Consecutive Ntry elements of one Stmt are grouped into chunks of at most
+ * entriesPerChunk entries. Tags are recognised by local name, so any namespace
+ * prefix works; comments, CDATA sections and processing instructions are
+ * skipped. Only ASCII-compatible encodings can be scanned this way.
+ */
+class NtryChunkScanner {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int TAG_LOOKAHEAD = 256;
+
+    private final FileChannel channel;
+    private final int entriesPerChunk;
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private long bufferOffset;
+    private int position;
+    private int limit;
+    private boolean endOfFile;
+
+    // Scan state
+    private final List<StatementRange> statements = new ArrayList<>();
+    private final Set<String> prefixes = new LinkedHashSet<>();
+    private StatementRange statement;
+    private Chunk chunk;
+    private long entryStart = -1;
+
+    NtryChunkScanner(FileChannel channel, int entriesPerChunk) {
+        this.channel = channel;
+        this.entriesPerChunk = entriesPerChunk;
+    }
+
+    /**
+     * Scan the whole channel from the start
+     */
+    ScanResult scan() throws IOException {
+        while (true) {
+            int lt = indexOf((byte) '<', position, limit);
+            if (lt < 0) {
+                position = limit;
+                if (!fill(1)) {
+                    break;
+                }
+                continue;
+            }
+            position = lt;
+            fill(TAG_LOOKAHEAD);
+            if (limit - position < 2) {
+                break;
+            }
+            byte next = buffer[position + 1];
+            if (next == '!') {
+                if (startsWith("<!--")) {
+                    skipPast("-->");
+                } else if (startsWith("<![CDATA[")) {
+                    skipPast("]]>");
+                } else {
+                    skipPast(">");
+                }
+            } else if (next == '?') {
+                skipPast("?>");
+            } else {
+                readTag(next == '/');
+            }
+        }
+        if (statement != null || entryStart >= 0) {
+            throw new IOException("Unexpected end of file inside " + (entryStart >= 0 ? "Ntry" : "Stmt"));
+        }
+        return new ScanResult(statements, new ArrayList<>(prefixes));
+    }
+
+    private void readTag(boolean endTag) throws IOException {
+        long tagOffset = bufferOffset + position;
+        int nameStart = position + (endTag ? 2 : 1);
+        int nameEnd = nameStart;
+        int colon = -1;
+        while (nameEnd < limit && !isNameEnd(buffer[nameEnd])) {
+            if (buffer[nameEnd] == ':') {
+                colon = nameEnd;
+            }
+            nameEnd++;
+        }
+        int localStart = colon >= 0 ? colon + 1 : nameStart;
+        if (colon >= 0 && entryStart >= 0) {
+            prefixes.add(new String(buffer, nameStart, colon - nameStart, StandardCharsets.US_ASCII));
+        }
+        position = nameEnd;
+
+        if (matches(localStart, nameEnd, "Ntry")) {
+            if (colon >= 0) {
+                prefixes.add(new String(buffer, nameStart, colon - nameStart, StandardCharsets.US_ASCII));
+            }
+            if (!endTag) {
+                entryStart = tagOffset;
+                if (tagClosesItself()) {
+                    endEntry();
+                }
+            } else {
+                skipPast(">");
+                endEntry();
+            }
+        } else if (entryStart < 0 && matches(localStart, nameEnd, "Stmt")) {
+            if (!endTag) {
+                statement = new StatementRange();
+            } else if (statement != null) {
+                closeChunk();
+                statements.add(statement);
+                statement = null;
+            }
+        }
+    }
+
+    private void endEntry() {
+        long entryEnd = bufferOffset + position;
+        if (statement != null) {
+            if (chunk == null) {
+                chunk = new Chunk(entryStart);
+            }
+            chunk.end = entryEnd;
+            chunk.entries++;
+            if (chunk.entries >= entriesPerChunk) {
+                closeChunk();
+            }
+        }
+        entryStart = -1;
+    }
+
+    private void closeChunk() {
+        if (chunk != null) {
+            statement.chunks.add(chunk);
+            chunk = null;
+        }
+    }
+
+    /**
+     * Skip to the end of the current start tag; true for an empty element tag
+     */
+    private boolean tagClosesItself() throws IOException {
+        skipPast(">");
+        return position >= 2 && buffer[position - 2] == '/';
+    }
+
+    private boolean matches(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (buffer[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private boolean startsWith(String text) {
+        if (limit - position < text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer[position + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move position just past the next occurrence of text, reading more blocks as needed
+     */
+    private void skipPast(String text) throws IOException {
+        int length = text.length();
+        while (true) {
+            int found = indexOf(text, position, limit);
+            if (found >= 0) {
+                position = found + length;
+                return;
+            }
+            // Keep a possible partial match at the end of the block
+            position = Math.max(position, limit - (length - 1));
+            if (!fill(limit - position + 1)) {
+                throw new IOException("Unexpected end of file looking for " + text);
+            }
+        }
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        byte[] buf = buffer;
+        for (int i = from; i < to; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(String text, int from, int to) {
+        byte first = (byte) text.charAt(0);
+        int last = to - text.length();
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] == first && startsWithAt(i, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWithAt(int index, String text) {
+        for (int i = 1; i < text.length(); i++) {
+            if (buffer[index + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make at least count bytes available from position; false at end of file
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            bufferOffset += position;
+            limit -= position;
+            position = 0;
+        }
+        while (limit - position < count && !endOfFile && limit < buffer.length) {
+            int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit), bufferOffset + limit);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - position >= count;
+    }
+
+    /**
+     * A run of consecutive Ntry elements within one Stmt: [start, end) in bytes
+     */
+    static class Chunk {
+        final long start;
+        long end;
+        int entries;
+
+        Chunk(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * Ntry chunks of one Stmt, in document order
+     */
+    static class StatementRange {
+        final List<Chunk> chunks = new ArrayList<>();
+    }
+
+    static class ScanResult {
+        final List<StatementRange> statements;
+        /** Namespace prefixes used on Ntry and its children */
+        final List<String> prefixes;
+
+        ScanResult(List<StatementRange> statements, List<String> prefixes) {
+            this.statements = statements;
+            this.prefixes = prefixes;
+        }
+
+        /**
+         * Byte ranges of the file outside all chunks, as start/end pairs
+         */
+        List<long[]> skeletonRanges(long fileSize) {
+            List<long[]> ranges = new ArrayList<>();
+            long from = 0;
+            for (StatementRange statement : statements) {
+                for (Chunk chunk : statement.chunks) {
+                    ranges.add(new long[] {from, chunk.start});
+                    from = chunk.end;
+                }
+            }
+            ranges.add(new long[] {from, fileSize});
+            return ranges;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewrites a Prometheus text file with the current metrics at a fixed interval,
+ * for the node_exporter textfile collector or any scraper reading local files.
+ *
+ * Each write goes to a temporary file that is renamed over the target, so a
+ * reader never sees a half written file.
+ */
+public final class PrometheusTextFile implements Closeable {
+
+    public static final long DEFAULT_INTERVAL_SECONDS = 15;
+
+    private final ConversionMetrics metrics;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    public PrometheusTextFile(ConversionMetrics metrics, Path file, long intervalSeconds) {
+        this.metrics = metrics;
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prometheus-textfile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::writeQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public PrometheusTextFile(ConversionMetrics metrics, Path file) {
+        this(metrics, file, DEFAULT_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Write the current values now
+     */
+    public synchronized void write() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            metrics.writePrometheus(out);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException e) {
+            System.err.println("Writing metrics to " + file + " failed: " + e);
+        }
+    }
+
+    /**
+     * Stop the schedule and write the final values
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        write();
+    }
+}
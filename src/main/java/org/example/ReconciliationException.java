@@ -0,0 +1,22 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * Balances of a statement do not add up; thrown by {@link BalanceReconciler} in FAIL mode
+ */
+public class ReconciliationException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BalanceReconciler.Mismatch mismatch;
+
+    public ReconciliationException(BalanceReconciler.Mismatch mismatch) {
+        super(mismatch.toString());
+        this.mismatch = mismatch;
+    }
+
+    public BalanceReconciler.Mismatch getMismatch() {
+        return mismatch;
+    }
+}
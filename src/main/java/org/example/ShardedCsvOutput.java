@@ -0,0 +1,361 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes rows into one CSV file per value of a key, e.g. AccountId and Ccy,
+ * instead of one file for everything.
+ *
+ * The key is a list of layout fields (see {@link CsvLayout.Field}); statement
+ * fields route whole statements, transaction fields such as CdtDbtInd route
+ * each Trx row. A shard gets the Bal row of a statement ahead of its first Trx
+ * row from it, so every file stands on its own; with a transaction field in the
+ * key, statements without entries are left out. Shard files are named after the
+ * output with the key values appended: result.csv becomes result_ACCT_EUR.csv.
+ *
+ * Every shard has its own row encoder and buffer. At most maxOpenFiles shards
+ * are open at once; the least recently used one is flushed and closed to make
+ * room and appended to when it is needed again (a gzip shard then gets another
+ * gzip member). Shards are written to hidden .part files and renamed into place
+ * by {@link #close}.
+ */
+public class ShardedCsvOutput implements Camt053Handler, Closeable {
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 128;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final String NO_VALUE = "none";
+
+    private final Path output;
+    private final List<CsvLayout.Field> key;
+    private final boolean statementKey;
+    private final int maxOpenFiles;
+    private final int bufferSize;
+    private final CsvLayout layout;
+    private final boolean gzip;
+
+    // All shards by key value, and the open ones in least recently used order
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Shard> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> fileNames = new HashSet<>();
+
+    private StatementInfo statement;
+    private BalanceInfo balance;
+    private Shard current;
+    private long rowsOfClosed;
+
+    /**
+     * @param output file whose name the shard names are derived from; shards are gzip-compressed when it ends with .gz
+     * @param key fields whose values select the shard
+     */
+    public ShardedCsvOutput(Path output, List<CsvLayout.Field> key, int maxOpenFiles, ConversionOptions options) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Shard key must name at least one field");
+        }
+        if (maxOpenFiles < 1) {
+            throw new IllegalArgumentException("maxOpenFiles must be at least 1");
+        }
+        boolean onlyStatement = true;
+        for (CsvLayout.Field field : key) {
+            if (field.getScope() == CsvLayout.Scope.BALANCE || field == CsvLayout.Field.AMT
+                || field == CsvLayout.Field.SIGNED_AMT) {
+                throw new IllegalArgumentException("Cannot shard by " + field.getSpecName());
+            }
+            onlyStatement &= field.getScope() == CsvLayout.Scope.STATEMENT;
+        }
+        this.output = output;
+        this.key = new ArrayList<>(key);
+        this.statementKey = onlyStatement;
+        this.maxOpenFiles = maxOpenFiles;
+        this.bufferSize = options.getBufferSize();
+        this.layout = options.getLayout();
+        this.gzip = Camt053FileConverter.isGzip(output);
+    }
+
+    @Override
+    public void onStatement(StatementInfo statement, BalanceInfo balance) throws IOException {
+        this.statement = statement;
+        this.balance = balance;
+        if (statementKey) {
+            // Routed once per statement, and the Bal row is written even without entries
+            current = shard(keyValue(statement, null));
+            start(current);
+        }
+    }
+
+    @Override
+    public void onTransaction(TransactionInfo transaction) throws IOException {
+        Shard shard = current;
+        if (!statementKey) {
+            String value = keyValue(statement, transaction);
+            if (shard == null || !shard.key.equals(value)) {
+                shard = shard(value);
+                current = shard;
+            }
+            start(shard);
+        } else if (shard.encoder == null) {
+            // Closed to make room for other shards while this statement was being written
+            start(shard);
+        }
+        shard.encoder.writeTransaction(transaction);
+    }
+
+    @Override
+    public void onStatementEnd() {
+        current = null;
+    }
+
+    /**
+     * Rows written to all shards so far
+     */
+    public long getRowCount() {
+        long rows = rowsOfClosed;
+        for (Shard shard : open.values()) {
+            rows += shard.encoder.getRowCount();
+        }
+        return rows;
+    }
+
+    /**
+     * Shard files by key value, as named once {@link #close} has renamed them into place
+     */
+    public Map<String, Path> getShards() {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (Shard shard : shards.values()) {
+            files.put(shard.key, shard.file);
+        }
+        return Collections.unmodifiableMap(files);
+    }
+
+    /**
+     * Flush and close every shard and move them into place
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Iterator<Shard> it = open.values().iterator(); it.hasNext(); ) {
+            Shard shard = it.next();
+            it.remove();
+            try {
+                closeShard(shard);
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        for (Shard shard : shards.values()) {
+            ConversionCache.moveIntoPlace(shard.part, shard.file);
+        }
+    }
+
+    /**
+     * Close every shard and delete the partial files, after a failed conversion
+     */
+    public void abort() throws IOException {
+        for (Shard shard : open.values()) {
+            try {
+                shard.encoder.close();
+            } catch (IOException e) {
+                // Deleted below anyway
+            }
+        }
+        open.clear();
+        for (Shard shard : shards.values()) {
+            Files.deleteIfExists(shard.part);
+        }
+    }
+
+    /**
+     * Open the shard if needed and make sure it has the current statement's Bal row
+     */
+    private void start(Shard shard) throws IOException {
+        if (shard.encoder == null) {
+            openShard(shard);
+        } else {
+            open.get(shard.key); // Most recently used
+        }
+        if (shard.statement != statement) {
+            shard.statement = statement;
+            shard.encoder.startStatement(statement);
+            shard.encoder.writeBalance(balance);
+        } else if (shard.encoderStatement != statement) {
+            shard.encoder.startStatement(statement);
+        }
+        shard.encoderStatement = statement;
+    }
+
+    private Shard shard(String value) {
+        Shard shard = shards.get(value);
+        if (shard == null) {
+            shard = new Shard(value, shardFile(value));
+            shards.put(value, shard);
+        }
+        return shard;
+    }
+
+    private void openShard(Shard shard) throws IOException {
+        if (open.size() >= maxOpenFiles) {
+            Iterator<Shard> eldest = open.values().iterator();
+            Shard closing = eldest.next();
+            eldest.remove();
+            closeShard(closing);
+        }
+        OutputStream out = shard.created
+            ? Files.newOutputStream(shard.part, StandardOpenOption.APPEND)
+            : Files.newOutputStream(shard.part);
+        shard.created = true;
+        if (gzip) {
+            try {
+                out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+        }
+        shard.encoder = new Camt053RowEncoder(out, bufferSize, layout);
+        shard.encoderStatement = null;
+        open.put(shard.key, shard);
+    }
+
+    private void closeShard(Shard shard) throws IOException {
+        Camt053RowEncoder encoder = shard.encoder;
+        shard.encoder = null;
+        rowsOfClosed += encoder.getRowCount();
+        encoder.close();
+    }
+
+    private String keyValue(StatementInfo stmt, TransactionInfo tx) {
+        if (key.size() == 1) {
+            return value(key.get(0), stmt, tx);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < key.size(); i++) {
+            if (i > 0) {
+                sb.append('\u0000');
+            }
+            sb.append(value(key.get(i), stmt, tx));
+        }
+        return sb.toString();
+    }
+
+    private static String value(CsvLayout.Field field, StatementInfo stmt, TransactionInfo tx) {
+        String value;
+        switch (field) {
+            case MSG_ID:
+                value = stmt.getMessageId();
+                break;
+            case ELCTRNC_SEQ_NB:
+                value = stmt.getElectronicSeqNb();
+                break;
+            case PG_NB:
+                value = stmt.getPageNumber();
+                break;
+            case CCY:
+                value = stmt.getCurrency();
+                break;
+            case FROM_BIC:
+                value = stmt.getFromBic();
+                break;
+            case TO_BIC:
+                value = stmt.getToBic();
+                break;
+            case ACCOUNT_ID:
+                value = stmt.getAccountId();
+                break;
+            case LAST_PG_IND:
+                value = String.valueOf(stmt.isLastPageIndicator());
+                break;
+            case STMT_ID:
+                value = stmt.getStatementId();
+                break;
+            case BOOKG_DT:
+                value = tx.getBookingDate() != null ? tx.getBookingDate().toString() : null;
+                break;
+            case STS:
+                value = tx.getStatus();
+                break;
+            case ACCT_SVCR_REF:
+                value = tx.getAccountServicerReference();
+                break;
+            case CDT_DBT_IND:
+                value = tx.getEntryCreditDebitIndicator();
+                break;
+            case TX_CDT_DBT_IND:
+                value = tx.getTransactionCreditDebitIndicator();
+                break;
+            case END_TO_END_ID:
+                value = tx.getEndToEndId();
+                break;
+            case COUNTERPARTY:
+                value = tx.getCounterpartyName();
+                break;
+            case COUNTERPARTY_ACCT:
+                value = tx.getCounterpartyAccount();
+                break;
+            default:
+                throw new IllegalStateException("Cannot shard by " + field);
+        }
+        return value == null || value.isEmpty() ? NO_VALUE : value;
+    }
+
+    /**
+     * output with the key values appended to its name; characters that are not
+     * safe in file names become '_', and a number is added if two keys collide
+     */
+    private Path shardFile(String value) {
+        String name = output.getFileName().toString();
+        String extension = gzip ? ".csv.gz" : ".csv";
+        String stem = name.endsWith(extension) ? name.substring(0, name.length() - extension.length()) : name;
+        if (!name.endsWith(extension)) {
+            extension = "";
+        }
+        StringBuilder sb = new StringBuilder(stem);
+        for (String part : value.split("\u0000", -1)) {
+            sb.append('_');
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                sb.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '-' || c == '.') ? c : '_');
+            }
+        }
+        String base = sb.toString();
+        String fileName = base + extension;
+        for (int n = 2; !fileNames.add(fileName.toLowerCase(Locale.ROOT)); n++) {
+            fileName = base + "-" + n + extension;
+        }
+        return output.resolveSibling(fileName);
+    }
+
+    private static class Shard {
+        final String key;
+        final Path file;
+        final Path part;
+        Camt053RowEncoder encoder;
+        boolean created;
+        // Statement whose Bal row this shard has, and the one the encoder was started with
+        StatementInfo statement;
+        StatementInfo encoderStatement;
+
+        Shard(String key, Path file) {
+            this.key = key;
+            this.file = file;
+            this.part = ConversionCheckpoint.partPath(file);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Column-wise store of a statement's entries, usable wherever a
+ * List&lt;TransactionInfo&gt; is expected.
+ *
+ * Booking dates are kept as epoch days and amounts as scaled longs in primitive
+ * arrays; status and credit/debit indicators as byte codes; counterparties in a
+ * dictionary, since they repeat; references as UTF-8 in one shared byte array.
+ * An entry takes around 35 bytes instead of the 300 or more of a TransactionInfo
+ * with its LocalDate and Strings. {@link #get} builds a new TransactionInfo from
+ * the columns, so changing it does not change the store; {@link #copyTo} fills
+ * an existing one instead.
+ */
+public final class TransactionStore extends AbstractList<TransactionInfo> implements RandomAccess {
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final byte BIG_AMOUNT = -1;   // amount is in bigAmounts
+    private static final byte NO_AMOUNT = -2;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] bookingDays = new int[INITIAL_CAPACITY];
+    private long[] amountUnits = new long[INITIAL_CAPACITY];
+    private byte[] amountScales = new byte[INITIAL_CAPACITY];
+    private final Map<Integer, BigDecimal> bigAmounts = new HashMap<>();
+
+    // Few distinct values: BOOK/PDNG/INFO, CRDT/DBIT
+    private final Dictionary codes = new Dictionary();
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private byte[] entryIndicators = new byte[INITIAL_CAPACITY];
+    private byte[] transactionIndicators = new byte[INITIAL_CAPACITY];
+    // Rows expanded from TxDtls, signed by their transaction indicator
+    private final BitSet transactionDetails = new BitSet();
+
+    private final TextColumn references = new TextColumn(INITIAL_CAPACITY);
+    // Only filled for expanded TxDtls rows, so allocated on first use
+    private TextColumn endToEndIds;
+    private final Dictionary parties = new Dictionary();
+    private int[] counterpartyNames;
+    private int[] counterpartyAccounts;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a copy of the entry's values
+     */
+    @Override
+    public boolean add(TransactionInfo tx) {
+        ensureCapacity(size + 1);
+        int i = size;
+        LocalDate date = tx.getBookingDate();
+        bookingDays[i] = date != null ? (int) date.toEpochDay() : NO_DATE;
+        if (tx.hasScaledAmount() && tx.getAmountScale() <= Byte.MAX_VALUE) {
+            amountUnits[i] = tx.getAmountUnits();
+            amountScales[i] = (byte) tx.getAmountScale();
+        } else if (tx.getAmount() != null) {
+            BigDecimal amount = tx.getAmount();
+            if (amount.scale() >= 0 && amount.scale() <= FixedPointAmounts.MAX_DIGITS
+                && amount.precision() <= FixedPointAmounts.MAX_DIGITS) {
+                amountUnits[i] = amount.unscaledValue().longValue();
+                amountScales[i] = (byte) amount.scale();
+            } else {
+                amountScales[i] = BIG_AMOUNT;
+                bigAmounts.put(i, amount);
+            }
+        } else {
+            amountScales[i] = NO_AMOUNT;
+        }
+        statuses[i] = codes.byteCode(tx.getStatus());
+        entryIndicators[i] = codes.byteCode(tx.getEntryCreditDebitIndicator());
+        transactionIndicators[i] = codes.byteCode(tx.getTransactionCreditDebitIndicator());
+        transactionDetails.set(i, tx.isTransactionDetail());
+        references.add(tx.getAccountServicerReference());
+
+        if (tx.getEndToEndId() != null && endToEndIds == null) {
+            endToEndIds = new TextColumn(bookingDays.length);
+            for (int j = 0; j < size; j++) {
+                endToEndIds.add(null);
+            }
+        }
+        if (endToEndIds != null) {
+            endToEndIds.add(tx.getEndToEndId());
+        }
+        if (tx.getCounterpartyName() != null || tx.getCounterpartyAccount() != null || counterpartyNames != null) {
+            if (counterpartyNames == null) {
+                counterpartyNames = filled(bookingDays.length);
+                counterpartyAccounts = filled(bookingDays.length);
+            }
+            counterpartyNames[i] = parties.code(tx.getCounterpartyName());
+            counterpartyAccounts[i] = parties.code(tx.getCounterpartyAccount());
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * A new TransactionInfo with the values of entry index
+     */
+    @Override
+    public TransactionInfo get(int index) {
+        return copyTo(index, new TransactionInfo());
+    }
+
+    /**
+     * Overwrite target with the values of entry index, e.g. to reuse one
+     * object while streaming the store to a handler; returns target
+     */
+    public TransactionInfo copyTo(int index, TransactionInfo target) {
+        checkIndex(index);
+        int day = bookingDays[index];
+        target.setBookingDate(day != NO_DATE ? LocalDate.ofEpochDay(day) : null);
+        byte scale = amountScales[index];
+        if (scale >= 0) {
+            target.setScaledAmount(amountUnits[index], scale);
+        } else {
+            target.setAmount(scale == BIG_AMOUNT ? bigAmounts.get(index) : null);
+        }
+        target.setStatus(codes.value(statuses[index]));
+        target.setEntryCreditDebitIndicator(codes.value(entryIndicators[index]));
+        target.setTransactionCreditDebitIndicator(codes.value(transactionIndicators[index]));
+        target.setTransactionDetail(transactionDetails.get(index));
+        target.setAccountServicerReference(references.get(index));
+        target.setEndToEndId(endToEndIds != null ? endToEndIds.get(index) : null);
+        target.setCounterpartyName(counterpartyNames != null ? parties.value(counterpartyNames[index]) : null);
+        target.setCounterpartyAccount(counterpartyAccounts != null ? parties.value(counterpartyAccounts[index]) : null);
+        return target;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        bigAmounts.clear();
+        transactionDetails.clear();
+        references.clear();
+        endToEndIds = null;
+        counterpartyNames = null;
+        counterpartyAccounts = null;
+        modCount++;
+    }
+
+    /**
+     * Booking date as epoch day, or Integer.MIN_VALUE when absent
+     */
+    public int getBookingEpochDay(int index) {
+        checkIndex(index);
+        return bookingDays[index];
+    }
+
+    /**
+     * Whether the amount is available as {@link #getAmountUnits} / 10^{@link #getAmountScale}
+     */
+    public boolean hasScaledAmount(int index) {
+        checkIndex(index);
+        return amountScales[index] >= 0;
+    }
+
+    public long getAmountUnits(int index) {
+        checkIndex(index);
+        return amountUnits[index];
+    }
+
+    public int getAmountScale(int index) {
+        checkIndex(index);
+        return amountScales[index];
+    }
+
+    public boolean isDebit(int index) {
+        checkIndex(index);
+        return "DBIT".equals(codes.value(signIndicator(index)));
+    }
+
+    /**
+     * Release the spare capacity of the columns
+     */
+    public void trimToSize() {
+        resize(size);
+        references.trimToSize();
+        if (endToEndIds != null) {
+            endToEndIds.trimToSize();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bookingDays.length) {
+            resize(Math.max(capacity, bookingDays.length + (bookingDays.length >> 1)));
+        }
+    }
+
+    private void resize(int capacity) {
+        bookingDays = Arrays.copyOf(bookingDays, capacity);
+        amountUnits = Arrays.copyOf(amountUnits, capacity);
+        amountScales = Arrays.copyOf(amountScales, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        entryIndicators = Arrays.copyOf(entryIndicators, capacity);
+        transactionIndicators = Arrays.copyOf(transactionIndicators, capacity);
+        if (counterpartyNames != null) {
+            int oldLength = counterpartyNames.length;
+            counterpartyNames = Arrays.copyOf(counterpartyNames, capacity);
+            counterpartyAccounts = Arrays.copyOf(counterpartyAccounts, capacity);
+            if (capacity > oldLength) {
+                Arrays.fill(counterpartyNames, oldLength, capacity, -1);
+                Arrays.fill(counterpartyAccounts, oldLength, capacity, -1);
+            }
+        }
+    }
+
+    private byte signIndicator(int index) {
+        return transactionDetails.get(index) ? transactionIndicators[index] : entryIndicators[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+
+    private static int[] filled(int length) {
+        int[] codes = new int[length];
+        Arrays.fill(codes, -1);
+        return codes;
+    }
+
+    /**
+     * Distinct strings by code; byte codes start at 1 so that 0 means null
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String value(int code) {
+            return code >= 0 ? values.get(code) : null;
+        }
+
+        byte byteCode(String value) {
+            int code = code(value) + 1;
+            if (code > 255) {
+                throw new IllegalStateException("More than 255 distinct status or indicator values");
+            }
+            return (byte) code;
+        }
+
+        String value(byte code) {
+            return value((code & 0xFF) - 1);
+        }
+    }
+
+    /**
+     * Strings stored end to end as UTF-8; a negative end marks a null
+     */
+    private static final class TextColumn {
+        private byte[] bytes = new byte[256];
+        private int length;
+        private int[] ends;
+        private int size;
+
+        TextColumn(int capacity) {
+            ends = new int[capacity];
+        }
+
+        void add(String value) {
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size + (size >> 1) + 1);
+            }
+            if (value == null) {
+                ends[size++] = ~length;
+                return;
+            }
+            ensureBytes(length + value.length() * 3);
+            int pos = length;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[pos++] = (byte) c;
+                } else {
+                    // Rare in references: fall back to the JDK encoder for the rest
+                    byte[] rest = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                    ensureBytes(pos + rest.length);
+                    System.arraycopy(rest, 0, bytes, pos, rest.length);
+                    pos += rest.length;
+                    break;
+                }
+            }
+            length = pos;
+            ends[size++] = pos;
+        }
+
+        String get(int index) {
+            int end = ends[index];
+            if (end < 0) {
+                return null;
+            }
+            int start = index == 0 ? 0 : ends[index - 1] < 0 ? ~ends[index - 1] : ends[index - 1];
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        void clear() {
+            length = 0;
+            size = 0;
+        }
+
+        void trimToSize() {
+            bytes = Arrays.copyOf(bytes, length);
+            ends = Arrays.copyOf(ends, size);
+        }
+
+        private void ensureBytes(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length + (bytes.length >> 1)));
+            }
+        }
+    }
+}
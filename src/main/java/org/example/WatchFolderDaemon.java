@@ -0,0 +1,588 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Long-running converter for files dropped into an inbox directory.
+ *
+ * New files are picked up through a WatchService and pass through four
+ * stages, each with its own threads, connected by bounded queues so a slow
+ * stage holds back the ones before it:
+ *
+ * READ (load the file) → EXTRACT (StAX parse and extract) → FORMAT (encode CSV
+ * rows) → WRITE (write the CSV and move the input away).
+ *
+ * The CSV is written under a temporary name and renamed into the outbox, then
+ * the input is moved to the done directory, under a numbered name (a-1.xml)
+ * when a file of that name is already there, e.g. a statement the bank sent
+ * again. A file that fails is moved to the error directory next to a
+ * .error.txt with the cause. All moves are atomic, so the directories must be
+ * on the same file system as the inbox.
+ *
+ * A file is only read once it has gone unmodified for the settle time, so one
+ * that is still being written when it is picked up is not converted half done.
+ * Moving finished files into the inbox, or writing them under a name the
+ * pattern does not match and renaming them, avoids the wait. Files larger than
+ * the in-memory limit skip the middle stages and are streamed by the write
+ * stage with {@link Camt053FileConverter}.
+ */
+public class WatchFolderDaemon implements Closeable {
+
+    public enum Stage { READ, EXTRACT, FORMAT, WRITE }
+
+    public static final String DEFAULT_PATTERN = "*.xml";
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final long DEFAULT_MAX_IN_MEMORY_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+    private static final Job END = new Job(null);
+    private static final Map<Stage, ConversionMetrics.Stage> METRIC_STAGES = new EnumMap<>(Stage.class);
+
+    static {
+        METRIC_STAGES.put(Stage.READ, ConversionMetrics.Stage.READ);
+        METRIC_STAGES.put(Stage.EXTRACT, ConversionMetrics.Stage.PARSE);
+        METRIC_STAGES.put(Stage.FORMAT, ConversionMetrics.Stage.FORMAT);
+        METRIC_STAGES.put(Stage.WRITE, ConversionMetrics.Stage.WRITE);
+    }
+
+    private final Path inbox;
+    private final Path outbox;
+    private final Path doneDir;
+    private final Path errorDir;
+    private final Map<Stage, Integer> parallelism = new EnumMap<>(Stage.class);
+    private PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + DEFAULT_PATTERN);
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long maxInMemoryBytes = DEFAULT_MAX_IN_MEMORY_BYTES;
+    private long settleMillis = DEFAULT_SETTLE_MILLIS;
+    private ConversionOptions options = new ConversionOptions();
+    private ConversionMetrics metrics;
+    private BalanceReconciler.Mode reconciliation;
+
+    // Running state
+    private final Map<Stage, BlockingQueue<Job>> queues = new EnumMap<>(Stage.class);
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<Thread> threads = new ArrayList<>();
+    // Done and error names are chosen and taken by one thread at a time
+    private final Object publishLock = new Object();
+    private WatchService watchService;
+    private CountDownLatch stopped;
+
+    public WatchFolderDaemon(Path inbox, Path outbox, Path doneDir, Path errorDir) {
+        this.inbox = inbox;
+        this.outbox = outbox;
+        this.doneDir = doneDir;
+        this.errorDir = errorDir;
+        for (Stage stage : Stage.values()) {
+            parallelism.put(stage, 1);
+        }
+        parallelism.put(Stage.EXTRACT, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Number of threads for a stage; extraction defaults to one per core, the others to one
+     */
+    public WatchFolderDaemon setParallelism(Stage stage, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        parallelism.put(stage, threadCount);
+        return this;
+    }
+
+    /**
+     * Files waiting between two stages before the earlier stage blocks
+     */
+    public WatchFolderDaemon setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Glob for file names to pick up, *.xml by default
+     */
+    public WatchFolderDaemon setPattern(String glob) {
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return this;
+    }
+
+    /**
+     * Larger files are streamed from disk to disk instead of passing through the stages
+     */
+    public WatchFolderDaemon setMaxInMemoryBytes(long maxInMemoryBytes) {
+        this.maxInMemoryBytes = maxInMemoryBytes;
+        return this;
+    }
+
+    /**
+     * How long a file must go unmodified before it is read; 0 reads it at once
+     */
+    public WatchFolderDaemon setSettleMillis(long settleMillis) {
+        if (settleMillis < 0) {
+            throw new IllegalArgumentException("Settle time must not be negative: " + settleMillis);
+        }
+        this.settleMillis = settleMillis;
+        return this;
+    }
+
+    /**
+     * Metrics, balance checks and row expansion for every file. A file failing a
+     * FAIL mode balance check is moved to the error directory. Sharding is not
+     * supported: each input is published as exactly one CSV in the outbox.
+     */
+    public WatchFolderDaemon setOptions(ConversionOptions options) {
+        if (options.getShardKey() != null) {
+            throw new IllegalArgumentException("Watched files cannot be written to shards");
+        }
+        this.options = options;
+        this.metrics = options.getMetrics();
+        this.reconciliation = options.getReconciliation();
+        return this;
+    }
+
+    public int getFilesConverted() {
+        return converted.get();
+    }
+
+    public int getFilesFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Start the stage threads and the watcher; files already in the inbox are converted first
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("Already started");
+        }
+        for (Path dir : new Path[] {inbox, outbox, doneDir, errorDir}) {
+            Files.createDirectories(dir);
+        }
+        watchService = inbox.getFileSystem().newWatchService();
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        stopped = new CountDownLatch(1);
+        for (Stage stage : Stage.values()) {
+            queues.put(stage, new ArrayBlockingQueue<>(queueCapacity));
+        }
+        for (Stage stage : Stage.values()) {
+            startStage(stage);
+        }
+        Thread watcher = new Thread(this::watch, "watch-inbox");
+        watcher.setDaemon(true);
+        threads.add(watcher);
+        watcher.start();
+    }
+
+    /**
+     * Block until {@link #close()} has drained the pipeline
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop watching, finish the files already picked up and stop the stage threads
+     */
+    @Override
+    public void close() throws IOException {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        if (service == null) {
+            return;
+        }
+        service.close();
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping", e);
+        }
+    }
+
+    private void watch() {
+        try {
+            enqueueExisting();
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        enqueueExisting();
+                    } else {
+                        enqueue(inbox.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    System.err.println("Inbox is no longer accessible: " + inbox);
+                    break;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() was called
+        } catch (IOException e) {
+            System.err.println("Watching " + inbox + " failed: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < parallelism.get(Stage.READ); i++) {
+                putUninterruptibly(queues.get(Stage.READ), END);
+            }
+        }
+    }
+
+    private void enqueueExisting() throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(inbox)) {
+            for (Path file : entries) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        for (Path file : files) {
+            enqueue(file);
+        }
+    }
+
+    private void enqueue(Path file) throws InterruptedException {
+        if (matcher.matches(file.getFileName()) && Files.isRegularFile(file) && pending.add(file)) {
+            queues.get(Stage.READ).put(new Job(file));
+        }
+    }
+
+    private void startStage(Stage stage) {
+        int count = parallelism.get(stage);
+        BlockingQueue<Job> input = queues.get(stage);
+        Stage nextStage = stage.ordinal() + 1 < Stage.values().length ? Stage.values()[stage.ordinal() + 1] : null;
+        AtomicInteger running = new AtomicInteger(count);
+        for (int i = 1; i <= count; i++) {
+            Thread thread = new Thread(() -> runStage(stage, input, nextStage, running),
+                "watch-" + stage.name().toLowerCase() + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stage thread loop; the last thread of a stage to see END passes it on
+     */
+    private void runStage(Stage stage, BlockingQueue<Job> input, Stage nextStage, AtomicInteger running) {
+        while (true) {
+            Job job = takeUninterruptibly(input);
+            if (job == END) {
+                break;
+            }
+            try {
+                if (metrics != null) {
+                    processMeasured(stage, job);
+                } else {
+                    process(stage, job);
+                }
+                if (nextStage != null) {
+                    putUninterruptibly(queues.get(nextStage), job);
+                }
+            } catch (Exception e) {
+                fail(job, e);
+            }
+        }
+        if (running.decrementAndGet() == 0) {
+            if (nextStage != null) {
+                for (int i = 0; i < parallelism.get(nextStage); i++) {
+                    putUninterruptibly(queues.get(nextStage), END);
+                }
+            } else {
+                stopped.countDown();
+            }
+        }
+    }
+
+    /**
+     * Time one stage of a job; files streamed by the write stage are measured by the converter
+     */
+    private void processMeasured(Stage stage, Job job) throws Exception {
+        if (stage == Stage.READ) {
+            job.started = System.nanoTime();
+        }
+        long allocatedBefore = ConversionMetrics.threadAllocatedBytes();
+        long start = System.nanoTime();
+        process(stage, job);
+        long nanos = System.nanoTime() - start;
+        if (job.streamed) {
+            return;
+        }
+        metrics.recordStage(METRIC_STAGES.get(stage), nanos);
+        job.allocatedBytes += ConversionMetrics.threadAllocatedBytes() - allocatedBefore;
+        if (stage == Stage.WRITE && !job.streamed) {
+            metrics.recordFile(System.nanoTime() - job.started, job.inputBytes, job.outputBytes, job.entries,
+                allocatedBefore >= 0 ? job.allocatedBytes : -1);
+        }
+    }
+
+    private void process(Stage stage, Job job) throws Exception {
+        switch (stage) {
+            case READ:
+                awaitSettled(job.input);
+                job.inputBytes = Files.size(job.input);
+                job.streamed = job.inputBytes > maxInMemoryBytes;
+                if (!job.streamed) {
+                    job.xml = Files.readAllBytes(job.input);
+                }
+                break;
+            case EXTRACT:
+                if (job.xml != null) {
+                    InputStream xml = new ByteArrayInputStream(job.xml);
+                    if (Camt053FileConverter.isGzip(job.input)) {
+                        xml = new GZIPInputStream(xml);
+                    }
+                    job.statements = extract(job, xml);
+                    job.xml = null;
+                }
+                break;
+            case FORMAT:
+                if (job.statements != null) {
+                    for (Camt053Data data : job.statements) {
+                        job.entries += data.getTransactions().size();
+                    }
+                    job.csv = format(job);
+                    job.statements = null;
+                }
+                break;
+            case WRITE:
+                write(job);
+                break;
+            default:
+                throw new IllegalStateException("Unknown stage " + stage);
+        }
+    }
+
+    /**
+     * Wait until file has not been modified for the settle time
+     */
+    private void awaitSettled(Path file) throws IOException {
+        while (true) {
+            long quiet = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+            if (quiet >= settleMillis) {
+                return;
+            }
+            try {
+                Thread.sleep(settleMillis - quiet);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + file + " to settle");
+            }
+        }
+    }
+
+    /**
+     * Parse the statements into memory, checking balances on the way: only the
+     * parse sees the Ntry amounts, the store keeps rows, which may be TxDtls
+     */
+    private List<Camt053Data> extract(Job job, InputStream xml) throws IOException, XMLStreamException {
+        Camt053StreamingExtractor.Collector collector = new Camt053StreamingExtractor.Collector();
+        BalanceReconciler reconciler = reconciliation == null ? null : new BalanceReconciler(collector,
+            reconciliation, mismatch -> System.err.println("Balance mismatch in " + job.input + ": " + mismatch));
+        options.newExtractor().extract(xml, reconciler != null ? reconciler : collector);
+        if (reconciler != null) {
+            reconciler.finish();
+        }
+        return collector.getStatements();
+    }
+
+    private byte[] format(Job job) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(bytes, options.getBufferSize(), options.getLayout())) {
+            job.duplicates = options.newDuplicateFilter(encoder, job.input);
+            Camt053Handler handler = job.duplicates != null ? job.duplicates : encoder;
+            // Handlers do not keep entries, so one object is refilled from the columnar store
+            TransactionInfo row = new TransactionInfo();
+            for (Camt053Data data : job.statements) {
+                handler.onStatement(data.getStatementInfo(), data.getBalanceInfo());
+                List<TransactionInfo> transactions = data.getTransactions();
+                if (transactions instanceof TransactionStore) {
+                    TransactionStore store = (TransactionStore) transactions;
+                    for (int i = 0; i < store.size(); i++) {
+                        handler.onTransaction(store.copyTo(i, row));
+                    }
+                } else {
+                    for (TransactionInfo transaction : transactions) {
+                        handler.onTransaction(transaction);
+                    }
+                }
+                handler.onStatementEnd();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(Job job) throws IOException, XMLStreamException {
+        Path output = BatchConverter.outputPath(inbox, job.input, outbox);
+        Path temp = output.resolveSibling("." + output.getFileName() + ".tmp");
+        if (job.csv != null) {
+            Files.write(temp, job.csv);
+            job.outputBytes = job.csv.length;
+            job.csv = null;
+        } else {
+            new Camt053FileConverter(options).convert(job.input, temp);
+        }
+        synchronized (publishLock) {
+            // Pick the done name first: once the CSV is in the outbox the input must not end up in error
+            Path done = freeName(doneDir, job.input.getFileName().toString());
+            Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(job.input, done, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(output);
+                throw e;
+            }
+        }
+        if (job.duplicates != null) {
+            job.duplicates.commit();
+        }
+        pending.remove(job.input);
+        converted.incrementAndGet();
+    }
+
+    /**
+     * dir/name, or the first of dir/a-1.xml, dir/a-2.xml... that does not exist yet
+     */
+    static Path freeName(Path dir, String name) {
+        Path target = dir.resolve(name);
+        int gz = name.toLowerCase(Locale.ROOT).endsWith(".gz") ? 3 : 0;
+        int dot = name.lastIndexOf('.', name.length() - gz - 1);
+        int split = dot > 0 ? dot : name.length() - gz;
+        for (int i = 1; Files.exists(target, LinkOption.NOFOLLOW_LINKS); i++) {
+            target = dir.resolve(name.substring(0, split) + "-" + i + name.substring(split));
+        }
+        return target;
+    }
+
+    /**
+     * Move a failed input to the error directory with the stack trace next to it
+     */
+    private void fail(Job job, Exception cause) {
+        failed.incrementAndGet();
+        if (job.duplicates != null) {
+            job.duplicates.rollback();
+        }
+        if (metrics != null && !job.streamed) {
+            metrics.recordFailure();
+        }
+        System.err.println("FAILED " + job.input + ": " + cause);
+        try {
+            StringWriter trace = new StringWriter();
+            cause.printStackTrace(new PrintWriter(trace));
+            synchronized (publishLock) {
+                Path target = freeName(errorDir, job.input.getFileName().toString());
+                Files.write(errorDir.resolve(target.getFileName() + ".error.txt"),
+                    trace.toString().getBytes(StandardCharsets.UTF_8));
+                if (Files.exists(job.input)) {
+                    Files.move(job.input, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not move " + job.input + " to " + errorDir + ": " + e);
+        } finally {
+            pending.remove(job.input);
+        }
+    }
+
+    private static Job takeUninterruptibly(BlockingQueue<Job> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Job> queue, Job job) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(job);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * One input file on its way through the stages; each stage drops what the next no longer needs
+     */
+    private static class Job {
+        final Path input;
+        boolean streamed;
+        byte[] xml;
+        List<Camt053Data> statements;
+        byte[] csv;
+        // Keys this file added to the duplicate index, kept once the output is in place
+        DuplicateFilter duplicates;
+
+        // Measurements, filled in only when metrics are on
+        long started;
+        long inputBytes;
+        long outputBytes;
+        long entries;
+        long allocatedBytes;
+
+        Job(Path input) {
+            this.input = input;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Character encoding of an XML document, detected from its byte order mark
+ * or the encoding declaration in the prolog (XML 1.0 appendix F)
+ */
+final class XmlEncoding {
+
+    /** Bytes to read from the start of a file before calling {@link #detect} */
+    static final int HEAD_SIZE = 512;
+
+    private static final Pattern DECLARED = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._\\-]*)[\"']");
+
+    private final Charset charset;
+    private final int bomLength;
+
+    private XmlEncoding(Charset charset, int bomLength) {
+        this.charset = charset;
+        this.bomLength = bomLength;
+    }
+
+    /**
+     * Charset the document bytes after the byte order mark are in
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Length of the byte order mark, 0 if there is none
+     */
+    int getBomLength() {
+        return bomLength;
+    }
+
+    /**
+     * True when markup characters are single ASCII bytes, so tags can be found
+     * by scanning bytes
+     */
+    boolean isAsciiCompatible() {
+        return Arrays.equals("<Ntry/>".getBytes(charset), "<Ntry/>".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Detect the encoding from the first bytes of a document
+     */
+    static XmlEncoding detect(byte[] head, int length) {
+        int b0 = length > 0 ? head[0] & 0xFF : -1;
+        int b1 = length > 1 ? head[1] & 0xFF : -1;
+        int b2 = length > 2 ? head[2] & 0xFF : -1;
+        int b3 = length > 3 ? head[3] & 0xFF : -1;
+
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return new XmlEncoding(StandardCharsets.UTF_8, 3);
+        }
+        if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF) {
+            return new XmlEncoding(Charset.forName("UTF-32BE"), 4);
+        }
+        if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00) {
+            return new XmlEncoding(Charset.forName("UTF-32LE"), 4);
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            return new XmlEncoding(StandardCharsets.UTF_16BE, 2);
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            return new XmlEncoding(StandardCharsets.UTF_16LE, 2);
+        }
+        // No byte order mark: the first character must be '<'
+        if (b0 == 0x00 && b1 == 0x00 && b2 == 0x00 && b3 == '<') {
+            return new XmlEncoding(Charset.forName("UTF-32BE"), 0);
+        }
+        if (b0 == '<' && b1 == 0x00 && b2 == 0x00 && b3 == 0x00) {
+            return new XmlEncoding(Charset.forName("UTF-32LE"), 0);
+        }
+        if (b0 == 0x00 && b1 == '<') {
+            return new XmlEncoding(StandardCharsets.UTF_16BE, 0);
+        }
+        if (b0 == '<' && b1 == 0x00) {
+            return new XmlEncoding(StandardCharsets.UTF_16LE, 0);
+        }
+        return new XmlEncoding(declaredCharset(head, length), 0);
+    }
+
+    /**
+     * Encoding named in an ASCII compatible prolog, UTF-8 when absent
+     */
+    private static Charset declaredCharset(byte[] head, int length) {
+        String text = new String(head, 0, length, StandardCharsets.ISO_8859_1);
+        int prologEnd = text.startsWith("<?xml") ? text.indexOf("?>") : -1;
+        if (prologEnd < 0) {
+            return StandardCharsets.UTF_8;
+        }
+        Matcher matcher = DECLARED.matcher(text.substring(0, prologEnd));
+        if (!matcher.find()) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported XML encoding: " + matcher.group(1), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BalanceReconcilerTest {
+
+    private static final Camt053Handler IGNORE = new Camt053Handler() {
+        @Override
+        public void onStatement(StatementInfo statement, BalanceInfo balance) {
+        }
+
+        @Override
+        public void onTransaction(TransactionInfo transaction) {
+        }
+    };
+
+    @Test
+    void chainedPagesFromPageOneAreClean() throws Exception {
+        BalanceReconciler reconciler = new BalanceReconciler(IGNORE, BalanceReconciler.Mode.REPORT);
+        page(reconciler, "1", false, "100", "100");
+        page(reconciler, "2", true, "100", "100");
+        reconciler.finish();
+
+        assertTrue(reconciler.getMismatches().isEmpty());
+    }
+
+    @Test
+    void loneLastPageIsAGap() throws Exception {
+        BalanceReconciler reconciler = new BalanceReconciler(IGNORE, BalanceReconciler.Mode.REPORT);
+        page(reconciler, "3", true, "100", "100");
+        reconciler.finish();
+
+        List<BalanceReconciler.Mismatch> mismatches = reconciler.getMismatches();
+        assertEquals(1, mismatches.size());
+        assertEquals(BalanceReconciler.Kind.PAGE_GAP, mismatches.get(0).getKind());
+        assertEquals(BigDecimal.ONE, mismatches.get(0).getExpected());
+    }
+
+    @Test
+    void statementStartingAfterPageOneIsAGap() throws Exception {
+        BalanceReconciler reconciler = new BalanceReconciler(IGNORE, BalanceReconciler.Mode.REPORT);
+        page(reconciler, "2", false, "100", "100");
+        page(reconciler, "3", true, "100", "100");
+        reconciler.finish();
+
+        List<BalanceReconciler.Mismatch> mismatches = reconciler.getMismatches();
+        assertEquals(1, mismatches.size());
+        assertEquals(BalanceReconciler.Kind.PAGE_GAP, mismatches.get(0).getKind());
+        assertEquals("2", mismatches.get(0).getPageNumber());
+    }
+
+    private static void page(BalanceReconciler reconciler, String number, boolean last, String opening,
+        String closing) throws Exception {
+        StatementInfo statement = new StatementInfo();
+        statement.setStatementId("STMT-" + number);
+        statement.setAccountId("NL00BANK0123456789");
+        statement.setCurrency("EUR");
+        statement.setPageNumber(number);
+        statement.setLastPageIndicator(last);
+        BalanceInfo balance = new BalanceInfo();
+        balance.setOpeningBalance(new BigDecimal(opening));
+        balance.setOpeningCreditDebitIndicator("CRDT");
+        balance.setClosingBalance(new BigDecimal(closing));
+        balance.setCreditDebitIndicator("CRDT");
+        reconciler.onStatement(statement, balance);
+        reconciler.onStatementEnd();
+    }
+}
@@ -0,0 +1,107 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchConverterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recursiveGlobTakesFilesDirectlyInTheBase() throws Exception {
+        Path top = touch(dir.resolve("a.xml"));
+        Path nested = touch(dir.resolve("sub/c.xml"));
+        touch(dir.resolve("sub/notes.txt"));
+
+        BatchConverter.InputSet inputs = BatchConverter.listInputs(dir + "/**/*.xml");
+
+        assertEquals(Arrays.asList(top, nested), inputs.files);
+    }
+
+    @Test
+    void firstFileInInputOrderOwnsDuplicateEntries() throws Exception {
+        Path in = Files.createDirectories(dir.resolve("in"));
+        Camt053CorpusGenerator generator = new Camt053CorpusGenerator(51L, 2, 30, 1);
+        for (String name : new String[] {"a.xml", "b.xml", "c.xml", "d.xml"}) {
+            generator.write(in.resolve(name));
+        }
+
+        try (DuplicateIndex index = DuplicateIndex.open(dir.resolve("index.dup"))) {
+            ConversionOptions options = new ConversionOptions().setDuplicates(index, DuplicateFilter.Mode.DROP);
+            BatchReport report = new BatchConverter(4, new Camt053FileConverter(options))
+                .convert(in.toString(), dir.resolve("out"));
+            assertEquals(4, report.getFilesConverted());
+        }
+
+        // Two balance rows each; only a.csv keeps the entries
+        assertEquals(62, Files.readAllLines(dir.resolve("out/a.csv")).size());
+        for (String name : new String[] {"b.csv", "c.csv", "d.csv"}) {
+            assertEquals(2, Files.readAllLines(dir.resolve("out").resolve(name)).size());
+        }
+    }
+
+    @Test
+    void inputsSharingAnOutputFailInsteadOfOverwritingEachOther() throws Exception {
+        Path in = Files.createDirectories(dir.resolve("in"));
+        Camt053CorpusGenerator generator = new Camt053CorpusGenerator(52L, 1, 5, 1);
+        generator.write(in.resolve("a.xml"));
+        generator.write(in.resolve("a.xml.gz"));
+        generator.write(Files.createDirectories(in.resolve("b")).resolve("c.xml"));
+        generator.write(in.resolve("d.xml"));
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(in.resolve("b.zip")))) {
+            zip.putNextEntry(new ZipEntry("c.xml"));
+            generator.write(zip);
+        }
+
+        BatchReport report = new BatchConverter(2).convert(in + "/**/*.{xml,xml.gz,zip}", dir.resolve("out"));
+
+        assertEquals(1, report.getFilesConverted());
+        assertEquals(Arrays.asList(in.resolve("a.xml"), in.resolve("a.xml.gz"), in.resolve("b.zip"),
+            in.resolve("b/c.xml")), report.getFailures().stream().map(BatchReport.Failure::getFile).sorted()
+            .collect(Collectors.toList()));
+        assertTrue(Files.exists(dir.resolve("out/d.csv")));
+        assertFalse(Files.exists(dir.resolve("out/a.csv")));
+        assertFalse(Files.exists(dir.resolve("out/b")));
+    }
+
+    @Test
+    void readGivesFilesByPathAndArchiveEntriesAsStreams() throws Exception {
+        Path in = Files.createDirectories(dir.resolve("in"));
+        Path plain = touch(in.resolve("a.xml"));
+        Path archive = in.resolve("b.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("docs/"));
+            zip.putNextEntry(new ZipEntry("docs/x.xml"));
+            zip.write("x".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("readme.txt"));
+            zip.putNextEntry(new ZipEntry("Y.XML"));
+            zip.write("y".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> units = new ArrayList<>();
+        BatchConverter.read(BatchConverter.listInputs(in.toString()), (name, stream) -> units.add(dir.relativize(name)
+            + (stream == null ? "" : "=" + new String(stream.readAllBytes(), StandardCharsets.UTF_8))));
+
+        assertEquals(Arrays.asList(dir.relativize(plain).toString(), "in/b.zip/docs/x.xml=x", "in/b.zip/Y.XML=y"),
+            units);
+    }
+
+    private static Path touch(Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, new byte[0]);
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Camt053CsvProcessorTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final Executor executor = task -> {
+        Thread thread = new Thread(task, "processor-test");
+        threads.add(thread);
+        thread.start();
+    };
+
+    @Test
+    void rowsFollowDemandAndMatchTheFileConverter() throws Exception {
+        Path input = input(71L, 2, 20);
+        Path csv = dir.resolve("out.csv");
+        new Camt053FileConverter().convert(input, csv);
+        List<String> expected = Files.readAllLines(csv);
+
+        RecordingSubscriber<String> subscriber = subscribe(input, new Camt053CsvProcessor());
+        subscriber.subscription.request(2);
+        List<String> rows = new ArrayList<>();
+        rows.add(subscriber.next());
+        rows.add(subscriber.next());
+        // No more rows than asked for
+        assertTrue(subscriber.quiet());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.awaitDone();
+        subscriber.items.drainTo(rows);
+
+        assertTrue(subscriber.completed);
+        assertEquals(expected, rows);
+    }
+
+    @Test
+    void cancelReachesThePublisher() throws Exception {
+        RecordingSubscriber<String> subscriber = subscribe(input(72L, 1, 50), new Camt053CsvProcessor());
+        subscriber.subscription.request(3);
+        for (int i = 0; i < 3; i++) {
+            subscriber.next();
+        }
+        subscriber.subscription.cancel();
+        threads.get(0).join(30_000);
+
+        assertFalse(threads.get(0).isAlive());
+        assertTrue(subscriber.quiet());
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    void rejectedSubscriberCannotCancelTheFirst() throws Exception {
+        Camt053CsvProcessor processor = new Camt053CsvProcessor();
+        RecordingSubscriber<String> first = subscribe(input(73L, 1, 10), processor);
+        RecordingSubscriber<String> second = new RecordingSubscriber<>();
+        processor.subscribe(second);
+
+        second.awaitDone();
+        assertTrue(second.error instanceof IllegalStateException);
+        second.subscription.request(5);
+        second.subscription.cancel();
+
+        first.subscription.request(Long.MAX_VALUE);
+        first.awaitDone();
+        assertTrue(first.completed);
+        assertNull(first.error);
+        assertEquals(11, first.items.size());
+        assertTrue(second.items.isEmpty());
+    }
+
+    private Path input(long seed, int statements, int entries) throws Exception {
+        Path input = dir.resolve("in-" + seed + ".xml");
+        new Camt053CorpusGenerator(seed, statements, entries, 1).write(input);
+        return input;
+    }
+
+    private RecordingSubscriber<String> subscribe(Path input, Camt053CsvProcessor processor) {
+        new Camt053Publisher(input, new ConversionOptions(), executor).subscribe(processor);
+        RecordingSubscriber<String> subscriber = new RecordingSubscriber<>();
+        processor.subscribe(subscriber);
+        return subscriber;
+    }
+}
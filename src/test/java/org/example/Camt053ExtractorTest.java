@@ -0,0 +1,47 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.prowidesoftware.swift.model.mx.MxCamt05300108;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class Camt053ExtractorTest {
+
+    @Test
+    void streamingExtractorWritesTheRowsOfTheProwidePath() throws Exception {
+        assertSameRows(new Camt053CorpusGenerator(42L, 3, 50, 2));
+    }
+
+    @Test
+    void entriesWithoutDetailsTakeTheEntryIndicator() throws Exception {
+        assertSameRows(new Camt053CorpusGenerator(7L, 2, 20, 0));
+    }
+
+    private static void assertSameRows(Camt053CorpusGenerator generator) throws Exception {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        generator.write(xml);
+
+        MxCamt05300108 parsed = MxCamt05300108.parse(xml.toString(StandardCharsets.UTF_8));
+        List<String> expected = rows(new Camt053Extractor().extract(parsed));
+        List<String> actual = rows(new Camt053StreamingExtractor()
+            .extractAll(new ByteArrayInputStream(xml.toByteArray())));
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    private static List<String> rows(List<Camt053Data> statements) {
+        Camt053CsvGenerator generator = new Camt053CsvGenerator();
+        List<String> rows = new ArrayList<>();
+        for (Camt053Data statement : statements) {
+            generator.generate(statement, rows::add);
+        }
+        return rows;
+    }
+}
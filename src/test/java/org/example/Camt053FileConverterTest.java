@@ -0,0 +1,51 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Camt053FileConverterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void measuredConversionWritesTheSameRows() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(21L, 2, 40, 1).write(input);
+        ConversionMetrics metrics = new ConversionMetrics();
+
+        long rows = new Camt053FileConverter().convert(input, dir.resolve("plain.csv.gz"));
+        long measuredRows = new Camt053FileConverter(new ConversionOptions().setMetrics(metrics))
+            .convert(input, dir.resolve("measured.csv.gz"));
+
+        assertEquals(rows, measuredRows);
+        assertArrayEquals(Files.readAllBytes(dir.resolve("plain.csv.gz")),
+            Files.readAllBytes(dir.resolve("measured.csv.gz")));
+        assertEquals(1, metrics.getFilesConverted());
+        assertEquals(80, metrics.getEntries());
+        assertTrue(metrics.getBytesOut() > 0);
+    }
+
+    @Test
+    void rejectedBufferSizeLeavesNoOutputBehind() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(22L, 1, 5, 1).write(input);
+        ConversionMetrics metrics = new ConversionMetrics();
+        Camt053FileConverter converter = new Camt053FileConverter(new ConversionOptions()
+            .setBufferSize(16).setMetrics(metrics));
+
+        assertThrows(IllegalArgumentException.class, () -> converter.convert(input, dir.resolve("out.csv")));
+        assertEquals(1, metrics.getFilesFailed());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
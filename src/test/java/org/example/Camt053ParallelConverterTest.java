@@ -0,0 +1,136 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Camt053ParallelConverterTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @TempDir
+    Path dir;
+
+    @AfterAll
+    static void shutDown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    void chunkedOutputEqualsSequentialOutput() throws Exception {
+        assertSameOutput(new Camt053CorpusGenerator(11L, 3, 100, 2), new ConversionOptions());
+    }
+
+    @Test
+    void chunkedOutputEqualsSequentialOutputWhenExpandedAndReconciled() throws Exception {
+        ConversionOptions options = new ConversionOptions()
+            .setExpansion(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+            .setReconciliation(BalanceReconciler.Mode.FAIL);
+        assertSameOutput(new Camt053CorpusGenerator(12L, 4, 75, 3), options);
+    }
+
+    @Test
+    void chunkedOutputEqualsSequentialOutputForAnOlderVersion() throws Exception {
+        assertSameOutput(new Camt053CorpusGenerator(13L, 2, 60, 1, Camt053Version.V04), new ConversionOptions());
+    }
+
+    @Test
+    void resumedRunEqualsUninterruptedRun() throws Exception {
+        ConversionOptions options = new ConversionOptions()
+            .setReconciliation(BalanceReconciler.Mode.FAIL)
+            .setCheckpointInterval(4096);
+        assertResumesToSameOutput(new Camt053CorpusGenerator(14L, 3, 120, 2), options, "out.csv");
+    }
+
+    @Test
+    void resumedGzipRunEqualsUninterruptedRun() throws Exception {
+        ConversionOptions options = new ConversionOptions()
+            .setExpansion(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+            .setCheckpointInterval(4096);
+        assertResumesToSameOutput(new Camt053CorpusGenerator(15L, 2, 150, 3), options, "out.csv.gz");
+    }
+
+    /**
+     * Kill a checkpointed run part way, leave a torn write at the end of its
+     * partial output, and check that the next run continues to the same bytes
+     */
+    private void assertResumesToSameOutput(Camt053CorpusGenerator generator, ConversionOptions options,
+                                           String name) throws Exception {
+        Path input = dir.resolve("in.xml");
+        generator.write(input);
+        Path expected = dir.resolve("expected").resolve(name);
+        Files.createDirectories(expected.getParent());
+        Path output = dir.resolve(name);
+
+        CountingPool uninterrupted = new CountingPool(Integer.MAX_VALUE);
+        long rows = new Camt053ParallelConverter(uninterrupted, 7, options).convert(input, expected);
+        uninterrupted.shutdown();
+
+        CountingPool killed = new CountingPool(uninterrupted.submitted / 2);
+        assertThrows(IllegalStateException.class,
+            () -> new Camt053ParallelConverter(killed, 7, options).convert(input, output));
+        killed.shutdown();
+        assertFalse(Files.exists(output));
+        assertTrue(Files.exists(ConversionCheckpoint.path(output)));
+        Files.write(ConversionCheckpoint.partPath(output), new byte[] {'T', 'r', 'x', '|'}, StandardOpenOption.APPEND);
+
+        CountingPool resumed = new CountingPool(Integer.MAX_VALUE);
+        long resumedRows = new Camt053ParallelConverter(resumed, 7, options).convert(input, output);
+        resumed.shutdown();
+
+        assertEquals(rows, resumedRows);
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(output));
+        // Only the chunks after the checkpoint were converted again
+        assertTrue(resumed.submitted < uninterrupted.submitted);
+        assertFalse(Files.exists(ConversionCheckpoint.path(output)));
+        assertFalse(Files.exists(ConversionCheckpoint.partPath(output)));
+    }
+
+    private void assertSameOutput(Camt053CorpusGenerator generator, ConversionOptions options) throws Exception {
+        Path input = dir.resolve("in.xml");
+        generator.write(input);
+        Path sequential = dir.resolve("sequential.csv");
+        Path chunked = dir.resolve("chunked.csv");
+
+        long rows = new Camt053FileConverter(options).convert(input, sequential);
+        // Chunks much smaller than a statement, so every statement is split
+        long chunkedRows = new Camt053ParallelConverter(POOL, 7, options).convert(input, chunked);
+
+        assertEquals(rows, chunkedRows);
+        assertArrayEquals(Files.readAllBytes(sequential), Files.readAllBytes(chunked));
+    }
+
+    /**
+     * Counts chunk tasks; those after the first survivors fail as if the JVM died
+     */
+    private static class CountingPool extends ForkJoinPool {
+        private final int survivors;
+        int submitted;
+
+        CountingPool(int survivors) {
+            super(2);
+            this.survivors = survivors;
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+            if (++submitted <= survivors) {
+                return super.submit(task);
+            }
+            ForkJoinTask<T> killed = ForkJoinTask.adapt(() -> null);
+            killed.completeExceptionally(new IllegalStateException("Killed"));
+            return killed;
+        }
+    }
+}
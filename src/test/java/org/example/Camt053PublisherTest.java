@@ -0,0 +1,81 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Camt053PublisherTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final Executor executor = task -> {
+        Thread thread = new Thread(task, "publisher-test");
+        threads.add(thread);
+        thread.start();
+    };
+
+    @Test
+    void publishesOnlyWhatWasRequested() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(61L, 2, 10, 1).write(input);
+        RecordingSubscriber<Camt053Event> subscriber = new RecordingSubscriber<>();
+        new Camt053Publisher(input, new ConversionOptions(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+        assertEquals(Camt053Event.Type.STATEMENT, subscriber.next().getType());
+        assertEquals(Camt053Event.Type.TRANSACTION, subscriber.next().getType());
+        assertEquals(Camt053Event.Type.TRANSACTION, subscriber.next().getType());
+        assertTrue(subscriber.quiet());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.awaitDone();
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        // Two statements of a start, ten entries and an end, less the three taken
+        assertEquals(2 * (1 + 10 + 1) - 3, subscriber.items.size());
+    }
+
+    @Test
+    void cancelStopsTheParse() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(62L, 1, 50, 1).write(input);
+        RecordingSubscriber<Camt053Event> subscriber = new RecordingSubscriber<>();
+        new Camt053Publisher(input, new ConversionOptions(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(5);
+        for (int i = 0; i < 5; i++) {
+            subscriber.next();
+        }
+        subscriber.subscription.cancel();
+        threads.get(0).join(30_000);
+
+        assertFalse(threads.get(0).isAlive());
+        assertTrue(subscriber.quiet());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    void nonPositiveRequestEndsWithOnError() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(63L, 1, 5, 1).write(input);
+        RecordingSubscriber<Camt053Event> subscriber = new RecordingSubscriber<>();
+        new Camt053Publisher(input, new ConversionOptions(), executor).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        subscriber.awaitDone();
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.items.isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class Camt053StreamingExtractorTest {
+
+    // OPBD 100.00 + 50.00 + 30.00 - 20.00 = CLBD 160.00
+    private static final String STATEMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.08\"><BkToCstmrStmt>"
+        + "<GrpHdr><MsgId>MSG1</MsgId></GrpHdr>"
+        + "<Stmt><Id>STMT1</Id><Acct><Id><Othr><Id>0123456789</Id></Othr></Id><Ccy>EUR</Ccy></Acct>"
+        + balance("OPBD", "100.00") + balance("CLBD", "160.00")
+        // A single TxDtls without Amt stands for the whole entry
+        + entry("50.00", "CRDT", details(null, null))
+        // A batch with a reversal: each row keeps its own amount and sign
+        + entry("30.00", "CRDT", details("40.00", "CRDT") + details("10.00", "DBIT"))
+        // A batch without amounts: the entry amount belongs to none of its rows
+        + entry("20.00", "DBIT", details(null, null) + details(null, null))
+        + "</Stmt></BkToCstmrStmt></Document>";
+
+    @Test
+    void expandedRowsTakeTheEntryAmountOnlyWhenAlone() throws Exception {
+        List<TransactionInfo> rows = new ArrayList<>();
+        Camt053Handler collect = new Camt053Handler() {
+            @Override
+            public void onStatement(StatementInfo statement, BalanceInfo balance) {
+            }
+
+            @Override
+            public void onTransaction(TransactionInfo transaction) {
+                rows.add(transaction);
+            }
+        };
+        BalanceReconciler reconciler = new BalanceReconciler(collect, BalanceReconciler.Mode.FAIL);
+
+        new Camt053StreamingExtractor(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+            .extract(new ByteArrayInputStream(STATEMENT.getBytes(StandardCharsets.UTF_8)), reconciler);
+        reconciler.finish();
+
+        assertEquals(5, rows.size());
+        assertEquals(new BigDecimal("50.00"), rows.get(0).getSignedAmount());
+        assertEquals(new BigDecimal("40.00"), rows.get(1).getSignedAmount());
+        assertEquals(new BigDecimal("-10.00"), rows.get(2).getSignedAmount());
+        assertNull(rows.get(3).getAmount());
+        assertNull(rows.get(4).getAmount());
+        assertEquals(1, reconciler.getStatementsChecked());
+    }
+
+    @Test
+    void bothWritersLeaveMissingAmountsEmpty() throws Exception {
+        List<Camt053Data> statements = new Camt053StreamingExtractor(
+            Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+            .extractAll(new ByteArrayInputStream(STATEMENT.getBytes(StandardCharsets.UTF_8)));
+        Camt053CsvGenerator generator = new Camt053CsvGenerator();
+        List<String> generated = new ArrayList<>();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try (Camt053RowEncoder encoder = generator.newEncoder(written)) {
+            for (Camt053Data data : statements) {
+                generator.generate(data, generated::add);
+                Camt053CsvGenerator.write(data, encoder);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(bytes)) {
+            new Camt053StreamingExtractor(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS)
+                .extract(new ByteArrayInputStream(STATEMENT.getBytes(StandardCharsets.UTF_8)), encoder);
+        }
+        List<String> encoded = Arrays.asList(bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator()));
+
+        assertEquals(generated, encoded);
+        assertEquals(bytes.toString(StandardCharsets.UTF_8), written.toString(StandardCharsets.UTF_8));
+        // Amt, CdtDbtInd, SignedAmt and TxCdtDbtInd of the reversal and of a row without an amount
+        assertEquals(Arrays.asList("10", "CRDT", "-10", "DBIT"), amountColumns(generated.get(3)));
+        assertEquals(Arrays.asList("", "DBIT", "", "DBIT"), amountColumns(generated.get(4)));
+    }
+
+    private static List<String> amountColumns(String row) {
+        String[] columns = row.split("\\|", -1);
+        return Arrays.asList(columns[7], columns[11], columns[12], columns[13]);
+    }
+
+    private static String balance(String type, String amount) {
+        return "<Bal><Tp><CdOrPrtry><Cd>" + type + "</Cd></CdOrPrtry></Tp><Amt Ccy=\"EUR\">" + amount
+            + "</Amt><CdtDbtInd>CRDT</CdtDbtInd><Dt><Dt>2025-03-17</Dt></Dt></Bal>";
+    }
+
+    private static String entry(String amount, String indicator, String details) {
+        return "<Ntry><Amt Ccy=\"EUR\">" + amount + "</Amt><CdtDbtInd>" + indicator + "</CdtDbtInd>"
+            + "<Sts><Cd>BOOK</Cd></Sts><BookgDt><Dt>2025-03-17</Dt></BookgDt>"
+            + "<NtryDtls>" + details + "</NtryDtls></Ntry>";
+    }
+
+    private static String details(String amount, String indicator) {
+        return "<TxDtls>" + (amount != null ? "<Amt Ccy=\"EUR\">" + amount + "</Amt>" : "")
+            + (indicator != null ? "<CdtDbtInd>" + indicator + "</CdtDbtInd>" : "") + "</TxDtls>";
+    }
+}
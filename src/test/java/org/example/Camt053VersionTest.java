@@ -0,0 +1,113 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import org.junit.jupiter.api.Test;
+
+class Camt053VersionTest {
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    @Test
+    void everySupportedNamespaceIsDetected() throws Exception {
+        for (Camt053Version version : Camt053Version.values()) {
+            assertEquals(version, detect(XML_DECLARATION + "<Document xmlns=\"" + version.getNamespace() + "\">"),
+                version.getNamespace());
+            assertEquals(version, Camt053Version.fromIdentifier(version.getNamespace()));
+            assertEquals(version, Camt053Version.fromIdentifier(version.getMessageDefinition()));
+
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            new Camt053CorpusGenerator(111L, 1, 3, 1, version).write(xml);
+            byte[] head = Arrays.copyOf(xml.toByteArray(), Camt053Version.HEAD_SIZE);
+            assertEquals(version, Camt053Version.detect(head, Math.min(xml.size(), head.length)));
+        }
+    }
+
+    @Test
+    void prefixedRootElementIsDetected() throws Exception {
+        assertEquals(Camt053Version.V08, detect(XML_DECLARATION
+            + "<doc:Document xmlns:doc=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.08\"><doc:BkToCstmrStmt>"));
+    }
+
+    @Test
+    void documentNamespaceWinsOverTheHeader() throws Exception {
+        assertEquals(Camt053Version.V08, detect(XML_DECLARATION + "<Envelope>"
+            + "<AppHdr xmlns=\"urn:iso:std:iso:20022:tech:xsd:head.001.001.02\">"
+            + "<MsgDefIdr>camt.053.001.04</MsgDefIdr></AppHdr>"
+            + "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.08\">"));
+    }
+
+    @Test
+    void namespaceBeyondTheHeadIsLeftToTheParser() throws Exception {
+        StringBuilder padding = new StringBuilder("<!--");
+        while (padding.length() < Camt053Version.HEAD_SIZE) {
+            padding.append(" padding");
+        }
+        padding.append(" -->\n");
+        String document = XML_DECLARATION + padding + "<Document xmlns=\""
+            + Camt053Version.V04.getNamespace() + "\">";
+        byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        assertNull(Camt053Version.detect(bytes, Camt053Version.HEAD_SIZE));
+
+        // A header MsgDefIdr inside the head still names the version
+        String withHeader = XML_DECLARATION + "<Envelope><AppHdr><MsgDefIdr>camt.053.001.04</MsgDefIdr></AppHdr>"
+            + padding + "<Document xmlns=\"" + Camt053Version.V04.getNamespace() + "\">";
+        assertEquals(Camt053Version.V04,
+            Camt053Version.detect(withHeader.getBytes(StandardCharsets.UTF_8), Camt053Version.HEAD_SIZE));
+
+        // The namespace cut off at the end of the head is not read as a version
+        String cut = "<Document xmlns=\"" + Camt053Version.V11.getNamespace() + "\">";
+        byte[] cutBytes = cut.getBytes(StandardCharsets.UTF_8);
+        assertNull(Camt053Version.detect(cutBytes, cut.indexOf("camt.053.001.11") + "camt.053.001.1".length()));
+
+        // The streaming extractor takes the version from the Document once it gets there
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new Camt053CorpusGenerator(112L, 1, 3, 1, Camt053Version.V04).write(xml);
+        String generated = xml.toString(StandardCharsets.UTF_8);
+        int root = generated.indexOf("<Document");
+        String padded = generated.substring(0, root) + padding + generated.substring(root);
+        List<Camt053Data> statements = new Camt053StreamingExtractor()
+            .extractAll(new ByteArrayInputStream(padded.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(3, statements.get(0).getTransactions().size());
+        assertEquals("BOOK", statements.get(0).getTransactions().get(0).getStatus());
+    }
+
+    @Test
+    void unknownVersions() throws Exception {
+        // Newer than this code: read like the latest
+        assertEquals(Camt053Version.LATEST, detect("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.99\">"));
+        assertEquals(Camt053Version.LATEST, Camt053Version.fromIdentifier("camt.053.001.14"));
+
+        XMLStreamException old = assertThrows(XMLStreamException.class,
+            () -> detect("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.01\">"));
+        assertTrue(old.getMessage().contains("Unsupported message camt.053.001.01"), old.getMessage());
+        XMLStreamException malformed = assertThrows(XMLStreamException.class,
+            () -> detect("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.053.001.x8\">"));
+        assertTrue(malformed.getMessage().contains("Malformed"), malformed.getMessage());
+        XMLStreamException other = assertThrows(XMLStreamException.class,
+            () -> Camt053Version.fromIdentifier("urn:iso:std:iso:20022:tech:xsd:camt.052.001.08"));
+        assertTrue(other.getMessage().contains("Not a camt.053 statement"), other.getMessage());
+
+        // Nothing that names a camt.053 version
+        assertNull(detect("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:camt.052.001.08\">"));
+        assertNull(detect("<Document>"));
+        assertNull(Camt053Version.fromIdentifier("urn:example:statements"));
+        assertNull(Camt053Version.fromIdentifier(" "));
+        assertNull(Camt053Version.fromIdentifier(null));
+        assertThrows(IllegalArgumentException.class, () -> Camt053Version.of(14));
+    }
+
+    private static Camt053Version detect(String head) throws XMLStreamException {
+        byte[] bytes = head.getBytes(StandardCharsets.UTF_8);
+        return Camt053Version.detect(bytes, bytes.length);
+    }
+}
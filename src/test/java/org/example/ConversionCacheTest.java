@@ -0,0 +1,69 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConversionCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hitCopiesTheStoredOutput() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(31L, 2, 20, 1).write(input);
+        ConversionCache cache = new ConversionCache(dir.resolve("cache"));
+        Camt053FileConverter converter = new Camt053FileConverter(new ConversionOptions().setCache(cache));
+
+        long rows = converter.convert(input, dir.resolve("a.csv"));
+        long cachedRows = converter.convert(input, dir.resolve("b.csv"));
+
+        assertEquals(rows, cachedRows);
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(Files.readAllBytes(dir.resolve("a.csv")), Files.readAllBytes(dir.resolve("b.csv")));
+        assertFalse(Files.isSameFile(dir.resolve("a.csv"), entry()));
+        // Changing an output leaves the cache alone
+        Files.write(dir.resolve("a.csv"), new byte[] {'x'}, StandardOpenOption.APPEND);
+        converter.convert(input, dir.resolve("c.csv"));
+        assertEquals(2, cache.getHits());
+        assertArrayEquals(Files.readAllBytes(dir.resolve("b.csv")), Files.readAllBytes(dir.resolve("c.csv")));
+    }
+
+    @Test
+    void entryChangedInPlaceIsConvertedAgain() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(32L, 1, 20, 1).write(input);
+        ConversionCache cache = new ConversionCache(dir.resolve("cache")).setLinking(true);
+        Camt053FileConverter converter = new Camt053FileConverter(new ConversionOptions().setCache(cache));
+
+        converter.convert(input, dir.resolve("a.csv"));
+        byte[] expected = Files.readAllBytes(dir.resolve("a.csv"));
+        // A linked output shares the entry's file; overwrite a byte without changing the size
+        Path entry = entry();
+        assertTrue(Files.isSameFile(dir.resolve("a.csv"), entry));
+        byte[] changed = expected.clone();
+        changed[0] = (byte) (changed[0] == 'B' ? 'b' : 'B');
+        Files.write(dir.resolve("a.csv"), changed);
+
+        converter.convert(input, dir.resolve("b.csv"));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("b.csv")));
+    }
+
+    private Path entry() throws Exception {
+        try (Stream<Path> files = Files.walk(dir.resolve("cache"))) {
+            return files.filter(file -> file.toString().endsWith(".csv")).findFirst().orElseThrow();
+        }
+    }
+}
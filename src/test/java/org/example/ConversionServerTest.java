@@ -0,0 +1,168 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConversionServerTest {
+
+    @TempDir
+    Path dir;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private ConversionServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void postedDocumentGetsTheFileConverterCsv() throws Exception {
+        start(4);
+        byte[] xml = document(101L);
+
+        HttpResponse<byte[]> response = post(HttpRequest.BodyPublishers.ofByteArray(xml), false);
+        assertEquals(200, response.statusCode());
+        assertEquals("text/csv; charset=UTF-8", response.headers().firstValue("Content-Type").orElse(null));
+        assertArrayEquals(expectedCsv(xml), response.body());
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(xml);
+        }
+        HttpResponse<byte[]> inflated = post(HttpRequest.BodyPublishers.ofByteArray(gzipped.toByteArray()), true);
+        assertEquals(200, inflated.statusCode());
+        assertArrayEquals(expectedCsv(xml), inflated.body());
+        assertEquals(2, server.getConverted());
+    }
+
+    @Test
+    void malformedXmlGets400() throws Exception {
+        start(4);
+        byte[] xml = document(102L);
+        byte[] truncated = new String(xml, StandardCharsets.UTF_8).replace("</Ntry>", "</Nty>")
+            .getBytes(StandardCharsets.UTF_8);
+
+        HttpResponse<byte[]> response = post(HttpRequest.BodyPublishers.ofByteArray(truncated), false);
+        assertEquals(400, response.statusCode());
+        assertTrue(new String(response.body(), StandardCharsets.UTF_8).contains("XMLStreamException"));
+        assertEquals(1, server.getFailed());
+
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(uri("/convert")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+        assertEquals("POST", get.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void requestBeyondTheSlotsGets503() throws Exception {
+        start(1);
+        byte[] xml = document(103L);
+        int half = xml.length / 2;
+
+        // Hold the only slot with a body that is only half sent
+        HttpURLConnection held = (HttpURLConnection) uri("/convert").toURL().openConnection();
+        held.setRequestMethod("POST");
+        held.setDoOutput(true);
+        held.setChunkedStreamingMode(4096);
+        OutputStream body = held.getOutputStream();
+        body.write(xml, 0, half);
+        body.flush();
+        awaitHealth("available=0");
+
+        HttpResponse<byte[]> rejected = post(HttpRequest.BodyPublishers.ofByteArray(xml), false);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(1, server.getRejected());
+
+        body.write(xml, half, xml.length - half);
+        body.close();
+        assertEquals(200, held.getResponseCode());
+        try (InputStream in = held.getInputStream()) {
+            assertArrayEquals(expectedCsv(xml), in.readAllBytes());
+        }
+        awaitHealth("available=1");
+        assertEquals(200, post(HttpRequest.BodyPublishers.ofByteArray(xml), false).statusCode());
+    }
+
+    @Test
+    void loadGeneratorCountsWholeResponses() throws Exception {
+        start(4);
+        byte[] xml = document(104L);
+        int csvLength = expectedCsv(xml).length;
+
+        LoadGenerator.Result result = new LoadGenerator(uri("/convert"), xml)
+            .run(2, Duration.ZERO, Duration.ofMillis(300));
+        assertEquals(2, result.getConcurrency());
+        assertTrue(result.getRequests() > 0);
+        assertEquals(0, result.getErrors());
+        assertEquals(result.getRequests() * csvLength, result.getBytes());
+        assertTrue(result.getPercentileMillis(50) <= result.getPercentileMillis(100));
+    }
+
+    private void start(int maxConcurrent) throws Exception {
+        server = new ConversionServer(new InetSocketAddress("127.0.0.1", 0), maxConcurrent, new ConversionOptions())
+            .start();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private HttpResponse<byte[]> post(HttpRequest.BodyPublisher body, boolean gzip) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri("/convert")).POST(body);
+        if (gzip) {
+            request.header("Content-Encoding", "gzip");
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void awaitHealth(String expected) throws Exception {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        String health = "";
+        while (System.nanoTime() < deadline) {
+            health = client.send(HttpRequest.newBuilder(uri("/health")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+            if (health.contains(expected)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Health never showed " + expected + ": " + health);
+    }
+
+    private byte[] document(long seed) throws Exception {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new Camt053CorpusGenerator(seed, 2, 200, 1).write(xml);
+        return xml.toByteArray();
+    }
+
+    private byte[] expectedCsv(byte[] xml) throws Exception {
+        Path input = dir.resolve("expected.xml");
+        Path csv = dir.resolve("expected.csv");
+        Files.write(input, xml);
+        new Camt053FileConverter().convert(input, csv);
+        return Files.readAllBytes(csv);
+    }
+}
@@ -0,0 +1,178 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CsvLayoutTest {
+
+    @Test
+    void literalsMayHoldCommasAndQuotes() throws Exception {
+        CsvLayout layout = parse("lineSeparator=lf", "transaction='a,b',,'it''s',Amt,' x '");
+
+        List<CsvLayout.Column> columns = layout.getTransactionColumns();
+        assertEquals(5, columns.size());
+        assertEquals("a,b", columns.get(0).getLiteral());
+        assertEquals("", columns.get(1).getLiteral());
+        assertEquals("it's", columns.get(2).getLiteral());
+        assertEquals(CsvLayout.Field.AMT, columns.get(3).getField());
+        assertNull(columns.get(3).getLiteral());
+        assertEquals(" x ", columns.get(4).getLiteral());
+        assertTrue(layout.getBalanceColumns().isEmpty());
+
+        assertEquals("a,b||it's|1| x \n", encode(layout, new StatementInfo(), null, entry(null, "CRDT", 1, 0)));
+    }
+
+    @Test
+    void unknownAndMisplacedSettingsAreRejected() {
+        assertError("Unknown layout field Foo", "transaction=Amt,Foo");
+        assertError("Field ClsgBal is not available in transaction rows", "transaction=Amt,ClsgBal");
+        assertError("Field BookgDt is not available in balance rows", "balance=BookgDt", "transaction=Amt");
+        assertError("Layout has no transaction columns", "balance=AccountId");
+        assertError("Layout delimiter must not be empty", "delimiter=", "transaction=Amt");
+        assertError("Unknown quoting some", "quoting=some", "transaction=Amt");
+        assertError("Layout quote must be one ASCII character", "quote=''", "transaction=Amt");
+        assertError("Unknown lineSeparator cr", "lineSeparator=cr", "transaction=Amt");
+        assertError("is also the delimiter", "delimiter=,", "decimalSeparator=,", "transaction=Amt");
+    }
+
+    @Test
+    void minimalQuotingMatchesTheWholeDelimiter() throws Exception {
+        CsvLayout layout = parse("delimiter=<>", "quoting=minimal", "lineSeparator=lf",
+            "transaction=AccountId,Counterparty,Amt,'<'");
+
+        assertFalse(layout.needsQuotes("a<b"));
+        assertFalse(layout.needsQuotes("a>b"));
+        assertFalse(layout.needsQuotes("a<"));
+        assertTrue(layout.needsQuotes("a<>b"));
+        assertTrue(layout.needsQuotes("<>"));
+        assertTrue(layout.needsQuotes("say \"hi\""));
+        assertTrue(layout.needsQuotes("two\nlines"));
+        assertTrue(layout.needsQuotes("two\rlines"));
+        assertEquals("a<b", layout.quote("a<b"));
+        assertEquals("\"a<>b\"", layout.quote("a<>b"));
+        assertEquals("\"say \"\"hi\"\"\"", layout.quote("say \"hi\""));
+
+        StatementInfo statement = new StatementInfo();
+        statement.setAccountId("a<b");
+        TransactionInfo tx = entry(null, "CRDT", 1, 0);
+        tx.setCounterpartyName("x<>y");
+        assertEquals("a<b<>\"x<>y\"<>1<><\n", encode(layout, statement, null, tx));
+    }
+
+    @Test
+    void allQuotingQuotesEveryColumn() throws Exception {
+        CsvLayout layout = parse("quoting=all", "lineSeparator=lf", "balance='Bal',ClsgBal",
+            "transaction='Trx',AccountId,BookgDt,Amt,Sts,");
+        StatementInfo statement = new StatementInfo();
+        statement.setAccountId("A1");
+        BalanceInfo balance = new BalanceInfo();
+        balance.setClosingBalance(new BigDecimal("-2.50"));
+
+        assertEquals("\"Bal\"|\"-2.5\"\n\"Trx\"|\"A1\"|\"2025-01-02\"|\"5\"|\"\"|\"\"\n",
+            encode(layout, statement, balance, entry(LocalDate.of(2025, 1, 2), "CRDT", 5, 0)));
+    }
+
+    @Test
+    void commaDecimalsWithACommaDelimiterAreQuoted() throws Exception {
+        CsvLayout layout = parse("delimiter=,", "decimalSeparator=,", "quoting=minimal", "lineSeparator=lf",
+            "balance=ClsgBal,OpngBal", "transaction=Amt,SignedAmt,Sts");
+        BalanceInfo balance = new BalanceInfo();
+        balance.setClosingBalance(new BigDecimal("10.25"));
+        balance.setOpeningBalance(new BigDecimal("3"));
+        TransactionInfo scaled = entry(null, "DBIT", 1250, 2);
+        scaled.setStatus("BOOK");
+        TransactionInfo exact = entry(null, "CRDT", 0, 0);
+        exact.setAmount(new BigDecimal("0.750"));
+
+        assertEquals("\"10,25\",3\n\"12,5\",\"-12,5\",BOOK\n\"0,75\",\"0,75\",\n",
+            encode(layout, new StatementInfo(), balance, scaled, exact));
+    }
+
+    @Test
+    void customDatePatternFormatsBookingAndBalanceDates() throws Exception {
+        CsvLayout layout = parse("date=yyyyMMdd", "lineSeparator=lf", "balance=BalDt", "transaction=BookgDt,Amt");
+        BalanceInfo balance = new BalanceInfo();
+        balance.setBalanceDate(LocalDate.of(2025, 3, 31));
+
+        assertEquals("20250331\n20250330|1\n20250330|2\n20250331|3\n|4\n", encode(layout, new StatementInfo(),
+            balance, entry(LocalDate.of(2025, 3, 30), "CRDT", 1, 0), entry(LocalDate.of(2025, 3, 30), "CRDT", 2, 0),
+            entry(LocalDate.of(2025, 3, 31), "CRDT", 3, 0), entry(null, "CRDT", 4, 0)));
+        assertNull(parse("date=yyyy-MM-dd", "transaction=BookgDt").getDateFormat());
+    }
+
+    @Test
+    void customLayoutIsEncodedByteForByte() throws Exception {
+        CsvLayout layout = parse("delimiter=;", "quoting=minimal", "date=dd.MM.yyyy", "decimalSeparator=,",
+            "lineSeparator=crlf", "balance='B',AccountId,BalDt,ClsgBal,ClsgCdtDbtInd",
+            "transaction='T;x',StmtId,Amt,BookgDt,'',Counterparty,CounterpartyAcct,SignedAmt,Sts");
+        StatementInfo statement = new StatementInfo();
+        statement.setAccountId("CH9300762011623852957");
+        statement.setStatementId("S;1");
+        BalanceInfo balance = new BalanceInfo();
+        balance.setBalanceDate(LocalDate.of(2025, 3, 31));
+        balance.setClosingBalance(new BigDecimal("1234.50"));
+        balance.setCreditDebitIndicator("CRDT");
+        TransactionInfo debit = entry(LocalDate.of(2025, 3, 31), "DBIT", 150_050, 2);
+        debit.setCounterpartyName("Smith \"Jr\"");
+        debit.setStatus("BOOK");
+        TransactionInfo credit = entry(null, "CRDT", 0, 0);
+        credit.setAmount(new BigDecimal("0.10"));
+        credit.setCounterpartyName("Zürich Ølhus");
+        credit.setCounterpartyAccount("DE89370400440532013000");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(out, 1024, layout)) {
+            encoder.onStatement(statement, balance);
+            encoder.onTransaction(debit);
+            encoder.onTransaction(credit);
+            assertEquals(3, encoder.getRowCount());
+        }
+
+        String expected = "B;CH9300762011623852957;31.03.2025;1234,5;CRDT\r\n"
+            + "\"T;x\";\"S;1\";1500,5;31.03.2025;;\"Smith \"\"Jr\"\"\";;-1500,5;BOOK\r\n"
+            + "\"T;x\";\"S;1\";0,1;;;Zürich Ølhus;DE89370400440532013000;0,1;\r\n";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    private static CsvLayout parse(String... lines) throws IOException {
+        return CsvLayout.parse(new StringReader(String.join("\n", lines)));
+    }
+
+    private static void assertError(String message, String... lines) {
+        IOException e = assertThrows(IOException.class, () -> parse(lines));
+        assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+
+    private static String encode(CsvLayout layout, StatementInfo statement, BalanceInfo balance,
+                                 TransactionInfo... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Camt053RowEncoder encoder = new Camt053RowEncoder(out, 1024, layout)) {
+            encoder.onStatement(statement, balance);
+            for (TransactionInfo entry : entries) {
+                encoder.onTransaction(entry);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static TransactionInfo entry(LocalDate date, String indicator, long units, int scale) {
+        TransactionInfo tx = new TransactionInfo();
+        tx.setBookingDate(date);
+        tx.setEntryCreditDebitIndicator(indicator);
+        tx.setScaledAmount(units, scale);
+        return tx;
+    }
+}
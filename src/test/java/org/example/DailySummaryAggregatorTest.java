@@ -0,0 +1,221 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DailySummaryAggregatorTest {
+
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing((Key key) -> key.account)
+        .thenComparing(key -> key.date, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(key -> key.currency)
+        .thenComparing(key -> key.indicator);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void spilledRunsMergeToTheSameRowsAsAnInMemoryGroupBy() throws Exception {
+        Random random = new Random(81L);
+        Expected expected = new Expected();
+        try (DailySummaryAggregator summary = new DailySummaryAggregator(DailySummaryAggregator.MIN_MEMORY_LIMIT,
+            dir.resolve("runs"))) {
+            for (int statement = 0; statement < 300; statement++) {
+                String account = "CH" + random.nextInt(60);
+                String currency = random.nextBoolean() ? "EUR" : "USD";
+                summary.onStatement(statement(account, currency), null);
+                for (int i = 0; i < 500; i++) {
+                    // Some entries without a booking date
+                    LocalDate date = random.nextInt(50) == 0 ? null : LocalDate.of(2025, 3, 1 + random.nextInt(28));
+                    String indicator = random.nextBoolean() ? "CRDT" : "DBIT";
+                    add(summary, expected, account, currency, entry(date, indicator, random.nextInt(1_000_000),
+                        random.nextInt(4)));
+                }
+                summary.onStatementEnd();
+            }
+            // More runs than merge buffers: some were merged before the final merge
+            assertTrue(summary.getSpilledRuns() > 8);
+            assertWritten(expected, summary);
+        }
+    }
+
+    @Test
+    void entriesWithoutBookingDateComeFirstWithAnEmptyDate() throws Exception {
+        Expected expected = new Expected();
+        try (DailySummaryAggregator summary = new DailySummaryAggregator(DailySummaryAggregator.MIN_MEMORY_LIMIT,
+            dir)) {
+            summary.onStatement(statement("CH1", "CHF"), null);
+            add(summary, expected, "CH1", "CHF", entry(LocalDate.of(2025, 1, 2), "CRDT", 100, 2));
+            add(summary, expected, "CH1", "CHF", entry(null, "CRDT", 250, 2));
+            add(summary, expected, "CH1", "CHF", entry(null, "CRDT", 5, 0));
+            summary.onStatementEnd();
+
+            List<String> rows = assertWritten(expected, summary);
+            assertEquals("Sum|CH1||CHF|CRDT|2|7.5", rows.get(0));
+        }
+    }
+
+    @Test
+    void runTooWideForPackedKeysIsMergeSorted() throws Exception {
+        // Account ranks, days and entry indexes take 16 + 32 + 16 bits, more than a packed key holds
+        List<Integer> accounts = new ArrayList<>();
+        for (int i = 0; i < 36_000; i++) {
+            accounts.add(i);
+        }
+        Collections.shuffle(accounts, new Random(82L));
+        LocalDate[] days = {LocalDate.ofEpochDay(Integer.MIN_VALUE + 1), LocalDate.ofEpochDay(Integer.MAX_VALUE),
+            null, LocalDate.of(2025, 6, 30)};
+
+        Expected expected = new Expected();
+        try (DailySummaryAggregator summary = new DailySummaryAggregator(DailySummaryAggregator.DEFAULT_MEMORY_LIMIT,
+            dir)) {
+            for (int i = 0; i < accounts.size(); i++) {
+                String account = "A" + accounts.get(i);
+                summary.onStatement(statement(account, "EUR"), null);
+                add(summary, expected, account, "EUR", entry(days[i % days.length], "CRDT", i, 2));
+                add(summary, expected, account, "EUR", entry(days[(i + 1) % days.length], "CRDT", 1, 0));
+                summary.onStatementEnd();
+            }
+            assertEquals(0, summary.getSpilledRuns());
+            assertWritten(expected, summary);
+        }
+    }
+
+    @Test
+    void totalsMixScalesAndSignsAcrossRuns() throws Exception {
+        LocalDate day = LocalDate.of(2025, 2, 3);
+        Expected expected = new Expected();
+        try (DailySummaryAggregator summary = new DailySummaryAggregator(DailySummaryAggregator.MIN_MEMORY_LIMIT,
+            dir)) {
+            for (int round = 0; round < 3; round++) {
+                summary.onStatement(statement("MIX", "EUR"), null);
+                add(summary, expected, "MIX", "EUR", entry(day, "CRDT", 15, 1));
+                add(summary, expected, "MIX", "EUR", entry(day, "CRDT", 25, 2));
+                add(summary, expected, "MIX", "EUR", entry(day, "CRDT", 3, 0));
+                add(summary, expected, "MIX", "EUR", entry(day, "CRDT", -125, 3));
+                add(summary, expected, "MIX", "EUR", entry(day, "DBIT", -110, 2));
+                add(summary, expected, "MIX", "EUR", entry(day, "DBIT", 1, 1));
+                // Totals beyond a long, within one run and across runs
+                add(summary, expected, "MIX", "EUR", entry(day, "INFO", Long.MAX_VALUE, 2));
+                add(summary, expected, "MIX", "EUR", entry(day, "INFO", Long.MAX_VALUE, 5));
+                add(summary, expected, "MIX", "EUR", entry(day, "INFO", Long.MAX_VALUE, 0));
+                summary.onStatementEnd();
+
+                // Fill the run so the next round lands in another one
+                summary.onStatement(statement("FILL", "EUR"), null);
+                for (int i = 0; i < 15_000; i++) {
+                    add(summary, expected, "FILL", "EUR", entry(day.plusDays(i % 7), "CRDT", i, i % 3));
+                }
+                summary.onStatementEnd();
+            }
+            assertTrue(summary.getSpilledRuns() >= 3);
+            assertWritten(expected, summary);
+        }
+    }
+
+    @Test
+    void expandedEntriesAreSummedOnceByTheirNtryAmount() throws Exception {
+        Path input = dir.resolve("in.xml");
+        new Camt053CorpusGenerator(83L, 2, 30, 3).write(input);
+        ConversionOptions expand = new ConversionOptions()
+            .setExpansion(Camt053StreamingExtractor.Expansion.TRANSACTION_DETAILS);
+
+        Path entries = dir.resolve("entries.csv");
+        Path expanded = dir.resolve("expanded.csv");
+        try (DailySummaryAggregator summary = new DailySummaryAggregator()) {
+            new Camt053FileConverter().extract(input, summary);
+            summary.write(entries, CsvLayout.DEFAULT);
+        }
+        try (DailySummaryAggregator summary = new DailySummaryAggregator()) {
+            new Camt053FileConverter(expand).extract(input, summary);
+            assertEquals(60, summary.getEntryCount());
+            summary.write(expanded, CsvLayout.DEFAULT);
+        }
+
+        assertEquals(Files.readAllLines(entries), Files.readAllLines(expanded));
+    }
+
+    private List<String> assertWritten(Expected expected, DailySummaryAggregator summary) throws Exception {
+        Path output = dir.resolve("summary.csv");
+        long rows = summary.write(output, CsvLayout.DEFAULT);
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(expected.rows(), lines);
+        assertEquals(lines.size(), rows);
+        return lines;
+    }
+
+    /**
+     * Hand an entry to the summary the way the extractor does, and to the plain group-by
+     */
+    private static void add(DailySummaryAggregator summary, Expected expected, String account, String currency,
+                            TransactionInfo entry) throws Exception {
+        summary.onTransaction(entry);
+        summary.onEntryEnd(entry);
+        expected.add(new Key(account, entry.getBookingDate(), currency, entry.getEntryCreditDebitIndicator()),
+            entry.getAmount());
+    }
+
+    private static StatementInfo statement(String account, String currency) {
+        StatementInfo statement = new StatementInfo();
+        statement.setAccountId(account);
+        statement.setCurrency(currency);
+        return statement;
+    }
+
+    private static TransactionInfo entry(LocalDate date, String indicator, long units, int scale) {
+        TransactionInfo tx = new TransactionInfo();
+        tx.setBookingDate(date);
+        tx.setEntryCreditDebitIndicator(indicator);
+        tx.setScaledAmount(units, scale);
+        return tx;
+    }
+
+    private static final class Key {
+        final String account;
+        final LocalDate date;
+        final String currency;
+        final String indicator;
+
+        Key(String account, LocalDate date, String currency, String indicator) {
+            this.account = account;
+            this.date = date;
+            this.currency = currency;
+            this.indicator = indicator;
+        }
+    }
+
+    /**
+     * The summary as a plain sorted map of counts and BigDecimal totals
+     */
+    private static final class Expected {
+        private final Map<Key, Object[]> groups = new TreeMap<>(KEY_ORDER);
+
+        void add(Key key, BigDecimal amount) {
+            Object[] group = groups.computeIfAbsent(key, k -> new Object[] {0L, BigDecimal.ZERO});
+            group[0] = (Long) group[0] + 1;
+            group[1] = ((BigDecimal) group[1]).add(amount);
+        }
+
+        List<String> rows() {
+            List<String> rows = new ArrayList<>();
+            groups.forEach((key, group) -> rows.add(String.join("|", "Sum", key.account,
+                Objects.toString(key.date, ""), key.currency, key.indicator, group[0].toString(),
+                ((BigDecimal) group[1]).stripTrailingZeros().toPlainString())));
+            return rows;
+        }
+    }
+}
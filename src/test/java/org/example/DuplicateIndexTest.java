@@ -0,0 +1,87 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicateIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 17);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void growsAndKeepsEveryKeyAcrossReopen() throws Exception {
+        Path file = dir.resolve("index.dup");
+        try (DuplicateIndex index = DuplicateIndex.open(file, 16, true)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(index.add("ACCT", "REF" + i, DAY));
+            }
+            assertFalse(index.add("ACCT", "REF500", DAY));
+            assertEquals(1000, index.size());
+        }
+        assertFalse(Files.exists(dir.resolve("index.dup.tmp")));
+
+        try (DuplicateIndex index = DuplicateIndex.open(file, 16, true)) {
+            assertEquals(1000, index.size());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(index.contains("ACCT", "REF" + i, DAY));
+            }
+            assertFalse(index.contains("ACCT", "REF1000", DAY));
+            assertFalse(index.contains("OTHER", "REF1", DAY));
+        }
+    }
+
+    @Test
+    void removedSlotsAreReusedWithoutLosingKeys() throws Exception {
+        try (DuplicateIndex index = DuplicateIndex.open(dir.resolve("index.dup"), 64, true)) {
+            for (int i = 0; i < 30; i++) {
+                index.add("ACCT", "REF" + i, DAY);
+            }
+            for (int i = 0; i < 30; i += 2) {
+                assertTrue(index.remove("ACCT", "REF" + i, DAY));
+            }
+            // Odd keys sit behind removed slots; adding them again must still find them
+            for (int i = 1; i < 30; i += 2) {
+                assertFalse(index.add("ACCT", "REF" + i, DAY));
+            }
+            for (int i = 0; i < 30; i += 2) {
+                assertTrue(index.add("ACCT", "REF" + i, DAY));
+            }
+            assertEquals(30, index.size());
+        }
+    }
+
+    @Test
+    void rollbackForgetsTheKeysOfAFailedFile() throws Exception {
+        try (DuplicateIndex index = DuplicateIndex.open(dir.resolve("index.dup"))) {
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            new Camt053CorpusGenerator(41L, 1, 20, 1).write(xml);
+            ConversionOptions options = new ConversionOptions().setDuplicates(index, DuplicateFilter.Mode.DROP);
+
+            // The output cannot be put in place, so the conversion fails after every entry was read
+            Path blocked = Files.createDirectories(dir.resolve("blocked.csv"));
+            Files.write(blocked.resolve("keep"), new byte[0]);
+            assertThrows(IOException.class, () -> new Camt053FileConverter(options)
+                .convert(new ByteArrayInputStream(xml.toByteArray()), "in.xml", blocked));
+            assertEquals(0, index.size());
+
+            long rows = new Camt053FileConverter(options)
+                .convert(new ByteArrayInputStream(xml.toByteArray()), "in.xml", dir.resolve("out.csv"));
+            assertEquals(20, index.size());
+            // Balance row plus every entry: nothing was taken for a duplicate
+            assertEquals(21, rows);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FixedPointAmountsTest {
+
+    private static final BigInteger LIMIT = BigInteger.TEN.pow(FixedPointAmounts.MAX_DIGITS);
+
+    @Test
+    void randomValuesFormatAndParseLikeBigDecimal() {
+        Random random = new Random(41L);
+        for (int i = 0; i < 200_000; i++) {
+            int digits = 1 + random.nextInt(FixedPointAmounts.MAX_DIGITS);
+            long units = (long) (random.nextDouble() * Math.pow(10, digits));
+            if (random.nextBoolean()) {
+                units = -units;
+            }
+            int scale = random.nextInt(FixedPointAmounts.MAX_DIGITS + 1);
+            BigDecimal value = BigDecimal.valueOf(units, scale);
+
+            assertEquals(value.stripTrailingZeros().toPlainString(), FixedPointAmounts.toPlainString(units, scale),
+                value.toPlainString());
+            assertEquals(value.stripTrailingZeros().toPlainString(), FixedPointAmounts.toPlainString(value));
+
+            String text = variant(value, random);
+            for (int target = 0; target <= FixedPointAmounts.MAX_DIGITS + 1; target++) {
+                assertEquals(expectedUnits(text, target), FixedPointAmounts.parseUnits(text, target),
+                    text + " at scale " + target);
+            }
+        }
+    }
+
+    @Test
+    void negativeZeroIsZero() {
+        assertEquals(0, FixedPointAmounts.parseUnits("-0.00", 2));
+        assertEquals(0, FixedPointAmounts.parseUnits("-0", 0));
+        assertEquals("0", FixedPointAmounts.toPlainString(0, 2));
+        assertEquals("0", FixedPointAmounts.toPlainString(new BigDecimal("-0.00")));
+    }
+
+    @Test
+    void mostFractionDigits() {
+        int scale = FixedPointAmounts.MAX_DIGITS;
+        assertEquals(1, FixedPointAmounts.parseUnits("0.000000000000000001", scale));
+        assertEquals("0.000000000000000001", FixedPointAmounts.toPlainString(1, scale));
+        assertEquals("-0.999999999999999999", FixedPointAmounts.toPlainString(-999_999_999_999_999_999L, scale));
+        // One more fraction digit than a scale can take
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("0.0000000000000000001", scale));
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("1", scale + 1));
+    }
+
+    @Test
+    void valuesBeyondALongAreRejected() {
+        assertEquals(999_999_999_999_999_999L, FixedPointAmounts.parseUnits("999999999999999999", 0));
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("9223372036854775807", 0));
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("9223372036854775808", 0));
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("-99999999999999999999.5", 1));
+        // Padding to the scale can push a short value over the limit too
+        assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits("1000000000", 10));
+        assertEquals(BigDecimal.valueOf(Long.MIN_VALUE, 2).stripTrailingZeros().toPlainString(),
+            FixedPointAmounts.toPlainString(Long.MIN_VALUE, 2));
+    }
+
+    @Test
+    void currencyExponentBeyondTheFractionDigitsPadsTheUnits() {
+        int bhd = FixedPointAmounts.currencyExponent("BHD");
+        assertEquals(3, bhd);
+        assertEquals(12_500, FixedPointAmounts.parseUnits("12.5", bhd));
+        assertEquals(12_000, FixedPointAmounts.parseUnits("12", bhd));
+        assertEquals("12.5", FixedPointAmounts.toPlainString(12_500, bhd));
+        assertEquals(0, FixedPointAmounts.currencyExponent("JPY"));
+        assertEquals(0, FixedPointAmounts.currencyExponent("XXX"));
+        assertEquals(0, FixedPointAmounts.currencyExponent("NOPE"));
+        assertEquals(0, FixedPointAmounts.currencyExponent(null));
+    }
+
+    @Test
+    void textThatIsNotAPlainDecimalIsRejected() {
+        for (String text : new String[] {"", "-", ".", "1e3", "1.2.3", "12,50", " 1", "--1"}) {
+            assertEquals(FixedPointAmounts.NOT_REPRESENTABLE, FixedPointAmounts.parseUnits(text, 2), text);
+        }
+    }
+
+    /**
+     * The value as text the way a statement may write it: trailing zeros, leading zeros or a plus sign
+     */
+    private static String variant(BigDecimal value, Random random) {
+        String text = value.toPlainString();
+        switch (random.nextInt(4)) {
+            case 0:
+                return value.scale() > 0 ? text + "00" : text + ".0";
+            case 1:
+                return value.signum() < 0 ? "-00" + text.substring(1) : "00" + text;
+            case 2:
+                return value.signum() < 0 ? text : "+" + text;
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * parseUnits worked out with BigDecimal: exact at scale, at most MAX_DIGITS significant digits
+     */
+    private static long expectedUnits(String text, int scale) {
+        if (scale > FixedPointAmounts.MAX_DIGITS) {
+            return FixedPointAmounts.NOT_REPRESENTABLE;
+        }
+        BigInteger units;
+        try {
+            units = new BigDecimal(text).setScale(scale).unscaledValue();
+        } catch (ArithmeticException e) {
+            return FixedPointAmounts.NOT_REPRESENTABLE;
+        }
+        return units.abs().compareTo(LIMIT) < 0 ? units.longValue() : FixedPointAmounts.NOT_REPRESENTABLE;
+    }
+}
@@ -0,0 +1,45 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedXmlInputTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsAcrossSegmentsAndUnmapsOnClose() throws Exception {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Document>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<Ntry>").append(i).append("</Ntry>");
+        }
+        byte[] bytes = xml.append("</Document>").toString().getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("in.xml"), bytes);
+
+        MappedXmlInput input = new MappedXmlInput(FileChannel.open(file, StandardOpenOption.READ), 4096);
+        InputStream in = input.getInputStream();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            read.write(buffer, 0, n);
+        }
+        input.close();
+
+        assertArrayEquals(bytes, read.toByteArray());
+        assertThrows(IOException.class, in::read);
+        // Nothing holds the file once the input is closed
+        Files.move(file, dir.resolve("done.xml"));
+    }
+}
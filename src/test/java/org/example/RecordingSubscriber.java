@@ -0,0 +1,67 @@
+package org.example;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the signals of a Flow for the publisher and processor tests; requests nothing by itself
+ */
+class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    final BlockingQueue<T> items = new LinkedBlockingQueue<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Flow.Subscription subscription;
+    volatile Throwable error;
+    volatile boolean completed;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(T item) {
+        items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        done.countDown();
+    }
+
+    /**
+     * The next item, or an AssertionError if none arrives in time
+     */
+    T next() throws InterruptedException {
+        T item = items.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (item == null) {
+            throw new AssertionError("No item arrived");
+        }
+        return item;
+    }
+
+    /**
+     * True if nothing more arrives for a while
+     */
+    boolean quiet() throws InterruptedException {
+        return items.poll(200, TimeUnit.MILLISECONDS) == null && done.getCount() == 1;
+    }
+
+    void awaitDone() throws InterruptedException {
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("Flow did not end");
+        }
+    }
+}
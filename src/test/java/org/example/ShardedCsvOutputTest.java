@@ -0,0 +1,154 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardedCsvOutputTest {
+
+    private static final String[] STATUSES = {"BOOK", "PDNG", "INFO", "FUTR", "ALLE", "RJCT", "CANC", "SETL"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenedShardsAreAppendedToWithOneBalRowPerStatement() throws Exception {
+        assertShardsMatch(dir.resolve("out.csv"), Collections.singletonList(CsvLayout.Field.STS), 3,
+            statements(91L, 4), TransactionInfo::getStatus);
+    }
+
+    @Test
+    void reopenedGzipShardsGetAnotherMember() throws Exception {
+        assertShardsMatch(dir.resolve("out.csv.gz"), Collections.singletonList(CsvLayout.Field.STS), 2,
+            statements(92L, 3), TransactionInfo::getStatus);
+    }
+
+    @Test
+    void statementShardsKeepBalRowsOfStatementsWithoutEntries() throws Exception {
+        List<Statement> statements = statements(93L, 6);
+        statements.get(2).entries.clear();
+        assertShardsMatch(dir.resolve("out.csv"), Collections.singletonList(CsvLayout.Field.ACCOUNT_ID), 1,
+            statements, null);
+    }
+
+    /**
+     * Write statements through shards holding at most maxOpen files, then check each
+     * shard against a single encoder fed the statements and entries that belong to it
+     */
+    private void assertShardsMatch(Path output, List<CsvLayout.Field> key, int maxOpen, List<Statement> statements,
+                                   Function<TransactionInfo, String> entryKey) throws Exception {
+        Map<String, Path> files;
+        try (ShardedCsvOutput shards = new ShardedCsvOutput(output, key, maxOpen, new ConversionOptions())) {
+            for (Statement statement : statements) {
+                shards.onStatement(statement.info, statement.balance);
+                for (TransactionInfo entry : statement.entries) {
+                    shards.onTransaction(entry);
+                    shards.onEntryEnd(entry);
+                }
+                shards.onStatementEnd();
+            }
+            files = shards.getShards();
+        }
+        assertEquals(entryKey != null ? STATUSES.length : 2, files.size());
+
+        for (Map.Entry<String, Path> shard : files.entrySet()) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            int balRows = 0;
+            try (Camt053RowEncoder encoder = new Camt053RowEncoder(expected)) {
+                for (Statement statement : statements) {
+                    List<TransactionInfo> entries = new ArrayList<>();
+                    for (TransactionInfo entry : statement.entries) {
+                        if (entryKey == null || entryKey.apply(entry).equals(shard.getKey())) {
+                            entries.add(entry);
+                        }
+                    }
+                    boolean belongs = entryKey != null
+                        ? !entries.isEmpty() : statement.info.getAccountId().equals(shard.getKey());
+                    if (belongs) {
+                        encoder.onStatement(statement.info, statement.balance);
+                        balRows++;
+                        for (TransactionInfo entry : entries) {
+                            encoder.onTransaction(entry);
+                        }
+                    }
+                }
+            }
+            byte[] written = read(shard.getValue());
+            assertArrayEquals(expected.toByteArray(), written, shard.getKey());
+            long balLines = new String(written, StandardCharsets.UTF_8).lines()
+                .filter(line -> line.startsWith("Bal|"))
+                .count();
+            assertEquals(balRows, balLines, shard.getKey());
+            assertFalse(Files.exists(ConversionCheckpoint.partPath(shard.getValue())));
+        }
+    }
+
+    private static byte[] read(Path file) throws IOException {
+        if (!file.getFileName().toString().endsWith(".gz")) {
+            return Files.readAllBytes(file);
+        }
+        // Reads every gzip member, one per time the shard was opened
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Statements of two alternating accounts whose entries have random statuses,
+     * so shards keyed by status are closed and reopened within a statement
+     */
+    private static List<Statement> statements(long seed, int count) {
+        Random random = new Random(seed);
+        List<Statement> statements = new ArrayList<>();
+        for (int s = 0; s < count; s++) {
+            Statement statement = new Statement();
+            statement.info.setMessageId("MSG" + seed);
+            statement.info.setStatementId("STMT-" + s);
+            statement.info.setPageNumber(String.valueOf(s + 1));
+            statement.info.setAccountId(s % 2 == 0 ? "CH01" : "CH02");
+            statement.info.setCurrency("CHF");
+            LocalDate date = LocalDate.of(2025, 4, 1 + s);
+            statement.balance.setBalanceDate(date);
+            statement.balance.setOpeningBalance(BigDecimal.valueOf(random.nextInt(10_000), 2));
+            statement.balance.setClosingBalance(BigDecimal.valueOf(random.nextInt(10_000), 2));
+            statement.balance.setCreditDebitIndicator("CRDT");
+            for (int i = 0; i < 200; i++) {
+                TransactionInfo entry = new TransactionInfo();
+                entry.setBookingDate(date);
+                entry.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                entry.setEntryCreditDebitIndicator(random.nextBoolean() ? "CRDT" : "DBIT");
+                entry.setAccountServicerReference("ASR" + s + "-" + i);
+                entry.setScaledAmount(1 + random.nextInt(1_000_000), 2);
+                statement.entries.add(entry);
+            }
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    private static final class Statement {
+        final StatementInfo info = new StatementInfo();
+        final BalanceInfo balance = new BalanceInfo();
+        final List<TransactionInfo> entries = new ArrayList<>();
+    }
+}
@@ -0,0 +1,49 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+class TransactionStoreTest {
+
+    @Test
+    void entriesReadBackAsTheyWereAdded() {
+        TransactionInfo scaled = entry(LocalDate.of(2025, 6, 18), "DBIT");
+        scaled.setScaledAmount(12345, 2);
+        TransactionInfo big = entry(null, "CRDT");
+        big.setAmount(new BigDecimal("12345678901234567890.5"));
+        TransactionInfo detail = entry(LocalDate.of(1960, 1, 1), "CRDT");
+        detail.setTransactionCreditDebitIndicator("DBIT");
+        detail.setTransactionDetail(true);
+        detail.setEndToEndId("E2E-1");
+        detail.setCounterpartyName("Müller GmbH");
+
+        TransactionStore store = new TransactionStore();
+        store.add(scaled);
+        store.add(big);
+        store.add(detail);
+        store.trimToSize();
+
+        assertEquals(scaled, store.get(0));
+        assertEquals(big, store.get(1));
+        assertEquals(detail, store.get(2));
+        assertEquals(new BigDecimal("-123.45"), store.get(0).getSignedAmount());
+        // A TxDtls row is signed by its own indicator, not the entry's
+        assertTrue(store.isDebit(0));
+        assertFalse(store.isDebit(1));
+        assertTrue(store.isDebit(2));
+    }
+
+    private static TransactionInfo entry(LocalDate bookingDate, String indicator) {
+        TransactionInfo tx = new TransactionInfo();
+        tx.setBookingDate(bookingDate);
+        tx.setStatus("BOOK");
+        tx.setEntryCreditDebitIndicator(indicator);
+        tx.setAccountServicerReference("ASR-" + indicator);
+        return tx;
+    }
+}
@@ -0,0 +1,133 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WatchFolderDaemonTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resentStatementIsKeptUnderANumberedDoneName() throws Exception {
+        Path inbox = dir.resolve("in");
+        Path done = dir.resolve("done");
+        Files.createDirectories(inbox);
+        Files.createDirectories(done);
+        byte[] earlier = "earlier copy".getBytes();
+        Files.write(done.resolve("a.xml"), earlier);
+        new Camt053CorpusGenerator(5L, 1, 10, 1).write(inbox.resolve("a.xml"));
+
+        WatchFolderDaemon daemon = new WatchFolderDaemon(inbox, dir.resolve("out"), done, dir.resolve("error"));
+        daemon.setSettleMillis(0).start();
+        try {
+            awaitFiles(daemon, 1);
+        } finally {
+            daemon.close();
+        }
+
+        assertEquals(1, daemon.getFilesConverted());
+        assertTrue(Files.exists(dir.resolve("out/a.csv")));
+        assertArrayEquals(earlier, Files.readAllBytes(done.resolve("a.xml")));
+        assertTrue(Files.exists(done.resolve("a-1.xml")));
+        assertEquals(0, count(dir.resolve("error")));
+    }
+
+    @Test
+    void fileIsOnlyReadOnceItHasSettled() throws Exception {
+        Path inbox = dir.resolve("in");
+        Files.createDirectories(inbox);
+        Path file = inbox.resolve("b.xml");
+        new Camt053CorpusGenerator(6L, 1, 10, 1).write(file);
+
+        WatchFolderDaemon daemon = new WatchFolderDaemon(inbox, dir.resolve("out"), dir.resolve("done"),
+            dir.resolve("error"));
+        daemon.setSettleMillis(1500).start();
+        long start = System.currentTimeMillis();
+        try {
+            // Still being written: modified again after the daemon found it
+            Thread.sleep(500);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            awaitFiles(daemon, 1);
+        } finally {
+            daemon.close();
+        }
+
+        assertEquals(1, daemon.getFilesConverted());
+        assertTrue(System.currentTimeMillis() - start >= 2000);
+    }
+
+    @Test
+    void validFileConvertsUnderFailReconciliation() throws Exception {
+        for (Camt053StreamingExtractor.Expansion expansion : Camt053StreamingExtractor.Expansion.values()) {
+            Path base = dir.resolve(expansion.name());
+            Path inbox = Files.createDirectories(base.resolve("in"));
+            new Camt053CorpusGenerator(7L, 2, 40, 3).write(inbox.resolve("c.xml"));
+            ConversionOptions options = new ConversionOptions()
+                .setExpansion(expansion)
+                .setReconciliation(BalanceReconciler.Mode.FAIL);
+
+            WatchFolderDaemon daemon = new WatchFolderDaemon(inbox, base.resolve("out"), base.resolve("done"),
+                base.resolve("error")).setOptions(options);
+            daemon.setSettleMillis(0).start();
+            try {
+                awaitFiles(daemon, 1);
+            } finally {
+                daemon.close();
+            }
+
+            assertEquals(1, daemon.getFilesConverted(), expansion.name());
+            Path expected = base.resolve("expected.csv");
+            new Camt053FileConverter(options).convert(base.resolve("done/c.xml"), expected);
+            assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(base.resolve("out/c.csv")));
+        }
+    }
+
+    @Test
+    void shardingIsRejected() {
+        ConversionOptions options = new ConversionOptions()
+            .setSharding(Collections.singletonList(CsvLayout.Field.ACCOUNT_ID), 4);
+        WatchFolderDaemon daemon = new WatchFolderDaemon(dir.resolve("in"), dir.resolve("out"), dir.resolve("done"),
+            dir.resolve("error"));
+
+        assertThrows(IllegalArgumentException.class, () -> daemon.setOptions(options));
+    }
+
+    @Test
+    void freeNameNumbersBeforeTheExtension() throws Exception {
+        Files.write(dir.resolve("a.xml.gz"), new byte[0]);
+        Files.write(dir.resolve("a-1.xml.gz"), new byte[0]);
+
+        assertEquals(dir.resolve("a-2.xml.gz"), WatchFolderDaemon.freeName(dir, "a.xml.gz"));
+        assertEquals(dir.resolve("b.xml"), WatchFolderDaemon.freeName(dir, "b.xml"));
+    }
+
+    private static void awaitFiles(WatchFolderDaemon daemon, int files) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (daemon.getFilesConverted() + daemon.getFilesFailed() < files) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Daemon did not finish in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static long count(Path directory) throws Exception {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}